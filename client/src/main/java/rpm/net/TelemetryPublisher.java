@@ -22,15 +22,19 @@ import rpm.domain.VitalSnapshot;
 import rpm.domain.VitalType;
 import rpm.simulation.WardManager;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 public final class TelemetryPublisher {
 
@@ -40,9 +44,18 @@ public final class TelemetryPublisher {
     private static final String ENV_PERIOD_MS = "RPM_TELEMETRY_PERIOD_MS";
     private static final String PROP_PERIOD_MS = "rpm.telemetry.period.ms";
 
+    private static final String ENV_GZIP = "RPM_TELEMETRY_GZIP";
+    private static final String PROP_GZIP = "rpm.telemetry.gzip";
+
+    // "json" (default) or "binary" for TelemetryWireEncoder bodies
+    private static final String ENV_FORMAT = "RPM_TELEMETRY_FORMAT";
+    private static final String PROP_FORMAT = "rpm.telemetry.format";
+
     private final HttpClient client = HttpClient.newHttpClient();
     private final String url;
     private final long periodMs;
+    private final boolean gzip;
+    private final boolean binary;
 
     private final int rawFsHz = 250;
     private final int downsampleFactor = 2;
@@ -61,7 +74,8 @@ public final class TelemetryPublisher {
         String u = resolveUrlFromSystem();
         if (u == null) return Optional.empty();
         try {
-            return Optional.of(new TelemetryPublisher(u, resolvePeriodMsFromSystem()));
+            return Optional.of(new TelemetryPublisher(u, resolvePeriodMsFromSystem(), resolveGzipFromSystem(),
+                    resolveBinaryFromSystem()));
         } catch (IllegalArgumentException ex) {
             System.out.println("[telemetry] " + ex.getMessage());
             return Optional.empty();
@@ -94,6 +108,26 @@ public final class TelemetryPublisher {
         return 30_000L; // default: 30s
     }
 
+    private static boolean resolveGzipFromSystem() {
+        String env = System.getenv(ENV_GZIP);
+        if (env != null && !env.isBlank()) return Boolean.parseBoolean(env.trim());
+
+        String prop = System.getProperty(PROP_GZIP);
+        if (prop != null && !prop.isBlank()) return Boolean.parseBoolean(prop.trim());
+
+        return false;
+    }
+
+    private static boolean resolveBinaryFromSystem() {
+        String env = System.getenv(ENV_FORMAT);
+        if (env != null && !env.isBlank()) return env.trim().equalsIgnoreCase("binary");
+
+        String prop = System.getProperty(PROP_FORMAT);
+        if (prop != null && !prop.isBlank()) return prop.trim().equalsIgnoreCase("binary");
+
+        return false;
+    }
+
     private static Long parsePositiveLong(String s) {
         try {
             long v = Long.parseLong(s);
@@ -108,8 +142,18 @@ public final class TelemetryPublisher {
     }
 
     public TelemetryPublisher(String url, long periodMs) {
+        this(url, periodMs, false);
+    }
+
+    public TelemetryPublisher(String url, long periodMs, boolean gzip) {
+        this(url, periodMs, gzip, false);
+    }
+
+    public TelemetryPublisher(String url, long periodMs, boolean gzip, boolean binary) {
         this.url = validateUrl(url);
         this.periodMs = Math.max(1, periodMs);
+        this.gzip = gzip;
+        this.binary = binary;
     }
 
     public String getUrl() {
@@ -120,6 +164,14 @@ public final class TelemetryPublisher {
         return periodMs;
     }
 
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
     private static String validateUrl(String url) {
         String u = url == null ? "" : url.trim();
         if (u.isEmpty()) throw new IllegalArgumentException("Telemetry URL is blank");
@@ -144,10 +196,18 @@ public final class TelemetryPublisher {
         if (lastSendMs >= 0 && (nowMs - lastSendMs) < periodMs) return;
         lastSendMs = nowMs;
 
+        if (binary) {
+            byte[] payload = buildBinaryPayload(ward, nowMs);
+            if (payload == null) return;
+
+            postAsync(payload, TelemetryWireEncoder.CONTENT_TYPE);
+            return;
+        }
+
         String payload = buildPayload(ward, nowMs);
         if (payload == null) return;
 
-        postAsync(payload);
+        postAsync(payload.getBytes(StandardCharsets.UTF_8), "application/json");
     }
 
     private String buildPayload(WardManager ward, long nowMs) {
@@ -204,13 +264,49 @@ public final class TelemetryPublisher {
         return first ? null : sb.toString();
     }
 
-    private void postAsync(String json) {
+    // Same readings as buildPayload, as one TelemetryWireEncoder frame per bed
+    private byte[] buildBinaryPayload(WardManager ward, long nowMs) {
+        List<PatientId> ids = ward.getPatientIds();
+        if (ids == null || ids.isEmpty()) return null;
+
+        TelemetryWireEncoder enc = new TelemetryWireEncoder();
+        long[] ts = {nowMs};
+
+        for (PatientId id : ids) {
+            VitalSnapshot snap = ward.getPatientLatestSnapshot(id);
+            if (snap == null) continue;
+
+            EcgBuf b = ecg.get(id);
+            EcgBuf.EcgChunk chunk = (b != null) ? b.takeLatestChunk(chunkSamples, targetFsHz) : null;
+
+            enc.addBed(id.getDisplayName(), ts,
+                    row(snap, VitalType.HEART_RATE),
+                    row(snap, VitalType.RESP_RATE),
+                    row(snap, VitalType.BP_SYSTOLIC),
+                    row(snap, VitalType.BP_DIASTOLIC),
+                    row(snap, VitalType.TEMPERATURE),
+                    chunk != null ? chunk.startMs : null,
+                    chunk != null ? targetFsHz : null,
+                    chunk != null ? chunk.samples : null);
+        }
+
+        return enc.bedCount() == 0 ? null : enc.toByteArray();
+    }
+
+    private void postAsync(byte[] body, String contentType) {
         try {
-            HttpRequest req = HttpRequest.newBuilder()
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
                     .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json))
-                    .build();
+                    .header("Content-Type", contentType);
+
+            // ECG arrays are long runs of similar numbers, so gzip shrinks uploads several times over
+            if (gzip) {
+                builder.header("Content-Encoding", "gzip")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(compress(body)));
+            } else {
+                builder.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+            }
+            HttpRequest req = builder.build();
 
             client.sendAsync(req, HttpResponse.BodyHandlers.discarding())
                     .exceptionally(ex -> {
@@ -222,6 +318,14 @@ public final class TelemetryPublisher {
         }
     }
 
+    private static byte[] compress(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
     private static Double val(VitalSnapshot snap, VitalType type) {
         if (snap == null || snap.getValues() == null) return null;
         Double v = snap.getValues().get(type);
@@ -229,6 +333,11 @@ public final class TelemetryPublisher {
         return v;
     }
 
+    private static double[] row(VitalSnapshot snap, VitalType type) {
+        Double v = val(snap, type);
+        return new double[] {v == null ? Double.NaN : v};
+    }
+
     private static String numOrNull(Double v) {
         return (v == null) ? "null" : Double.toString(v);
     }
@@ -0,0 +1,128 @@
+package rpm.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the binary telemetry upload format (application/x-rpm-telemetry),
+ * the compact alternative to the JSON body built by TelemetryPublisher.
+ *
+ * Version 1 layout, integers as unsigned LEB128 varints:
+ *
+ *   header  'R' 'P' 'M' 'T' version-byte
+ *   frame*  frame length, frame bytes; a zero length ends the body
+ *   frame   bed id length, bed id (UTF-8), row count,
+ *           ts token per row, then hr, rr, sys, dia, temp tokens per row,
+ *           flags (1 = ecgTsStart, 2 = ecgFs),
+ *           [zigzag ecgTsStart - first ts], [ecgFs],
+ *           ECG sample count, ECG token per sample
+ *
+ * A token is 0 for a missing value, otherwise zigzag(q - previous q) + 1,
+ * with q the value quantized to its column's step (ts 1 ms, hr/rr/sys/dia
+ * 0.1, temp 0.01, ECG 0.001 mV) and previous q the column's last present
+ * value. The servlet decodes it with TelemetryWireFormat.
+ */
+public final class TelemetryWireEncoder {
+
+    public static final String CONTENT_TYPE = "application/x-rpm-telemetry";
+    public static final int VERSION = 1;
+
+    /** Pass in a ts array for a row without a timestamp. */
+    public static final long MISSING_TS = Long.MIN_VALUE;
+
+    private static final double VITALS_SCALE = 10;
+    private static final double TEMP_SCALE = 100;
+    private static final double ECG_SCALE = 1000;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(512);
+    private int beds;
+
+    public TelemetryWireEncoder() {
+        out.write('R');
+        out.write('P');
+        out.write('M');
+        out.write('T');
+        out.write(VERSION);
+    }
+
+    /**
+     * Appends one bed's frame. Vitals arrays may be shorter than ts (or null);
+     * missing entries and NaN are sent as gaps. ECG fields may be null.
+     */
+    public TelemetryWireEncoder addBed(String bedId, long[] ts,
+                                       double[] hr, double[] rr, double[] sys, double[] dia, double[] temp,
+                                       Long ecgTsStart, Integer ecgFs, double[] ecg) {
+        frame.reset();
+        byte[] id = (bedId == null ? "" : bedId).getBytes(StandardCharsets.UTF_8);
+        writeVarlong(frame, id.length);
+        frame.write(id, 0, id.length);
+
+        int rows = ts == null ? 0 : ts.length;
+        writeVarlong(frame, rows);
+        long prevTs = 0;
+        Long firstTs = null;
+        for (int i = 0; i < rows; i++) {
+            if (ts[i] == MISSING_TS) {
+                writeVarlong(frame, 0);
+                continue;
+            }
+            writeVarlong(frame, zigzag(ts[i] - prevTs) + 1);
+            prevTs = ts[i];
+            if (firstTs == null) firstTs = ts[i];
+        }
+        writeValues(hr, rows, VITALS_SCALE);
+        writeValues(rr, rows, VITALS_SCALE);
+        writeValues(sys, rows, VITALS_SCALE);
+        writeValues(dia, rows, VITALS_SCALE);
+        writeValues(temp, rows, TEMP_SCALE);
+
+        writeVarlong(frame, (ecgTsStart != null ? 1 : 0) | (ecgFs != null ? 2 : 0));
+        if (ecgTsStart != null) writeVarlong(frame, zigzag(ecgTsStart - (firstTs == null ? 0 : firstTs)));
+        if (ecgFs != null) writeVarlong(frame, Math.max(0, ecgFs));
+        int n = ecg == null ? 0 : ecg.length;
+        writeVarlong(frame, n);
+        writeValues(ecg, n, ECG_SCALE);
+
+        writeVarlong(out, frame.size());
+        out.writeBytes(frame.toByteArray());
+        beds++;
+        return this;
+    }
+
+    public int bedCount() {
+        return beds;
+    }
+
+    /** The finished body; the encoder should not be used afterwards. */
+    public byte[] toByteArray() {
+        writeVarlong(out, 0);
+        return out.toByteArray();
+    }
+
+    private void writeValues(double[] values, int n, double scale) {
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            double v = values != null && i < values.length ? values[i] : Double.NaN;
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                writeVarlong(frame, 0);
+                continue;
+            }
+            long q = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(v * scale)));
+            writeVarlong(frame, zigzag(q - prev) + 1);
+            prev = q;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static void writeVarlong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
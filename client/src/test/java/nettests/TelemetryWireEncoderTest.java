@@ -0,0 +1,33 @@
+package nettests;
+
+import org.junit.jupiter.api.Test;
+import rpm.net.TelemetryWireEncoder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//pins the exact bytes of an upload so the servlet's decoder can be tested against what the client really sends
+class TelemetryWireEncoderTest {
+
+    // The same hex is decoded by the servlet's TelemetryWireFormatTest.GOLDEN; change both together
+    static final String GOLDEN = "52504d54012d054265642031038180e682b966d10f00a90b000ac3020200000000bd0c0702cf39"
+            + "070303cf0f7d03018108f40b05016200000000";
+
+    @Test
+    void toByteArray_matchesGoldenBytes() {
+        byte[] body = new TelemetryWireEncoder()
+                .addBed("Bed 1", new long[] {1_760_000_000_000L, 1_760_000_001_000L, TelemetryWireEncoder.MISSING_TS},
+                        new double[] {72.4, Double.NaN, 71.9}, new double[] {16.1, 16.0}, null,
+                        new double[] {79.8, 80.1, 80.0}, new double[] {36.87, 36.9, 36.91},
+                        1_759_999_999_000L, 125, new double[] {0.0, 0.512, -0.25})
+                .addBed("b", null, null, null, null, null, null, null, null, null)
+                .toByteArray();
+
+        assertEquals(GOLDEN, hex(body));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -1,7 +1,167 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public abstract class AbstractTelemetryStore {
+    // Vitals rows one since read returns before it stops at a write boundary; the client pages on from its seq
+    static final int MAX_SINCE_ROWS = 10_000;
+
+    /** Receives the beds of a page read one at a time, in bed id order. */
+    public interface PageSink {
+        void accept(String bedId, PatientTelemetry t) throws IOException;
+    }
+
     public abstract void store(String bedId, PatientTelemetry data);
     public abstract PatientTelemetry get(String bedId);
-    public abstract Map<String, PatientTelemetry> getAll();
+
+    /** get() for every bed, as one page. */
+    public Map<String, PatientTelemetry> getAll() {
+        Map<String, PatientTelemetry> out = new TreeMap<>();
+        try {
+            getPage(new TreeMap<>(sequences()), out::put);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    /**
+     * get() for each bed of page (bed id -&gt; its sequence when the page was chosen), handed to
+     * sink before the next bed is read; beds that are gone are skipped. The default reads bed
+     * by bed; backends override the page reads with one read for the whole page.
+     */
+    public void getPage(SortedMap<String, Long> page, PageSink sink) throws IOException {
+        for (String bed : page.keySet()) {
+            PatientTelemetry t = get(bed);
+            if (t != null) sink.accept(bed, t);
+        }
+    }
+
+    /** getPage() with getRange(). */
+    public void getPageRange(SortedMap<String, Long> page, long fromMs, long toMs, PageSink sink) throws IOException {
+        for (String bed : page.keySet()) {
+            PatientTelemetry t = getRange(bed, fromMs, toMs);
+            if (t != null) sink.accept(bed, t);
+        }
+    }
+
+    /**
+     * getPage() with getSince() from the bed's cursor entry (0 if missing) up to its page sequence.
+     * The page's cursor is handed out before the read, so a bed more than MAX_SINCE_ROWS behind
+     * cannot be paged: it gets its get() window instead, as a client without a cursor would.
+     * A failed read is thrown, not skipped, for the same reason.
+     */
+    public void getPageSince(SortedMap<String, Long> page, Map<String, Long> cursor, PageSink sink) throws IOException {
+        for (Map.Entry<String, Long> e : page.entrySet()) {
+            long after = cursor == null ? 0L : cursor.getOrDefault(e.getKey(), 0L);
+            PatientTelemetry t = getSince(e.getKey(), after, e.getValue());
+            if (t != null && t.getSeq() != null && t.getSeq() < e.getValue()) t = get(e.getKey());
+            if (t != null) sink.accept(e.getKey(), t);
+        }
+    }
+
+    /** Latest write sequence number per bed. Each write that touches a bed advances its number. */
+    public abstract Map<String, Long> sequences();
+
+    /**
+     * Vitals rows and ECG stored by writes after afterSeq, with seq set to the bed's latest
+     * write (the next cursor); null for an unknown bed. Past MAX_SINCE_ROWS rows the read stops
+     * after the write that reached the limit, and seq is that write. A failed read throws
+     * rather than returning null, so a cursor past the missed writes is never handed out.
+     */
+    public abstract PatientTelemetry getSince(String bedId, long afterSeq) throws IOException;
+
+    /**
+     * getSince() limited to writes up to upToSeq, with seq set to the last write included, so
+     * a caller can hand out cursors before reading. The default is getSince(), which may
+     * include later writes; its seq then says so.
+     */
+    public PatientTelemetry getSince(String bedId, long afterSeq, long upToSeq) throws IOException {
+        return getSince(bedId, afterSeq);
+    }
+
+    /**
+     * Newest vitals row (greatest ts) of every bed, without ECG, with seq set to the bed's latest
+     * write. The default reads getAll(); backends override it with a read that skips history.
+     */
+    public Map<String, PatientTelemetry> getLatest() {
+        Map<String, PatientTelemetry> out = new TreeMap<>();
+        getAll().forEach((bed, t) -> out.put(bed, t.latest()));
+        return out;
+    }
+
+    /**
+     * The bed's ECG over [fromMs, toMs], stitched across segments with gaps marked, at
+     * targetFs (0 = as recorded), or null for an unknown bed. The default uses getRange().
+     */
+    public EcgStrip getEcg(String bedId, long fromMs, long toMs, int targetFs) {
+        PatientTelemetry t = getRange(bedId, fromMs, toMs);
+        return t == null ? null : EcgStrip.of(t, fromMs, toMs, targetFs);
+    }
+
+    /**
+     * Vitals summarized into resolutionMs buckets covering [fromMs, toMs] widened to whole
+     * buckets, or null for an unknown bed. The default aggregates getVitalsRange() rows; backends
+     * with stored rollups read the coarsest level that tiles resolutionMs instead.
+     */
+    public VitalsRollup getRollup(String bedId, long fromMs, long toMs, long resolutionMs) {
+        VitalsRollup out = new VitalsRollup(resolutionMs);
+        PatientTelemetry t = getVitalsRange(bedId, out.windowStart(fromMs), out.windowEnd(toMs));
+        if (t == null) return null;
+        out.addRows(t, LongColumn.MISSING);
+        return out;
+    }
+
+    /**
+     * Stores a whole multi-bed payload and returns the sequence each stored bed reached with
+     * this write. Backends override this to persist it in one go; the default stores bed by
+     * bed and reads sequences() afterwards, so a concurrent write to a bed may show through.
+     */
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        if (batch == null) return Collections.emptyMap();
+        for (Map.Entry<String, PatientTelemetry> e : batch.entrySet()) {
+            store(e.getKey(), e.getValue());
+        }
+        Map<String, Long> seqs = sequences();
+        Map<String, Long> out = new TreeMap<>();
+        for (String bed : batch.keySet()) {
+            Long seq = bed == null ? null : seqs.get(bed);
+            if (seq != null) out.put(bed, seq);
+        }
+        return out;
+    }
+
+    /**
+     * Vitals rows with fromMs &lt;= ts &lt;= toMs and the ECG inside that window, or null for an
+     * unknown bed. The default slices get(); backends override it with an indexed range scan.
+     */
+    public PatientTelemetry getRange(String bedId, long fromMs, long toMs) {
+        PatientTelemetry t = get(bedId);
+        return t == null ? null : t.slice(fromMs, toMs);
+    }
+
+    /**
+     * getRange() without the ECG, for reads that only use the vitals rows. The default drops
+     * the strip getRange() read; backends override it to skip reading the ECG at all.
+     */
+    public PatientTelemetry getVitalsRange(String bedId, long fromMs, long toMs) {
+        PatientTelemetry t = getRange(bedId, fromMs, toMs);
+        if (t != null) {
+            t.getEcg().clear();
+            t.setEcgTsStart(null);
+            t.setEcgFs(null);
+        }
+        return t;
+    }
+
+    /** Backend-specific counters (pool usage etc.), served by GET /telemetry?view=stats. */
+    public Map<String, Object> stats() {
+        return Collections.emptyMap();
+    }
+
+    /** Releases connections, threads and other resources held by the backend. */
+    public void close() {}
 }
@@ -0,0 +1,168 @@
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking upload of one POST /telemetry body.
+ *
+ * The container calls onDataAvailable() as bytes arrive; they are copied into
+ * pooled chunks without ever blocking, so a slow bedside uplink holds no
+ * container thread. Once the whole body is in, parsing and storing run on the
+ * processing executor, which also writes the (small) response and completes
+ * the request.
+ *
+ * The async timeout bounds the upload only: it is lifted once the body is in,
+ * and a timeout that still fires (containers differ on re-arming) answers 503
+ * for a body that is queued but not yet stored, or waits for a store that is
+ * already under way so that it is answered exactly once, by the processor.
+ */
+final class AsyncPostHandler implements ReadListener, AsyncListener {
+    private static final Logger log = Logger.getLogger(AsyncPostHandler.class.getName());
+
+    /** Parses and stores a complete body and writes the response. */
+    interface Processor {
+        void process(InputStream body, HttpServletResponse resp) throws IOException;
+    }
+
+    private final AsyncContext ctx;
+    private final ServletInputStream in;
+    private final PooledBody body;
+    private final long maxBytes;
+    private final Executor executor;
+    private final Processor processor;
+    private final AtomicInteger state = new AtomicInteger(READING);
+
+    private static final int READING = 0, QUEUED = 1, PROCESSING = 2, DONE = 3;
+
+    AsyncPostHandler(AsyncContext ctx, ServletInputStream in, BufferPool pool, long maxBytes,
+                     Executor executor, Processor processor) {
+        this.ctx = ctx;
+        this.in = in;
+        this.body = new PooledBody(pool);
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+        this.processor = processor;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        // isReady() must be checked before every read; it turning false ends this callback
+        while (in.isReady() && !in.isFinished()) {
+            byte[] tail = body.tail();
+            int n = in.read(tail, body.tailOffset(), tail.length - body.tailOffset());
+            if (n < 0) break;
+            body.advance(n);
+            if (body.size() > maxBytes) {
+                fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "body too large");
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (!state.compareAndSet(READING, QUEUED)) return;
+        try {
+            // The upload is in; the store must not be cut off by the upload timeout
+            ctx.setTimeout(0);
+        } catch (IllegalStateException ignored) {}
+        try {
+            executor.execute(this::process);
+        } catch (RejectedExecutionException e) {
+            busy(QUEUED);
+        }
+    }
+
+    private void process() {
+        if (!state.compareAndSet(QUEUED, PROCESSING)) return;
+        try {
+            processor.process(body.inputStream(), (HttpServletResponse) ctx.getResponse());
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Async telemetry POST failed", e);
+            respond(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "store failed");
+        } finally {
+            finish();
+            synchronized (state) {
+                state.set(DONE);
+                state.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // Client went away or the read failed; there is nobody left to answer. A store under way finishes on its own.
+        if (state.compareAndSet(READING, DONE) || state.compareAndSet(QUEUED, DONE)) finish();
+    }
+
+    private void fail(int status, String error) {
+        if (!state.compareAndSet(READING, DONE)) return;
+        respond(status, error);
+        finish();
+    }
+
+    /** Refuses a body that was never stored, so the client can safely send it again. */
+    private void busy(int from) {
+        if (!state.compareAndSet(from, DONE)) return;
+        HttpServletResponse resp = (HttpServletResponse) ctx.getResponse();
+        resp.setHeader("Retry-After", "1");
+        respond(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "server busy");
+        finish();
+    }
+
+    private void respond(int status, String error) {
+        try {
+            HttpServletResponse resp = (HttpServletResponse) ctx.getResponse();
+            if (resp.isCommitted()) return;
+            resp.setStatus(status);
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().write("{\"error\":\"" + error + "\"}");
+        } catch (IOException | IllegalStateException ignored) {}
+    }
+
+    private void finish() {
+        body.release();
+        try {
+            ctx.complete();
+        } catch (IllegalStateException ignored) {}
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        fail(HttpServletResponse.SC_REQUEST_TIMEOUT, "upload timed out");
+        busy(QUEUED);
+        // Returning now would let the container answer with its own error page while the store still runs
+        synchronized (state) {
+            while (state.get() == PROCESSING) {
+                try {
+                    state.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {}
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+}
@@ -0,0 +1,524 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded history for one bed in the in-memory backend.
+ *
+ * Vitals rows and ECG samples live in primitive circular buffers that grow by
+ * doubling up to the RetentionPolicy capacity and then overwrite their oldest
+ * entries. ECG keeps a small header per uploaded chunk (start time, fs) so
+ * sample timestamps survive eviction.
+ *
+ * Every append() is one write with the next per-bed sequence number; rows and
+ * chunks remember the write that stored them so since() can return only newer data.
+ *
+ * Appends for a bed are serialized by its write lock. Reads copy what they need
+ * optimistically and keep the copy only if no append overlapped it, so every
+ * read is a point-in-time view of the bed and readers never hold up ingest;
+ * a read that keeps losing to appends takes the read lock instead.
+ */
+public final class BedTelemetryBuffer {
+    private static final int INITIAL_VITALS = 64;
+    private static final int INITIAL_ECG = 1024;
+    private static final int DEFAULT_FS = 250;
+    // Optimistic attempts before a read waits for the lock
+    private static final int OPTIMISTIC_READS = 3;
+
+    // Reads that had to fall back to the read lock, across all beds
+    static final AtomicLong optimisticFallbacks = new AtomicLong();
+
+    private final RetentionPolicy policy;
+    private final StampedLock lock = new StampedLock();
+
+    // Vitals ring: one row per ts; missing values are NaN
+    private long seq;
+    private long[] ts = new long[0], rowSeq = new long[0];
+    private double[] hr = new double[0], rr = new double[0], sys = new double[0], dia = new double[0], temp = new double[0];
+    private int vHead, vSize;
+    // Absolute row count, and the newest row stamped earlier than its predecessor (-1 = none)
+    private long vNext, lastInversion = -1;
+
+    // ECG ring plus chunk headers, addressed by absolute sample index
+    private double[] ecg = new double[0];
+    private int eHead, eSize;
+    private long ecgNext;
+    private final ArrayDeque<EcgChunk> chunks = new ArrayDeque<>();
+
+    BedTelemetryBuffer(RetentionPolicy policy) {
+        this(policy, 0);
+    }
+
+    /** seqBase is the sequence number before the first write. */
+    BedTelemetryBuffer(RetentionPolicy policy, long seqBase) {
+        this.policy = policy;
+        this.seq = seqBase;
+    }
+
+    /** Returns the sequence this write got. */
+    long append(PatientTelemetry in, long nowMs) {
+        long stamp = lock.writeLock();
+        try {
+            seq++;
+            appendVitals(in, nowMs);
+            appendEcg(in, nowMs);
+            return seq;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs a read without blocking the writer: optimistically first, keeping the result only
+     * if no append ran meanwhile (a read overlapping one may see torn state and fail, which
+     * is discarded too), then under the read lock once OPTIMISTIC_READS attempts have lost.
+     */
+    private <T> T read(Supplier<T> reader) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) break;
+            try {
+                T out = reader.get();
+                if (lock.validate(stamp)) return out;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        optimisticFallbacks.incrementAndGet();
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void appendVitals(PatientTelemetry in, long nowMs) {
+        LongColumn its = in.getTs();
+        int n = in.vitalsRows();
+        if (n == 0) return;
+
+        for (int i = 0; i < n; i++) {
+            if (vSize == ts.length && ts.length < policy.maxVitalSamples) growVitals();
+            int slot;
+            if (vSize < ts.length) {
+                slot = (vHead + vSize) % ts.length;
+                vSize++;
+            } else {
+                slot = vHead;
+                vHead = (vHead + 1) % ts.length;
+            }
+            long t = its.getOr(i, nowMs);
+            if (vSize > 1 && t < ts[(vHead + vSize - 2) % ts.length]) lastInversion = vNext;
+            ts[slot] = t;
+            rowSeq[slot] = seq;
+            vNext++;
+            hr[slot] = in.getHr().getOrNaN(i);
+            rr[slot] = in.getRr().getOrNaN(i);
+            sys[slot] = in.getSys().getOrNaN(i);
+            dia[slot] = in.getDia().getOrNaN(i);
+            temp[slot] = in.getTemp().getOrNaN(i);
+        }
+
+        if (policy.hasMaxAge()) {
+            long cutoff = ts[(vHead + vSize - 1) % ts.length] - policy.maxAgeMs;
+            while (vSize > 1 && ts[vHead] < cutoff) {
+                vHead = (vHead + 1) % ts.length;
+                vSize--;
+            }
+        }
+    }
+
+    private void appendEcg(PatientTelemetry in, long nowMs) {
+        DoubleColumn samples = in.getEcg();
+        if (samples.isEmpty()) return;
+
+        int fs = in.getEcgFs() != null && in.getEcgFs() > 0 ? in.getEcgFs() : DEFAULT_FS;
+        long start = in.getEcgTsStart() != null ? in.getEcgTsStart() : nowMs;
+        chunks.addLast(new EcgChunk(start, fs, ecgNext, seq));
+
+        for (int i = 0, n = samples.size(); i < n; i++) {
+            double v = samples.getDouble(i);
+            if (eSize == ecg.length && ecg.length < policy.maxEcgSamples) growEcg();
+            if (eSize < ecg.length) {
+                ecg[(eHead + eSize) % ecg.length] = v;
+                eSize++;
+            } else {
+                ecg[eHead] = v;
+                eHead = (eHead + 1) % ecg.length;
+            }
+            ecgNext++;
+        }
+
+        dropEvictedChunks();
+        if (policy.hasMaxAge()) {
+            trimEcgByAge();
+            dropEvictedChunks();
+        }
+    }
+
+    private void trimEcgByAge() {
+        EcgChunk last = chunks.peekLast();
+        long newestMs = last.startMs + (ecgNext - 1 - last.first) * 1000L / last.fs;
+        long cutoff = newestMs - policy.maxAgeMs;
+
+        Iterator<EcgChunk> it = chunks.iterator();
+        EcgChunk c = it.next();
+        while (eSize > 1) {
+            long oldest = ecgNext - eSize;
+            EcgChunk next = it.hasNext() ? it.next() : null;
+            long chunkEnd = next != null ? next.first : ecgNext;
+            // Samples of this chunk older than the cutoff
+            long tooOld = (long) Math.ceil((cutoff - c.startMs) * c.fs / 1000.0) + c.first - oldest;
+            long drop = Math.min(Math.max(0, tooOld), Math.min(chunkEnd - oldest, eSize - 1));
+            eHead = (int) ((eHead + drop) % ecg.length);
+            eSize -= (int) drop;
+            if (next == null || ecgNext - eSize < chunkEnd) break;
+            c = next;
+        }
+    }
+
+    private void dropEvictedChunks() {
+        long oldest = ecgNext - eSize;
+        while (chunks.size() > 1) {
+            Iterator<EcgChunk> it = chunks.iterator();
+            it.next();
+            if (it.next().first > oldest) break;
+            chunks.removeFirst();
+        }
+    }
+
+    private void growVitals() {
+        int cap = Math.min(policy.maxVitalSamples, Math.max(INITIAL_VITALS, ts.length * 2));
+        ts = grow(ts, vHead, vSize, cap);
+        rowSeq = grow(rowSeq, vHead, vSize, cap);
+        hr = grow(hr, vHead, vSize, cap);
+        rr = grow(rr, vHead, vSize, cap);
+        sys = grow(sys, vHead, vSize, cap);
+        dia = grow(dia, vHead, vSize, cap);
+        temp = grow(temp, vHead, vSize, cap);
+        vHead = 0;
+    }
+
+    private void growEcg() {
+        int cap = Math.min(policy.maxEcgSamples, Math.max(INITIAL_ECG, ecg.length * 2));
+        ecg = grow(ecg, eHead, eSize, cap);
+        eHead = 0;
+    }
+
+    private static long[] grow(long[] a, int head, int size, int cap) {
+        long[] out = new long[cap];
+        for (int i = 0; i < size; i++) out[i] = a[(head + i) % a.length];
+        return out;
+    }
+
+    private static double[] grow(double[] a, int head, int size, int cap) {
+        double[] out = new double[cap];
+        for (int i = 0; i < size; i++) out[i] = a[(head + i) % a.length];
+        return out;
+    }
+
+    /** Copies the retained history out, oldest first. */
+    PatientTelemetry snapshot() {
+        return read(() -> {
+            PatientTelemetry out = new PatientTelemetry();
+            out.setSeq(seq);
+            copyRows(vHead, vSize, out);
+
+            if (eSize > 0) {
+                long oldest = ecgNext - eSize;
+                EcgChunk first = chunks.peekFirst();
+                EcgChunk last = chunks.peekLast();
+                out.setEcgTsStart(first.startMs + (oldest - first.first) * 1000L / first.fs);
+                out.setEcgFs(last.fs);
+                copyRing(ecg, eHead, eSize, out.getEcg());
+            }
+            return out;
+        });
+    }
+
+    /**
+     * Rows with fromMs &lt;= ts &lt;= toMs and the ECG samples inside the window. Rows are
+     * located by binary search while the retained rows are in time order, which is the
+     * normal case; a bed that received out-of-order timestamps falls back to a scan.
+     */
+    PatientTelemetry range(long fromMs, long toMs) {
+        return range(fromMs, toMs, true);
+    }
+
+    /** range(), leaving out the ECG unless withEcg. */
+    PatientTelemetry range(long fromMs, long toMs, boolean withEcg) {
+        return read(() -> {
+            PatientTelemetry out = new PatientTelemetry();
+            out.setSeq(seq);
+            if (vSize > 0) {
+                if (lastInversion <= vNext - vSize) {
+                    int lo = firstRowAtOrAfter(fromMs);
+                    int hi = toMs == Long.MAX_VALUE ? vSize : firstRowAtOrAfter(toMs + 1);
+                    if (lo < hi) copyRows((vHead + lo) % ts.length, hi - lo, out);
+                } else {
+                    for (int i = 0; i < vSize; i++) {
+                        int slot = (vHead + i) % ts.length;
+                        if (ts[slot] >= fromMs && ts[slot] <= toMs) copyRows(slot, 1, out);
+                    }
+                }
+            }
+
+            if (withEcg) stitchEcg(new EcgStitcher(fromMs, toMs), Long.MIN_VALUE, Long.MAX_VALUE, out);
+            return out;
+        });
+    }
+
+    /** Rows and ECG chunks stored by writes after afterSeq, with seq set to the latest write. */
+    PatientTelemetry since(long afterSeq) {
+        return since(afterSeq, Long.MAX_VALUE);
+    }
+
+    /**
+     * since() limited to writes up to upToSeq, and past MAX_SINCE_ROWS rows to the write that
+     * reached the limit, with seq set to the last write returned.
+     */
+    PatientTelemetry since(long afterSeq, long upToSeq) {
+        return read(() -> {
+            long upTo = Math.min(seq, upToSeq);
+            PatientTelemetry out = new PatientTelemetry();
+            if (afterSeq >= upTo) {
+                out.setSeq(upTo);
+                return out;
+            }
+
+            // rowSeq only grows along the ring, so both ends are found by binary search
+            int lo = firstRowAfterSeq(afterSeq);
+            int hi = upTo == seq ? vSize : firstRowAfterSeq(upTo);
+            if (hi - lo > AbstractTelemetryStore.MAX_SINCE_ROWS) {
+                upTo = rowSeq[(vHead + lo + AbstractTelemetryStore.MAX_SINCE_ROWS - 1) % ts.length];
+                hi = firstRowAfterSeq(upTo);
+            }
+            out.setSeq(upTo);
+            if (lo < hi) copyRows((vHead + lo) % ts.length, hi - lo, out);
+
+            stitchEcg(new EcgStitcher(Long.MIN_VALUE, Long.MAX_VALUE), afterSeq, upTo, out);
+            return out;
+        });
+    }
+
+    // Logical index of the first retained row written after afterSeq (vSize if none)
+    private int firstRowAfterSeq(long afterSeq) {
+        int lo = 0, hi = vSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rowSeq[(vHead + mid) % ts.length] <= afterSeq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** The retained row with the greatest ts (the newest slot unless rows arrived out of order). */
+    PatientTelemetry latest() {
+        return read(() -> {
+            PatientTelemetry out = new PatientTelemetry();
+            out.setSeq(seq);
+            if (vSize == 0) return out;
+
+            int best = (vHead + vSize - 1) % ts.length;
+            if (lastInversion > vNext - vSize) {
+                for (int i = 0; i < vSize; i++) {
+                    int slot = (vHead + i) % ts.length;
+                    if (ts[slot] >= ts[best]) best = slot;
+                }
+            }
+            copyRows(best, 1, out);
+            return out;
+        });
+    }
+
+    long sequence() {
+        return read(() -> seq);
+    }
+
+    // Feeds the retained samples of chunks written in (afterSeq, upToSeq] to the stitcher, oldest first
+    private void stitchEcg(EcgStitcher stitcher, long afterSeq, long upToSeq, PatientTelemetry out) {
+        if (eSize == 0) return;
+        long oldest = ecgNext - eSize;
+        EcgChunk[] cs = chunks.toArray(new EcgChunk[0]);
+        for (int j = 0; j < cs.length; j++) {
+            EcgChunk c = cs[j];
+            long from = Math.max(c.first, oldest);
+            long end = j + 1 < cs.length ? cs[j + 1].first : ecgNext;
+            if (c.seq <= afterSeq || c.seq > upToSeq || from >= end) continue;
+
+            // The chunk's samples may wrap around the end of the ring
+            int pos = (int) ((eHead + from - oldest) % ecg.length);
+            // Never more than the ring holds; only a torn optimistic read could ask for more
+            int len = (int) Math.min(end - from, eSize);
+            int first = Math.min(len, ecg.length - pos);
+            stitcher.add(c.startMs + (from - c.first) * 1000L / c.fs, c.fs, ecg, pos, first);
+            if (first < len) {
+                stitcher.add(c.startMs + (from + first - c.first) * 1000L / c.fs, c.fs, ecg, 0, len - first);
+            }
+        }
+        stitcher.into(out);
+    }
+
+    // Logical index of the first retained row with ts >= t (vSize if none); rows must be in order
+    private int firstRowAtOrAfter(long t) {
+        int lo = 0, hi = vSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ts[(vHead + mid) % ts.length] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void copyRows(int head, int n, PatientTelemetry out) {
+        copyRing(ts, head, n, out.getTs());
+        copyRing(hr, head, n, out.getHr());
+        copyRing(rr, head, n, out.getRr());
+        copyRing(sys, head, n, out.getSys());
+        copyRing(dia, head, n, out.getDia());
+        copyRing(temp, head, n, out.getTemp());
+    }
+
+    private static void copyRing(long[] a, int head, int size, LongColumn out) {
+        int first = Math.min(size, a.length - head);
+        out.addAll(a, head, first);
+        out.addAll(a, 0, size - first);
+    }
+
+    private static void copyRing(double[] a, int head, int size, DoubleColumn out) {
+        int first = Math.min(size, a.length - head);
+        out.addAll(a, head, first);
+        out.addAll(a, 0, size - first);
+    }
+
+    int vitalsCount() {
+        return read(() -> vSize);
+    }
+
+    int ecgCount() {
+        return read(() -> eSize);
+    }
+
+    /** Bytes held by the ring arrays and chunk headers (excluding object headers). */
+    long bytesAllocated() {
+        return read(() -> ts.length * 8L * 7 + ecg.length * 8L + chunks.size() * 32L);
+    }
+
+    /**
+     * The retained state, oldest first, for InMemorySnapshotter: long seq, byte rows out of
+     * ts order, int rows, the ts / row seq / hr / rr / sys / dia / temp columns, int chunks,
+     * per chunk (long startMs, int fs, long first sample relative to the oldest, long seq),
+     * int samples, the ECG samples. Copied in bulk as one read; the caller writes it out.
+     */
+    ByteBuffer encodeSnapshot() {
+        return read(() -> {
+            int chunkBytes = chunks.size() * 28;
+            ByteBuffer b = ByteBuffer.allocate(8 + 1 + 4 + vSize * 8 * 7 + 4 + chunkBytes + 4 + eSize * 8);
+            b.putLong(seq).put((byte) (lastInversion > vNext - vSize ? 1 : 0)).putInt(vSize);
+            putRing(b, ts, vHead, vSize);
+            putRing(b, rowSeq, vHead, vSize);
+            putRing(b, hr, vHead, vSize);
+            putRing(b, rr, vHead, vSize);
+            putRing(b, sys, vHead, vSize);
+            putRing(b, dia, vHead, vSize);
+            putRing(b, temp, vHead, vSize);
+
+            long oldest = ecgNext - eSize;
+            b.putInt(chunks.size());
+            for (EcgChunk c : chunks) b.putLong(c.startMs).putInt(c.fs).putLong(c.first - oldest).putLong(c.seq);
+            b.putInt(eSize);
+            putRing(b, ecg, eHead, eSize);
+            b.flip();
+            return b;
+        });
+    }
+
+    /**
+     * A buffer holding what encodeSnapshot() wrote, trimmed to policy. Its sequence is at
+     * least seqBase, so cursors handed out before a restart stay behind new writes even when
+     * writes after the snapshot were lost.
+     */
+    static BedTelemetryBuffer restoreSnapshot(RetentionPolicy policy, ByteBuffer b, long seqBase) {
+        BedTelemetryBuffer out = new BedTelemetryBuffer(policy, Math.max(seqBase, b.getLong()));
+        boolean inverted = b.get() == 1;
+        int n = b.getInt();
+        int keep = Math.min(n, policy.maxVitalSamples);
+        int skip = n - keep;
+        out.ts = getColumn(b, skip, new long[keep]);
+        out.rowSeq = getColumn(b, skip, new long[keep]);
+        out.hr = getColumn(b, skip, new double[keep]);
+        out.rr = getColumn(b, skip, new double[keep]);
+        out.sys = getColumn(b, skip, new double[keep]);
+        out.dia = getColumn(b, skip, new double[keep]);
+        out.temp = getColumn(b, skip, new double[keep]);
+        out.vSize = keep;
+        out.vNext = keep;
+        out.lastInversion = inverted ? keep - 1 : -1;
+
+        int chunkCount = b.getInt();
+        long[] chunkHeaders = new long[chunkCount * 4];
+        for (int i = 0; i < chunkCount; i++) {
+            chunkHeaders[i * 4] = b.getLong();
+            chunkHeaders[i * 4 + 1] = b.getInt();
+            chunkHeaders[i * 4 + 2] = b.getLong();
+            chunkHeaders[i * 4 + 3] = b.getLong();
+        }
+        int m = b.getInt();
+        int keepEcg = Math.min(m, policy.maxEcgSamples);
+        out.ecg = getColumn(b, m - keepEcg, new double[keepEcg]);
+        out.eSize = keepEcg;
+        out.ecgNext = keepEcg;
+        for (int i = 0; i < chunkCount; i++) {
+            out.chunks.addLast(new EcgChunk(chunkHeaders[i * 4], (int) chunkHeaders[i * 4 + 1],
+                    chunkHeaders[i * 4 + 2] - (m - keepEcg), chunkHeaders[i * 4 + 3]));
+        }
+        if (keepEcg == 0) out.chunks.clear();
+        else out.dropEvictedChunks();
+        return out;
+    }
+
+    private static void putRing(ByteBuffer b, long[] a, int head, int size) {
+        int first = Math.min(size, a.length - head);
+        b.asLongBuffer().put(a, head, first).put(a, 0, size - first);
+        b.position(b.position() + size * 8);
+    }
+
+    private static void putRing(ByteBuffer b, double[] a, int head, int size) {
+        int first = Math.min(size, a.length - head);
+        b.asDoubleBuffer().put(a, head, first).put(a, 0, size - first);
+        b.position(b.position() + size * 8);
+    }
+
+    // Skips skip values at b's position, then reads into.length more
+    private static long[] getColumn(ByteBuffer b, int skip, long[] into) {
+        b.position(b.position() + skip * 8);
+        b.asLongBuffer().get(into);
+        b.position(b.position() + into.length * 8);
+        return into;
+    }
+
+    private static double[] getColumn(ByteBuffer b, int skip, double[] into) {
+        b.position(b.position() + skip * 8);
+        b.asDoubleBuffer().get(into);
+        b.position(b.position() + into.length * 8);
+        return into;
+    }
+
+    private static final class EcgChunk {
+        final long startMs;
+        final int fs;
+        final long first;
+        final long seq;
+
+        EcgChunk(long startMs, int fs, long first, long seq) {
+            this.startMs = startMs;
+            this.fs = fs;
+            this.first = first;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Publishes every write to /telemetry/stream subscribers once the backend has stored it. */
+public final class BroadcastingTelemetryStore extends ForwardingTelemetryStore {
+    private final TelemetryBroadcaster broadcaster;
+
+    public BroadcastingTelemetryStore(AbstractTelemetryStore delegate, TelemetryBroadcaster broadcaster) {
+        super(delegate);
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    public void store(String bedId, PatientTelemetry data) {
+        if (bedId != null && data != null) storeAll(Collections.singletonMap(bedId, data));
+    }
+
+    // Events carry the sequence each bed reached, so subscribers can resume with since=
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        Map<String, Long> seqs = delegate.storeAll(batch);
+        broadcaster.publish(batch, seqs);
+        return seqs;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>(delegate.stats());
+        m.put("stream", broadcaster.stats());
+        return m;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size byte[] chunks recycled across requests, so buffering upload bodies
+ * does not allocate a fresh array per POST. At most maxPooled chunks are kept
+ * idle; extra releases are left to the GC.
+ */
+public final class BufferPool {
+    private final int chunkSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedDeque<byte[]> free = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public BufferPool(int chunkSize, int maxPooled) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxPooled = Math.max(0, maxPooled);
+    }
+
+    public byte[] acquire() {
+        byte[] b = free.pollFirst();
+        if (b != null) {
+            pooled.decrementAndGet();
+            reused.incrementAndGet();
+            return b;
+        }
+        allocated.incrementAndGet();
+        return new byte[chunkSize];
+    }
+
+    public void release(byte[] b) {
+        if (b == null || b.length != chunkSize) return;
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offerFirst(b);
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("chunkSize", chunkSize);
+        m.put("pooled", pooled.get());
+        m.put("maxPooled", maxPooled);
+        m.put("allocated", allocated.get());
+        m.put("reused", reused.get());
+        return m;
+    }
+}
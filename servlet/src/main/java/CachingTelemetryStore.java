@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the latest-window reads dashboards poll: get(bed),
+ * getPage() (and so getAll()), getLatest() and sequences() (which every GET's
+ * ETag needs).
+ *
+ * Entries live for ttlMs and are dropped as soon as a write through this store
+ * has finished: the written beds' entries and the all-beds and page ones. Concurrent
+ * misses on one key share a single backend load (single-flight), so a burst of
+ * identical requests costs one query. Writes made by other processes against
+ * the same database show up within ttlMs. Range, ECG, rollup and incremental
+ * reads go straight through.
+ *
+ * Cached objects are shared between callers and must not be modified.
+ */
+public final class CachingTelemetryStore extends ForwardingTelemetryStore {
+    // Keys of the all-beds entries; bed entries are BED_KEY + bed id
+    private static final String BED_KEY = "bed:";
+    // Followed by the page's bed ids
+    private static final String PAGE_KEY = "\0page:";
+    private static final String LATEST_KEY = "\0latest";
+    private static final String SEQUENCES_KEY = "\0sequences";
+
+    private final long ttlNanos;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingTelemetryStore(AbstractTelemetryStore delegate, long ttlMs) {
+        super(delegate);
+        if (ttlMs <= 0) throw new IllegalArgumentException("ttlMs must be positive");
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    @Override
+    public void store(String bedId, PatientTelemetry data) {
+        try {
+            delegate.store(bedId, data);
+        } finally {
+            invalidate(bedId);
+        }
+    }
+
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        try {
+            return delegate.storeAll(batch);
+        } finally {
+            if (batch != null) batch.keySet().forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public PatientTelemetry get(String bedId) {
+        if (bedId == null) return delegate.get(null);
+        return cached(BED_KEY + bedId, () -> delegate.get(bedId));
+    }
+
+    // The page is loaded whole and replayed, so concurrent pollers of a page share one backend read
+    @Override
+    public void getPage(SortedMap<String, Long> page, PageSink sink) throws IOException {
+        Map<String, PatientTelemetry> beds = cached(PAGE_KEY + String.join("\n", page.keySet()), () -> {
+            Map<String, PatientTelemetry> out = new LinkedHashMap<>();
+            try {
+                delegate.getPage(page, out::put);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out;
+        });
+        for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) sink.accept(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public Map<String, PatientTelemetry> getLatest() {
+        return cached(LATEST_KEY, delegate::getLatest);
+    }
+
+    @Override
+    public Map<String, Long> sequences() {
+        return cached(SEQUENCES_KEY, delegate::sequences);
+    }
+
+    // After a write has finished, so a load racing it is dropped rather than kept for ttlMs
+    private void invalidate(String bedId) {
+        if (bedId != null) entries.remove(BED_KEY + bedId);
+        entries.keySet().removeIf(k -> k.startsWith(PAGE_KEY));
+        entries.remove(LATEST_KEY);
+        entries.remove(SEQUENCES_KEY);
+        invalidations.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(String key, Supplier<T> loader) {
+        for (;;) {
+            Entry e = entries.get(key);
+            if (e != null && !e.expired(System.nanoTime())) {
+                (e.value.isDone() ? hits : coalesced).incrementAndGet();
+                return (T) await(e);
+            }
+            Entry mine = new Entry();
+            boolean won = e == null ? entries.putIfAbsent(key, mine) == null : entries.replace(key, e, mine);
+            if (!won) continue;
+            return load(key, mine, loader);
+        }
+    }
+
+    private <T> T load(String key, Entry mine, Supplier<T> loader) {
+        long start = System.nanoTime();
+        T v;
+        try {
+            v = loader.get();
+        } catch (RuntimeException | Error ex) {
+            entries.remove(key, mine);
+            mine.value.completeExceptionally(ex);
+            throw ex;
+        }
+        long end = System.nanoTime();
+        loads.incrementAndGet();
+        loadNanos.addAndGet(end - start);
+        maxLoadNanos.accumulateAndGet(end - start, Math::max);
+        mine.expiresAtNanos = end + ttlNanos;
+        mine.value.complete(v);
+        return v;
+    }
+
+    private static Object await(Entry e) {
+        try {
+            return e.value.join();
+        } catch (CompletionException ex) {
+            // The leader's exception, rethrown to everyone waiting on its load
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>(delegate.stats());
+        long h = hits.get(), c = coalesced.get(), l = loads.get();
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("ttlMs", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+        cache.put("entries", entries.size());
+        cache.put("hits", h);
+        cache.put("coalesced", c);
+        cache.put("loads", l);
+        cache.put("hitRate", h + c + l == 0 ? 0.0 : (double) (h + c) / (h + c + l));
+        cache.put("avgLoadMs", l == 0 ? 0.0 : loadNanos.get() / 1e6 / l);
+        cache.put("maxLoadMs", maxLoadNanos.get() / 1e6);
+        cache.put("invalidations", invalidations.get());
+        m.put("cache", cache);
+        return m;
+    }
+
+    private static final class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        // Set once loaded; until then the entry is in flight and never expired
+        volatile long expiresAtNanos = Long.MAX_VALUE;
+
+        boolean expired(long now) {
+            return value.isDone() && now - expiresAtNanos >= 0;
+        }
+    }
+}
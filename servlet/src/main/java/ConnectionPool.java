@@ -0,0 +1,266 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small bounded JDBC pool for the db backend.
+ *
+ * Borrowed connections are handed out as proxies whose close() returns the
+ * physical connection to the pool. Idle connections are reused LIFO (warmest
+ * first), validated on borrow once they have sat idle for a while, and evicted
+ * down to poolMin after poolIdleTimeoutMs.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(ConnectionPool.class.getName());
+
+    // Connections used within this window are trusted without an isValid() round-trip
+    private static final long VALIDATE_AFTER_IDLE_MS = 1_000L;
+    private static final int VALIDATE_TIMEOUT_S = 2;
+
+    private final DbConfig cfg;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    public ConnectionPool(DbConfig cfg) {
+        this.cfg = cfg;
+        this.permits = new Semaphore(cfg.poolMax, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000L, cfg.poolIdleTimeoutMs / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Borrows a connection, waiting up to poolWaitTimeoutMs for a free slot. */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long t0 = System.nanoTime();
+        boolean acquired = permits.tryAcquire();
+        if (!acquired) {
+            waits.incrementAndGet();
+            try {
+                acquired = permits.tryAcquire(cfg.poolWaitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a pooled connection", e);
+            }
+            long waited = System.nanoTime() - t0;
+            waitNanosTotal.addAndGet(waited);
+            waitNanosMax.accumulateAndGet(waited, Math::max);
+            if (!acquired) {
+                timeouts.incrementAndGet();
+                throw new SQLTransientConnectionException(
+                        "Timed out after " + cfg.poolWaitTimeoutMs + " ms waiting for a pooled connection ("
+                                + cfg.poolMax + " in use)");
+            }
+        }
+
+        try {
+            Connection physical = takeIdle();
+            if (physical == null) physical = create();
+            borrows.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeIdle() {
+        Idle i;
+        while ((i = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - i.sinceMs < VALIDATE_AFTER_IDLE_MS || isValid(i.conn)) {
+                return i.conn;
+            }
+            validationFailures.incrementAndGet();
+            destroy(i.conn);
+        }
+        return null;
+    }
+
+    private Connection create() throws SQLException {
+        DriverManager.setLoginTimeout(5);
+        Properties props = new Properties();
+        if (cfg.user != null && !cfg.user.isBlank()) {
+            props.setProperty("user", cfg.user);
+            if (cfg.password != null) props.setProperty("password", cfg.password);
+        }
+        // pgjdbc: send executeBatch() as multi-row INSERTs instead of one statement per row
+        props.setProperty("reWriteBatchedInserts", "true");
+        Connection c = DriverManager.getConnection(cfg.url, props);
+        open.incrementAndGet();
+        created.incrementAndGet();
+        return c;
+    }
+
+    private void giveBack(Connection physical) {
+        try {
+            if (closed || physical.isClosed()) {
+                destroy(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new Idle(physical, System.currentTimeMillis()));
+        } catch (SQLException e) {
+            destroy(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long cutoff = System.currentTimeMillis() - cfg.poolIdleTimeoutMs;
+            // Oldest idle connections sit at the tail of the deque
+            Iterator<Idle> it = idle.descendingIterator();
+            while (it.hasNext() && open.get() > cfg.poolMin) {
+                Idle i = it.next();
+                if (i.sinceMs >= cutoff) break;
+                if (idle.remove(i)) {
+                    evicted.incrementAndGet();
+                    destroy(i.conn);
+                }
+            }
+
+            while (!closed && open.get() < cfg.poolMin) {
+                idle.offerLast(new Idle(create(), System.currentTimeMillis()));
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Pool housekeeping failed", e);
+        }
+    }
+
+    private static boolean isValid(Connection c) {
+        try {
+            return c.isValid(VALIDATE_TIMEOUT_S);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(Connection c) {
+        open.decrementAndGet();
+        try {
+            c.close();
+        } catch (SQLException ignored) {}
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Lease(physical));
+    }
+
+    public Map<String, Object> stats() {
+        long b = borrows.get();
+        long w = waits.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("open", open.get());
+        m.put("idle", idle.size());
+        m.put("inUse", cfg.poolMax - permits.availablePermits());
+        m.put("max", cfg.poolMax);
+        m.put("waitingThreads", permits.getQueueLength());
+        m.put("borrows", b);
+        m.put("waits", w);
+        m.put("waitMsAvg", w == 0 ? 0.0 : waitNanosTotal.get() / 1e6 / w);
+        m.put("waitMsMax", waitNanosMax.get() / 1e6);
+        m.put("timeouts", timeouts.get());
+        m.put("created", created.get());
+        m.put("evicted", evicted.get());
+        m.put("validationFailures", validationFailures.get());
+        return m;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Idle i;
+        while ((i = idle.pollFirst()) != null) destroy(i.conn);
+    }
+
+    private static final class Idle {
+        final Connection conn;
+        final long sinceMs;
+
+        Idle(Connection conn, long sinceMs) {
+            this.conn = conn;
+            this.sinceMs = sinceMs;
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final Connection physical;
+        private boolean returned;
+
+        Lease(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            switch (m.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + physical + "]";
+                default:
+                    if (returned) throw new SQLException("Connection already returned to pool");
+                    try {
+                        return m.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -3,14 +3,65 @@ public final class DbConfig {
     public final String user;
     public final String password;
 
+    // Connection pool sizing / housekeeping
+    public final int poolMin;
+    public final int poolMax;
+    public final long poolIdleTimeoutMs;
+    public final long poolWaitTimeoutMs;
+
+    // Daily range partitions for vital_snapshots / ecg_segments, made partitionPremakeDays ahead;
+    // retentionDays > 0 drops whole partitions that old. Only applies to tables created partitioned.
+    public final boolean partitioned;
+    public final int partitionPremakeDays;
+    public final int retentionDays;
+    public final long maintenanceIntervalMs;
+
+    // Background merge of contiguous ECG segments older than ecgCompactAfterMs (behind each bed's
+    // newest segment) into blocks of up to ecgBlockMs; ecgCompactIntervalMs <= 0 turns it off
+    public final long ecgBlockMs;
+    public final long ecgCompactAfterMs;
+    public final long ecgCompactIntervalMs;
+
     public DbConfig(String url, String user, String password) {
+        this(url, user, password, 1, 8, 5 * 60_000L, 5_000L);
+    }
+
+    public DbConfig(String url, String user, String password,
+                    int poolMin, int poolMax, long poolIdleTimeoutMs, long poolWaitTimeoutMs) {
+        this(url, user, password, poolMin, poolMax, poolIdleTimeoutMs, poolWaitTimeoutMs, false, 2, 0, 3_600_000L);
+    }
+
+    public DbConfig(String url, String user, String password,
+                    int poolMin, int poolMax, long poolIdleTimeoutMs, long poolWaitTimeoutMs,
+                    boolean partitioned, int partitionPremakeDays, int retentionDays, long maintenanceIntervalMs) {
+        this(url, user, password, poolMin, poolMax, poolIdleTimeoutMs, poolWaitTimeoutMs,
+                partitioned, partitionPremakeDays, retentionDays, maintenanceIntervalMs, 60_000L, 60_000L, 60_000L);
+    }
+
+    public DbConfig(String url, String user, String password,
+                    int poolMin, int poolMax, long poolIdleTimeoutMs, long poolWaitTimeoutMs,
+                    boolean partitioned, int partitionPremakeDays, int retentionDays, long maintenanceIntervalMs,
+                    long ecgBlockMs, long ecgCompactAfterMs, long ecgCompactIntervalMs) {
         this.url = url;
         this.user = user;
         this.password = password;
+        this.poolMax = Math.max(1, poolMax);
+        this.poolMin = Math.max(0, Math.min(poolMin, this.poolMax));
+        this.poolIdleTimeoutMs = Math.max(1_000L, poolIdleTimeoutMs);
+        this.poolWaitTimeoutMs = Math.max(0L, poolWaitTimeoutMs);
+        this.partitioned = partitioned;
+        this.partitionPremakeDays = Math.max(0, partitionPremakeDays);
+        this.retentionDays = Math.max(0, retentionDays);
+        this.maintenanceIntervalMs = Math.max(60_000L, maintenanceIntervalMs);
+        this.ecgBlockMs = Math.max(1_000L, ecgBlockMs);
+        this.ecgCompactAfterMs = Math.max(0L, ecgCompactAfterMs);
+        this.ecgCompactIntervalMs = ecgCompactIntervalMs <= 0 ? 0 : Math.max(1_000L, ecgCompactIntervalMs);
     }
 
     public String sanitized() {
-        return "url=" + url + ", user=" + (user == null ? "(null)" : user);
+        return "url=" + url + ", user=" + (user == null ? "(null)" : user)
+                + ", pool=" + poolMin + ".." + poolMax
+                + (partitioned ? ", partitioned daily" + (retentionDays > 0 ? ", retention=" + retentionDays + "d" : "") : "");
     }
 
     public static DbConfig fromEnv() {
@@ -37,11 +88,32 @@ public final class DbConfig {
         }
 
         if (url == null || url.isBlank()) return null;
-        return new DbConfig(url, user, pw);
+        return new DbConfig(url, user, pw,
+                (int) getenvLong("DB_POOL_MIN", 1),
+                (int) getenvLong("DB_POOL_MAX", 8),
+                getenvLong("DB_POOL_IDLE_TIMEOUT_MS", 5 * 60_000L),
+                getenvLong("DB_POOL_WAIT_TIMEOUT_MS", 5_000L),
+                "true".equalsIgnoreCase(getenv("DB_PARTITIONED")),
+                (int) getenvLong("DB_PARTITION_PREMAKE_DAYS", 2),
+                (int) getenvLong("DB_RETENTION_DAYS", 0),
+                getenvLong("DB_MAINTENANCE_INTERVAL_MS", 3_600_000L),
+                getenvLong("DB_ECG_BLOCK_MS", 60_000L),
+                getenvLong("DB_ECG_COMPACT_AFTER_MS", 60_000L),
+                getenvLong("DB_ECG_COMPACT_INTERVAL_MS", 60_000L));
     }
 
     private static String getenv(String k) {
         String v = System.getenv(k);
         return v == null ? null : v.trim();
     }
+
+    static long getenvLong(String k, long fallback) {
+        String v = getenv(k);
+        if (v == null || v.isBlank()) return fallback;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
 }
@@ -0,0 +1,316 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background merge of ECG segments into larger blocks for the db backend.
+ *
+ * Publishers upload about a second of ECG per post, so ecg_segments gains a
+ * row (bed_id text, index entries, tuple overhead) per bed per second. Each
+ * pass rewrites runs of contiguous segments of one bed (same sample rate, each
+ * starting where the previous one ends, within half a sample) as a single row
+ * of up to blockMs, keeping the first segment's start. The block's seq is its
+ * newest part's and seq_min its oldest's; part_seqs / part_offsets keep each
+ * part's seq and first sample, so since reads return only the parts after the
+ * cursor (see DbTelemetryStore.getSince()).
+ *
+ * Only segments starting compactAfterMs before the bed's newest segment are
+ * touched, so get()/getAll() still see the newest upload as-is. Blocks never
+ * span more than the range reads' segment lookback, so getRange() finds them
+ * unchanged. Overlapping or out-of-order segments are left alone.
+ */
+final class DbEcgCompactor implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(DbEcgCompactor.class.getName());
+
+    // Segments read per bed per pass; a longer backlog is worked off over later passes
+    private static final int MAX_SEGMENTS_PER_PASS = 10_000;
+
+    private final ConnectionPool pool;
+    private final DbPartitions partitions;
+    private final long blockMs;
+    private final long compactAfterMs;
+    private final ScheduledExecutorService executor;
+    // Bed -> start of the last run seen, which may still grow; later passes resume there
+    private final Map<String, Long> resumeAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong blocks = new AtomicLong();
+    private volatile long lastRunMs;
+
+    private DbEcgCompactor(ConnectionPool pool, DbPartitions partitions, long blockMs, long compactAfterMs) {
+        this.pool = pool;
+        this.partitions = partitions;
+        this.blockMs = blockMs;
+        this.compactAfterMs = compactAfterMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-ecg-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Schedules compaction every cfg.ecgCompactIntervalMs; null when that is 0. */
+    static DbEcgCompactor start(ConnectionPool pool, DbPartitions partitions, DbConfig cfg, long maxBlockMs) {
+        if (cfg.ecgCompactIntervalMs <= 0) return null;
+        DbEcgCompactor c = new DbEcgCompactor(pool, partitions, Math.min(cfg.ecgBlockMs, maxBlockMs), cfg.ecgCompactAfterMs);
+        c.executor.scheduleWithFixedDelay(c::compactQuietly, cfg.ecgCompactIntervalMs, cfg.ecgCompactIntervalMs, TimeUnit.MILLISECONDS);
+        return c;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (SQLException | RuntimeException e) {
+            log.log(Level.WARNING, "ECG compaction failed", e);
+        }
+    }
+
+    /** One pass over every bed; returns the number of segments merged away. */
+    long compact() throws SQLException {
+        long before = merged.get();
+        try (Connection c = pool.borrow()) {
+            Map<String, Long> newest = new LinkedHashMap<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT p.bed_id, e.ts_start_ms FROM patients p JOIN LATERAL (" +
+                            " SELECT ts_start_ms FROM ecg_segments WHERE bed_id = p.bed_id" +
+                            " ORDER BY ts_start_ms DESC LIMIT 1" +
+                            ") e ON true");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) newest.put(rs.getString(1), rs.getLong(2));
+            }
+            resumeAt.keySet().retainAll(newest.keySet());
+
+            for (Map.Entry<String, Long> e : newest.entrySet()) {
+                compactBed(c, e.getKey(), e.getValue() - compactAfterMs);
+            }
+        }
+        lastRunMs = System.currentTimeMillis();
+        return merged.get() - before;
+    }
+
+    private void compactBed(Connection c, String bedId, long beforeMs) throws SQLException {
+        long from = resumeAt.getOrDefault(bedId, Long.MIN_VALUE);
+        if (from >= beforeMs) return;
+
+        Lock partitionLock = partitions != null ? partitions.ingestLock() : null;
+        if (partitionLock != null) partitionLock.lock();
+        try {
+            c.setAutoCommit(false);
+            List<Segment> segments = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT id, seq, ts_start_ms, fs_hz, samples_bin, samples, part_seqs, part_offsets FROM ecg_segments " +
+                            "WHERE bed_id=? AND ts_start_ms >= ? AND ts_start_ms < ? " +
+                            "ORDER BY ts_start_ms, id LIMIT " + MAX_SEGMENTS_PER_PASS
+            )) {
+                ps.setString(1, bedId);
+                ps.setLong(2, from);
+                ps.setLong(3, beforeMs);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long seq = rs.getLong(2);
+                        Segment seg = new Segment(rs.getLong(1), rs.wasNull() ? null : seq,
+                                rs.getLong(3), rs.getInt(4), rs.getBytes(5), rs.getString(6));
+                        Array partSeqs = rs.getArray(7), partOffsets = rs.getArray(8);
+                        if (partSeqs != null && partOffsets != null) {
+                            seg.parts((Long[]) partSeqs.getArray(), (Integer[]) partOffsets.getArray());
+                        }
+                        segments.add(seg);
+                    }
+                }
+            }
+
+            // The last run may still grow, so the next pass starts over at it
+            long resume = from;
+            for (List<Segment> run : runs(segments, blockMs)) {
+                resume = run.get(0).startMs;
+                if (run.size() > 1) writeBlock(c, bedId, merge(run));
+            }
+            c.commit();
+            resumeAt.put(bedId, resume);
+        } catch (SQLException | RuntimeException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+            if (partitionLock != null) partitionLock.unlock();
+        }
+    }
+
+    /** Splits segments (in start order) into runs continues() accepts; a segment that joins nothing is a run of one. */
+    static List<List<Segment>> runs(List<Segment> segments, long blockMs) {
+        List<List<Segment>> out = new ArrayList<>();
+        int runStart = 0;
+        long runSamples = 0;
+        for (int i = 0; i <= segments.size(); i++) {
+            if (i > runStart && (i == segments.size() || !continues(segments.get(runStart), runSamples, segments.get(i), blockMs))) {
+                out.add(segments.subList(runStart, i));
+                runStart = i;
+                runSamples = 0;
+            }
+            if (i < segments.size() && segments.get(i).samples() != null) runSamples += segments.get(i).samples().length;
+        }
+        return out;
+    }
+
+    // Whether next starts where a run of runSamples from first ends, without the block outgrowing blockMs
+    static boolean continues(Segment first, long runSamples, Segment next, long blockMs) {
+        if (next.fs != first.fs || first.fs <= 0 || first.samples() == null || next.samples() == null) return false;
+        double endMs = first.startMs + runSamples * 1000.0 / first.fs;
+        if (Math.abs(next.startMs - endMs) > Math.max(1.0, 500.0 / first.fs)) return false;
+        return (runSamples + next.samples().length) * 1000.0 / first.fs <= blockMs;
+    }
+
+    /** The row a run is rewritten as: its samples end to end, and every part of every segment shifted to match. */
+    static Block merge(List<Segment> run) {
+        Block b = new Block(run.get(0).startMs, run.get(0).fs);
+        int n = 0;
+        for (Segment s : run) n += s.samples().length;
+        b.samples = new double[n];
+        b.ids = new Long[run.size()];
+        int at = 0;
+        for (int k = 0; k < run.size(); k++) {
+            Segment s = run.get(k);
+            // A block merged again keeps its parts, shifted to where its samples now start
+            for (int p = 0; p < s.partSeqs.length; p++) {
+                Long ps = s.partSeqs[p];
+                b.partSeqs.add(ps);
+                b.partOffsets.add(at + s.partOffsets[p]);
+                if (ps != null) {
+                    b.seq = b.seq == null ? ps : Math.max(b.seq, ps);
+                    b.seqMin = b.seqMin == null ? ps : Math.min(b.seqMin, ps);
+                }
+            }
+            System.arraycopy(s.samples(), 0, b.samples, at, s.samples().length);
+            at += s.samples().length;
+            b.ids[k] = s.id;
+        }
+        b.lastStartMs = run.get(run.size() - 1).startMs;
+        return b;
+    }
+
+    private void writeBlock(Connection c, String bedId, Block b) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO ecg_segments(bed_id, seq, seq_min, part_seqs, part_offsets, ts_start_ms, fs_hz, samples_bin) " +
+                        "VALUES (?,?,?,?,?,?,?,?)"
+        )) {
+            ps.setString(1, bedId);
+            if (b.seq == null) ps.setNull(2, Types.BIGINT);
+            else ps.setLong(2, b.seq);
+            if (b.seqMin == null) ps.setNull(3, Types.BIGINT);
+            else ps.setLong(3, b.seqMin);
+            ps.setArray(4, c.createArrayOf("bigint", b.partSeqs.toArray()));
+            ps.setArray(5, c.createArrayOf("integer", b.partOffsets.toArray()));
+            ps.setLong(6, b.startMs);
+            ps.setInt(7, b.fs);
+            ps.setBytes(8, EcgCodec.encode(b.samples, b.samples.length));
+            ps.executeUpdate();
+        }
+        // The start-time bounds let a partitioned table prune to the run's partitions
+        try (PreparedStatement ps = c.prepareStatement(
+                "DELETE FROM ecg_segments WHERE bed_id=? AND ts_start_ms BETWEEN ? AND ? AND id = ANY(?)"
+        )) {
+            Array idArr = c.createArrayOf("bigint", b.ids);
+            ps.setString(1, bedId);
+            ps.setLong(2, b.startMs);
+            ps.setLong(3, b.lastStartMs);
+            ps.setArray(4, idArr);
+            ps.executeUpdate();
+        }
+        merged.addAndGet(b.ids.length - 1);
+        blocks.incrementAndGet();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("blockMs", blockMs);
+        m.put("compactAfterMs", compactAfterMs);
+        m.put("blocksWritten", blocks.get());
+        m.put("segmentsMerged", merged.get());
+        m.put("lastRunMs", lastRunMs);
+        return m;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** A merged run: one ecg_segments row, replacing the rows with ids. */
+    static final class Block {
+        final long startMs;
+        final int fs;
+        long lastStartMs;
+        double[] samples;
+        Long[] ids;
+        Long seq, seqMin;
+        final List<Long> partSeqs = new ArrayList<>();
+        final List<Integer> partOffsets = new ArrayList<>();
+
+        Block(long startMs, int fs) {
+            this.startMs = startMs;
+            this.fs = fs;
+        }
+    }
+
+    static final class Segment {
+        final long id;
+        final Long seq;
+        final long startMs;
+        final int fs;
+        private final byte[] bin;
+        private final String text;
+        private double[] samples;
+        private boolean decoded;
+        // Seq and first sample of each part; a plain upload is one part
+        Long[] partSeqs;
+        int[] partOffsets = {0};
+
+        Segment(long id, Long seq, long startMs, int fs, byte[] bin, String text) {
+            this.id = id;
+            this.seq = seq;
+            this.startMs = startMs;
+            this.fs = fs;
+            this.bin = bin;
+            this.text = text;
+            this.partSeqs = new Long[] {seq};
+        }
+
+        // The parts of a block written by an earlier pass
+        void parts(Long[] seqs, Integer[] offsets) {
+            int n = Math.min(seqs.length, offsets.length);
+            if (n == 0) return;
+            partSeqs = Arrays.copyOf(seqs, n);
+            partOffsets = new int[n];
+            for (int i = 0; i < n; i++) partOffsets[i] = offsets[i] == null ? 0 : offsets[i];
+        }
+
+        // Decoded on first use, null if undecodable; rows written before samples_bin existed only carry the TEXT column
+        double[] samples() {
+            if (!decoded) {
+                decoded = true;
+                try {
+                    samples = bin != null ? EcgCodec.decode(bin) : EcgCodec.decodeText(text);
+                } catch (IllegalArgumentException e) {
+                    log.log(Level.WARNING, "Leaving undecodable ECG segment " + id + " uncompacted", e);
+                }
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Daily range partitions for the db backend's history tables.
+ *
+ * vital_snapshots (by ts_ms) and ecg_segments (by ts_start_ms) get one
+ * partition per UTC day, named e.g. vital_snapshots_p20260118. Partitions are
+ * created ahead of time by a maintenance task and, for timestamps it did not
+ * foresee (publishers stamp simulation time), just before the insert that
+ * needs them. Timestamps outside 1970..9999 go to a DEFAULT partition.
+ *
+ * Retention drops whole partitions whose day ended more than retentionDays
+ * before the newest stored vitals row (patient_latest) or the clock, whichever
+ * is earlier: like RetentionPolicy, age follows the data when publishers run
+ * behind real time, while a bogus future timestamp cannot expire everything.
+ * Dropping a partition is a catalog operation, so no row-wise DELETE or vacuum
+ * is needed. Writers hold the shared side of a lock (lockForIngest()) until
+ * commit so a partition cannot be dropped under an insert; creating or dropping
+ * a partition takes the exclusive side, since CREATE ... PARTITION OF locks the
+ * parent and DEFAULT partition and would deadlock against an insert in flight.
+ * Rows older than the retention window are still stored and go with the next
+ * maintenance pass.
+ */
+final class DbPartitions implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(DbPartitions.class.getName());
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final long MAX_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final List<String> TABLES = List.of("vital_snapshots", "ecg_segments");
+
+    private final ConnectionPool pool;
+    private final DbConfig cfg;
+    private final List<String> tables;
+    // Day partitions known to exist, as partition names
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService maintenance;
+    // Shared by writers until commit, exclusive while creating or dropping partitions
+    private final ReentrantReadWriteLock ddlLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastMaintenanceMs;
+
+    private DbPartitions(ConnectionPool pool, DbConfig cfg, List<String> tables) {
+        this.pool = pool;
+        this.cfg = cfg;
+        this.tables = tables;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-partition-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets up partition handling for whichever history tables are partitioned and schedules
+     * maintenance; null if none are (tables created before partitioning was enabled keep
+     * their layout and need a manual migration).
+     */
+    static DbPartitions start(ConnectionPool pool, Connection c, DbConfig cfg) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        for (String table : TABLES) {
+            if (isPartitioned(c, table)) tables.add(table);
+            else log.warning(table + " is not partitioned (created before DB_PARTITIONED); retention skips it");
+        }
+        if (tables.isEmpty()) return null;
+
+        DbPartitions p = new DbPartitions(pool, cfg, tables);
+        try (Statement s = c.createStatement()) {
+            for (String table : tables) {
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + "_default PARTITION OF " + table + " DEFAULT");
+                p.known.addAll(p.partitionsOf(c, table).keySet());
+            }
+        }
+        p.maintenance.scheduleWithFixedDelay(p::maintainQuietly, 0, cfg.maintenanceIntervalMs, TimeUnit.MILLISECONDS);
+        return p;
+    }
+
+    private static boolean isPartitioned(Connection c, String table) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT 1 FROM pg_partitioned_table pt JOIN pg_class r ON r.oid = pt.partrelid " +
+                        "WHERE r.relname = ? AND pg_table_is_visible(r.oid)"
+        )) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Creates any missing day partitions for these epoch days, outside any transaction, and
+     * returns the shared lock, held, for the caller to release once its transaction ends.
+     */
+    Lock lockForIngest(Connection c, Collection<Long> days) throws SQLException {
+        Lock shared = ddlLock.readLock();
+        for (;;) {
+            shared.lock();
+            if (covers(days)) return shared;
+            shared.unlock();
+            ddlLock.writeLock().lock();
+            try {
+                ensure(c, days);
+            } finally {
+                ddlLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** Held while rewriting rows of existing partitions, so none is dropped meanwhile. */
+    Lock ingestLock() {
+        return ddlLock.readLock();
+    }
+
+    private boolean covers(Collection<Long> days) {
+        for (long day : days) {
+            if (day < 0 || day > MAX_DAY) continue;
+            for (String table : tables) {
+                if (!known.contains(name(table, day))) return false;
+            }
+        }
+        return true;
+    }
+
+    // Callers hold the exclusive lock
+    private void ensure(Connection c, Collection<Long> days) throws SQLException {
+        for (long day : days) {
+            if (day < 0 || day > MAX_DAY) continue;
+            for (String table : tables) {
+                if (!known.contains(name(table, day))) create(c, table, day);
+            }
+        }
+    }
+
+    static long day(long ms) {
+        return Math.floorDiv(ms, DAY_MS);
+    }
+
+    private void create(Connection c, String table, long day) throws SQLException {
+        String name = name(table, day);
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + table
+                    + " FOR VALUES FROM (" + day * DAY_MS + ") TO (" + (day + 1) * DAY_MS + ")");
+            created.incrementAndGet();
+        } catch (SQLException e) {
+            // 42P07 / 23505: another writer created it first
+            if (!"42P07".equals(e.getSQLState()) && !"23505".equals(e.getSQLState())) throw e;
+        }
+        known.add(name);
+    }
+
+    private static String name(String table, long day) {
+        return table + "_p" + LocalDate.ofEpochDay(day).format(SUFFIX);
+    }
+
+    // Day partitions of table by name -> epoch day
+    private Map<String, Long> partitionsOf(Connection c, String table) throws SQLException {
+        Map<String, Long> out = new LinkedHashMap<>();
+        String prefix = table + "_p";
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT r.relname FROM pg_inherits i " +
+                        "JOIN pg_class r ON r.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+                        "WHERE p.relname = ? ORDER BY r.relname"
+        )) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String rel = rs.getString(1);
+                    if (!rel.startsWith(prefix) || rel.length() != prefix.length() + 8) continue;
+                    try {
+                        out.put(rel, LocalDate.parse(rel.substring(prefix.length()), SUFFIX).toEpochDay());
+                    } catch (RuntimeException ignored) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (SQLException | RuntimeException e) {
+            log.log(Level.WARNING, "Partition maintenance failed", e);
+        }
+    }
+
+    /** Creates the partitions for today and the next partitionPremakeDays, then applies retention. */
+    void maintain() throws SQLException {
+        try (Connection c = pool.borrow()) {
+            long newest = newestMs(c);
+            List<Long> days = new ArrayList<>();
+            for (long d = 0; d <= cfg.partitionPremakeDays; d++) {
+                days.add(day(System.currentTimeMillis()) + d);
+                days.add(day(newest) + d);
+            }
+            if (!covers(days)) {
+                ddlLock.writeLock().lock();
+                try {
+                    ensure(c, days);
+                } finally {
+                    ddlLock.writeLock().unlock();
+                }
+            }
+
+            if (cfg.retentionDays > 0) {
+                long cutoff = Math.min(newest, System.currentTimeMillis()) - cfg.retentionDays * DAY_MS;
+                for (String table : tables) {
+                    for (Map.Entry<String, Long> p : partitionsOf(c, table).entrySet()) {
+                        if ((p.getValue() + 1) * DAY_MS > cutoff) continue;
+                        ddlLock.writeLock().lock();
+                        try (Statement s = c.createStatement()) {
+                            s.executeUpdate("DROP TABLE IF EXISTS " + p.getKey());
+                            known.remove(p.getKey());
+                        } finally {
+                            ddlLock.writeLock().unlock();
+                        }
+                        dropped.incrementAndGet();
+                        log.info("Dropped expired partition " + p.getKey());
+                    }
+                }
+            }
+            lastMaintenanceMs = System.currentTimeMillis();
+        }
+    }
+
+    // Newest stored vitals timestamp, or the clock while nothing is stored
+    private static long newestMs(Connection c) throws SQLException {
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT max(ts_ms) FROM patient_latest")) {
+            long v = rs.next() ? rs.getLong(1) : 0;
+            return rs.wasNull() ? System.currentTimeMillis() : v;
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tables", tables);
+        m.put("partitions", known.size());
+        m.put("created", created.get());
+        m.put("dropped", dropped.get());
+        m.put("retentionDays", cfg.retentionDays);
+        m.put("lastMaintenanceMs", lastMaintenanceMs);
+        return m;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+    }
+}
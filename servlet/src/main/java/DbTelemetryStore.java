@@ -1,13 +1,29 @@
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DbTelemetryStore extends AbstractTelemetryStore {
     private static final Logger log = Logger.getLogger(DbTelemetryStore.class.getName());
     private static final int DEFAULT_VITAL_LIMIT = 600;
-
-    private final DbConfig cfg;
+    // Range reads stream rows in chunks of this size instead of buffering the whole result
+    private static final int RANGE_FETCH_SIZE = 2_000;
+    // ECG segments are looked up by start time; one starting this long before a range may still overlap it.
+    // Longer uploads are stored as several segments (ecgSegmentSamples) and DbEcgCompactor keeps its blocks within it
+    static final long ECG_SEGMENT_LOOKBACK_MS = 60_000L;
+
+    /** How vitals/ECG rows are written: JDBC batches or PostgreSQL COPY FROM STDIN. */
+    public enum IngestMode { BATCH, COPY }
+
+    private final ConnectionPool pool;
+    private final boolean useCopy;
+    // Day-partition upkeep and retention; null unless DbConfig.partitioned and the tables are partitioned
+    private final DbPartitions partitions;
+    // Merges small ECG segments into blocks in the background; null when disabled
+    private final DbEcgCompactor ecgCompactor;
 
     static {
         try {
@@ -19,145 +35,341 @@ public class DbTelemetryStore extends AbstractTelemetryStore {
     }
 
     public DbTelemetryStore(DbConfig cfg) {
-        this.cfg = cfg;
+        this(cfg, IngestMode.BATCH);
+    }
+
+    public DbTelemetryStore(DbConfig cfg, IngestMode mode) {
+        this.pool = new ConnectionPool(cfg);
         try (Connection c = open()) {
-            Sql.initSchema(c);
+            Sql.initSchema(c, cfg.partitioned);
             log.info("DB schema init OK");
+            this.partitions = cfg.partitioned ? DbPartitions.start(pool, c, cfg) : null;
+            this.ecgCompactor = DbEcgCompactor.start(pool, partitions, cfg, ECG_SEGMENT_LOOKBACK_MS);
+
+            boolean copy = mode == IngestMode.COPY;
+            if (copy && !PgCopy.supported(c)) {
+                log.warning("COPY ingest requested but the JDBC driver is not pgjdbc; using batched inserts");
+                copy = false;
+            }
+            this.useCopy = copy;
         } catch (SQLException e) {
+            pool.close();
             throw new RuntimeException("DB schema init failed", e);
         }
     }
 
     private Connection open() throws SQLException {
-        DriverManager.setLoginTimeout(5);
-
-        if (cfg.user == null || cfg.user.isBlank()) {
-            return DriverManager.getConnection(cfg.url);
-        }
-        return DriverManager.getConnection(cfg.url, cfg.user, cfg.password);
+        return pool.borrow();
     }
 
     @Override
     public void store(String bedId, PatientTelemetry data) {
         if (bedId == null || bedId.isBlank() || data == null) return;
+        storeAll(Collections.singletonMap(bedId, data));
+    }
+
+    /** Persists a whole multi-bed payload on one connection in one transaction. */
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        if (batch == null || batch.isEmpty()) return Collections.emptyMap();
+
+        // Sorted so concurrent payloads touch patient rows in the same order
+        Map<String, PatientTelemetry> beds = new TreeMap<>();
+        for (Map.Entry<String, PatientTelemetry> e : batch.entrySet()) {
+            String bedId = e.getKey();
+            if (bedId == null || bedId.isBlank() || e.getValue() == null) continue;
+            beds.put(bedId, e.getValue());
+        }
+        if (beds.isEmpty()) return Collections.emptyMap();
         long now = System.currentTimeMillis();
 
+        Lock partitionLock = null;
         try (Connection c = open()) {
+            if (partitions != null) partitionLock = partitions.lockForIngest(c, days(beds, now));
             c.setAutoCommit(false);
-            ensurePatient(c, bedId);
-            insertVitals(c, bedId, data, now);
-            insertEcg(c, bedId, data, now);
+            Map<String, Long> seqs = nextSequences(c, beds.keySet());
+            if (useCopy) {
+                copyVitals(c, beds, seqs, now);
+                copyEcg(c, beds, seqs, now);
+            } else {
+                insertVitals(c, beds, seqs, now);
+                insertEcg(c, beds, seqs, now);
+            }
+            upsertLatest(c, beds, seqs, now);
+            upsertRollups(c, beds, now);
             c.commit();
+            return seqs;
         } catch (SQLException e) {
-            log.log(Level.WARNING, "DB store failed for " + bedId, e);
+            log.log(Level.WARNING, "DB store failed for " + beds.keySet(), e);
+            return Collections.emptyMap();
+        } finally {
+            if (partitionLock != null) partitionLock.unlock();
+        }
+    }
+
+    // UTC days the batch's vitals rows and ECG segments fall on, for DbPartitions.lockForIngest()
+    private static Set<Long> days(Map<String, PatientTelemetry> beds, long now) {
+        Set<Long> days = new HashSet<>();
+        for (PatientTelemetry data : beds.values()) {
+            for (int i = 0, n = data.vitalsRows(); i < n; i++) days.add(DbPartitions.day(data.getTs().getOr(i, now)));
+            if (!data.getEcg().isEmpty()) {
+                long start = data.getEcgTsStart() != null ? data.getEcgTsStart() : now;
+                int fs = ecgFs(data);
+                int n = data.getEcg().size(), step = ecgSegmentSamples(fs, n);
+                for (int off = 0; off < n; off += step) days.add(DbPartitions.day(ecgSegmentStart(start, off, fs)));
+            }
         }
+        return days;
     }
 
-    private void ensurePatient(Connection c, String bedId) throws SQLException {
+    /**
+     * Creates missing patient rows and advances each bed's write sequence in one statement.
+     * The row locks it takes are held until commit, so one bed's writes commit in sequence
+     * order; beds are locked in sorted order so concurrent payloads cannot deadlock.
+     */
+    private Map<String, Long> nextSequences(Connection c, Collection<String> bedIds) throws SQLException {
+        Map<String, Long> out = new HashMap<>();
         try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO patients(bed_id) VALUES (?) ON CONFLICT (bed_id) DO NOTHING"
+                "INSERT INTO patients(bed_id, seq) SELECT b, 1 FROM unnest(?::text[]) AS b ORDER BY b " +
+                        "ON CONFLICT (bed_id) DO UPDATE SET seq = patients.seq + 1 " +
+                        "RETURNING bed_id, seq"
         )) {
-            ps.setString(1, bedId);
-            ps.executeUpdate();
+            ps.setArray(1, c.createArrayOf("text", bedIds.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+            }
         }
+        return out;
     }
 
-    private void insertVitals(Connection c, String bedId, PatientTelemetry data, long now) throws SQLException {
-        List<Long> ts = data.getTs();
-        int n = maxSize(ts, data.getHr(), data.getRr(), data.getSys(), data.getDia(), data.getTemp());
-        if (n <= 0) return;
-
+    /**
+     * Moves each bed's patient_latest row to the newest row of this write, unless a row already
+     * stored is newer. Runs after nextSequences(), so the bed's row lock orders these upserts.
+     */
+    private void upsertLatest(Connection c, Map<String, PatientTelemetry> beds, Map<String, Long> seqs, long now) throws SQLException {
         try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO vital_snapshots(bed_id, ts_ms, hr, rr, sys, dia, temp) VALUES (?,?,?,?,?,?,?)"
+                "INSERT INTO patient_latest(bed_id, seq, ts_ms, hr, rr, sys, dia, temp) VALUES (?,?,?,?,?,?,?,?) " +
+                        "ON CONFLICT (bed_id) DO UPDATE SET seq = EXCLUDED.seq, ts_ms = EXCLUDED.ts_ms, " +
+                        "hr = EXCLUDED.hr, rr = EXCLUDED.rr, sys = EXCLUDED.sys, dia = EXCLUDED.dia, temp = EXCLUDED.temp " +
+                        "WHERE patient_latest.ts_ms <= EXCLUDED.ts_ms"
         )) {
-            for (int i = 0; i < n; i++) {
-                long t = getOr(ts, i, now);
-                ps.setString(1, bedId);
-                ps.setLong(2, t);
-                setNullableDouble(ps, 3, getOr(data.getHr(), i, null));
-                setNullableDouble(ps, 4, getOr(data.getRr(), i, null));
-                setNullableDouble(ps, 5, getOr(data.getSys(), i, null));
-                setNullableDouble(ps, 6, getOr(data.getDia(), i, null));
-                setNullableDouble(ps, 7, getOr(data.getTemp(), i, null));
+            int rows = 0;
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                PatientTelemetry data = e.getValue();
+                int n = data.vitalsRows();
+                if (n == 0) continue;
+
+                // Same ts defaulting as the history insert; the last of equal timestamps wins
+                int best = 0;
+                for (int i = 1; i < n; i++) {
+                    if (data.getTs().getOr(i, now) >= data.getTs().getOr(best, now)) best = i;
+                }
+                ps.setString(1, e.getKey());
+                ps.setLong(2, seqs.get(e.getKey()));
+                ps.setLong(3, data.getTs().getOr(best, now));
+                setNullableDouble(ps, 4, data.getHr().getOrNaN(best));
+                setNullableDouble(ps, 5, data.getRr().getOrNaN(best));
+                setNullableDouble(ps, 6, data.getSys().getOrNaN(best));
+                setNullableDouble(ps, 7, data.getDia().getOrNaN(best));
+                setNullableDouble(ps, 8, data.getTemp().getOrNaN(best));
                 ps.addBatch();
+                rows++;
             }
-            ps.executeBatch();
+            if (rows > 0) ps.executeBatch();
         }
     }
 
-    private void insertEcg(Connection c, String bedId, PatientTelemetry data, long now) throws SQLException {
-        if (data.getEcg() == null || data.getEcg().isEmpty()) return;
-
-        Long startMs = data.getEcgTsStart();
-        Integer fs = data.getEcgFs();
-        if (startMs == null) startMs = now;
-        if (fs == null) fs = 250;
+    /** Merges the batch into the 1-minute and 1-hour vital_rollups buckets it touches. */
+    private void upsertRollups(Connection c, Map<String, PatientTelemetry> beds, long now) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO vital_rollups(bed_id, res_ms, bucket_ms, vital, n, min, max, sum, sumsq) VALUES (?,?,?,?,?,?,?,?,?) " +
+                        "ON CONFLICT (bed_id, res_ms, bucket_ms, vital) DO UPDATE SET " +
+                        "n = vital_rollups.n + EXCLUDED.n, " +
+                        "min = LEAST(vital_rollups.min, EXCLUDED.min), max = GREATEST(vital_rollups.max, EXCLUDED.max), " +
+                        "sum = vital_rollups.sum + EXCLUDED.sum, sumsq = vital_rollups.sumsq + EXCLUDED.sumsq"
+        )) {
+            int rows = 0;
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                if (e.getValue().vitalsRows() == 0) continue;
+                for (long res : new long[] {VitalsRollup.MINUTE_MS, VitalsRollup.HOUR_MS}) {
+                    VitalsRollup r = new VitalsRollup(res);
+                    r.addRows(e.getValue(), now);
+                    for (Map.Entry<Long, double[]> b : r.buckets().entrySet()) {
+                        double[] st = b.getValue();
+                        for (int v = 0; v < VitalsRollup.VITALS.size(); v++) {
+                            int o = v * VitalsRollup.STATS;
+                            if (st[o + VitalsRollup.N] == 0) continue;
+                            ps.setString(1, e.getKey());
+                            ps.setLong(2, res);
+                            ps.setLong(3, b.getKey());
+                            ps.setString(4, VitalsRollup.VITALS.get(v));
+                            ps.setLong(5, (long) st[o + VitalsRollup.N]);
+                            ps.setDouble(6, st[o + VitalsRollup.MIN]);
+                            ps.setDouble(7, st[o + VitalsRollup.MAX]);
+                            ps.setDouble(8, st[o + VitalsRollup.SUM]);
+                            ps.setDouble(9, st[o + VitalsRollup.SUMSQ]);
+                            ps.addBatch();
+                            rows++;
+                        }
+                    }
+                }
+            }
+            if (rows > 0) ps.executeBatch();
+        }
+    }
 
-        String samples = joinDoubles(data.getEcg());
+    private void insertVitals(Connection c, Map<String, PatientTelemetry> beds, Map<String, Long> seqs, long now) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO vital_snapshots(bed_id, seq, ts_ms, hr, rr, sys, dia, temp) VALUES (?,?,?,?,?,?,?,?)"
+        )) {
+            int rows = 0;
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                String bedId = e.getKey();
+                PatientTelemetry data = e.getValue();
+                LongColumn ts = data.getTs();
+                int n = data.vitalsRows();
+                long seq = seqs.get(bedId);
+
+                for (int i = 0; i < n; i++) {
+                    long t = ts.getOr(i, now);
+                    ps.setString(1, bedId);
+                    ps.setLong(2, seq);
+                    ps.setLong(3, t);
+                    setNullableDouble(ps, 4, data.getHr().getOrNaN(i));
+                    setNullableDouble(ps, 5, data.getRr().getOrNaN(i));
+                    setNullableDouble(ps, 6, data.getSys().getOrNaN(i));
+                    setNullableDouble(ps, 7, data.getDia().getOrNaN(i));
+                    setNullableDouble(ps, 8, data.getTemp().getOrNaN(i));
+                    ps.addBatch();
+                    rows++;
+                }
+            }
+            if (rows > 0) ps.executeBatch();
+        }
+    }
 
+    private void insertEcg(Connection c, Map<String, PatientTelemetry> beds, Map<String, Long> seqs, long now) throws SQLException {
         try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO ecg_segments(bed_id, ts_start_ms, fs_hz, samples) VALUES (?,?,?,?)"
+                "INSERT INTO ecg_segments(bed_id, seq, ts_start_ms, fs_hz, samples_bin) VALUES (?,?,?,?,?)"
         )) {
-            ps.setString(1, bedId);
-            ps.setLong(2, startMs);
-            ps.setInt(3, fs);
-            ps.setString(4, samples);
-            ps.executeUpdate();
+            int rows = 0;
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                PatientTelemetry data = e.getValue();
+                if (data.getEcg() == null || data.getEcg().isEmpty()) continue;
+
+                long start = data.getEcgTsStart() != null ? data.getEcgTsStart() : now;
+                int fs = ecgFs(data);
+                double[] samples = data.getEcg().toDoubleArray();
+                int step = ecgSegmentSamples(fs, samples.length);
+
+                for (int off = 0; off < samples.length; off += step) {
+                    ps.setString(1, e.getKey());
+                    ps.setLong(2, seqs.get(e.getKey()));
+                    ps.setLong(3, ecgSegmentStart(start, off, fs));
+                    ps.setInt(4, fs);
+                    ps.setBytes(5, EcgCodec.encode(samples, off, Math.min(step, samples.length - off)));
+                    ps.addBatch();
+                    rows++;
+                }
+            }
+            if (rows > 0) ps.executeBatch();
         }
     }
 
+    private void copyVitals(Connection c, Map<String, PatientTelemetry> beds, Map<String, Long> seqs, long now) throws SQLException {
+        try (PgCopy copy = PgCopy.begin(c,
+                "COPY vital_snapshots(bed_id, seq, ts_ms, hr, rr, sys, dia, temp) FROM STDIN")) {
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                String bedId = e.getKey();
+                PatientTelemetry data = e.getValue();
+                LongColumn ts = data.getTs();
+                int n = data.vitalsRows();
+                long seq = seqs.get(bedId);
+
+                for (int i = 0; i < n; i++) {
+                    copy.text(bedId)
+                            .num(seq)
+                            .num(ts.getOr(i, now))
+                            .dbl(data.getHr().getOrNaN(i))
+                            .dbl(data.getRr().getOrNaN(i))
+                            .dbl(data.getSys().getOrNaN(i))
+                            .dbl(data.getDia().getOrNaN(i))
+                            .dbl(data.getTemp().getOrNaN(i))
+                            .endRow();
+                }
+            }
+            copy.finish();
+        }
+    }
+
+    private void copyEcg(Connection c, Map<String, PatientTelemetry> beds, Map<String, Long> seqs, long now) throws SQLException {
+        try (PgCopy copy = PgCopy.begin(c,
+                "COPY ecg_segments(bed_id, seq, ts_start_ms, fs_hz, samples_bin) FROM STDIN")) {
+            for (Map.Entry<String, PatientTelemetry> e : beds.entrySet()) {
+                PatientTelemetry data = e.getValue();
+                if (data.getEcg() == null || data.getEcg().isEmpty()) continue;
+
+                long start = data.getEcgTsStart() != null ? data.getEcgTsStart() : now;
+                int fs = ecgFs(data);
+                double[] samples = data.getEcg().toDoubleArray();
+                int step = ecgSegmentSamples(fs, samples.length);
+
+                for (int off = 0; off < samples.length; off += step) {
+                    copy.text(e.getKey())
+                            .num(seqs.get(e.getKey()))
+                            .num(ecgSegmentStart(start, off, fs))
+                            .num(fs)
+                            .bytes(EcgCodec.encode(samples, off, Math.min(step, samples.length - off)))
+                            .endRow();
+                }
+            }
+            copy.finish();
+        }
+    }
+
+    private static int ecgFs(PatientTelemetry data) {
+        return data.getEcgFs() != null ? data.getEcgFs() : 250;
+    }
+
+    // Samples per stored segment: at most ECG_SEGMENT_LOOKBACK_MS worth, so the range reads' lookback finds every overlap
+    private static int ecgSegmentSamples(int fs, int n) {
+        if (fs <= 0) return Math.max(1, n);
+        return (int) Math.max(1, Math.min(n, ECG_SEGMENT_LOOKBACK_MS * fs / 1000));
+    }
+
+    private static long ecgSegmentStart(long startMs, int offset, int fs) {
+        return offset == 0 ? startMs : startMs + offset * 1000L / fs;
+    }
+
     @Override
     public PatientTelemetry get(String bedId) {
         if (bedId == null || bedId.isBlank()) return null;
 
         PatientTelemetry out = new PatientTelemetry();
         try (Connection c = open()) {
-            List<Row> rows = new ArrayList<>();
-
+            out.setSeq(sequence(c, bedId));
             try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT ts_ms, hr, rr, sys, dia, temp " +
-                            "FROM vital_snapshots WHERE bed_id=? " +
-                            "ORDER BY ts_ms DESC LIMIT ?"
+                    "SELECT ts_ms, hr, rr, sys, dia, temp FROM (" +
+                            " SELECT ts_ms, hr, rr, sys, dia, temp " +
+                            " FROM vital_snapshots WHERE bed_id=? " +
+                            " ORDER BY ts_ms DESC LIMIT ?" +
+                            ") v ORDER BY ts_ms"
             )) {
                 ps.setString(1, bedId);
                 ps.setInt(2, DEFAULT_VITAL_LIMIT);
                 try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        rows.add(new Row(
-                                rs.getLong(1),
-                                (Double) rs.getObject(2),
-                                (Double) rs.getObject(3),
-                                (Double) rs.getObject(4),
-                                (Double) rs.getObject(5),
-                                (Double) rs.getObject(6)
-                        ));
-                    }
+                    while (rs.next()) readVitals(out, rs);
                 }
             }
 
-            Collections.reverse(rows);
-            for (Row r : rows) {
-                out.getTs().add(r.tsMs);
-                out.getHr().add(r.hr);
-                out.getRr().add(r.rr);
-                out.getSys().add(r.sys);
-                out.getDia().add(r.dia);
-                out.getTemp().add(r.temp);
-            }
-
             try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT ts_start_ms, fs_hz, samples " +
+                    "SELECT ts_start_ms, fs_hz, samples_bin, samples " +
                             "FROM ecg_segments WHERE bed_id=? " +
                             "ORDER BY ts_start_ms DESC LIMIT 1"
             )) {
                 ps.setString(1, bedId);
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        long start = rs.getLong(1);
-                        int fs = rs.getInt(2);
-                        String samples = rs.getString(3);
-                        setField(out, start, fs, samples);
-                    }
+                    if (rs.next()) readEcg(out, rs);
                 }
             }
         } catch (SQLException e) {
@@ -168,92 +380,541 @@ public class DbTelemetryStore extends AbstractTelemetryStore {
         return out;
     }
 
-    private void setField(PatientTelemetry out, long start, int fs, String samples) {
+    // Columns 1..6: ts_ms, hr, rr, sys, dia, temp
+    private static void readVitals(PatientTelemetry out, ResultSet rs) throws SQLException {
+        out.getTs().addLong(rs.getLong(1));
+        out.getHr().addDouble(nullableDouble(rs, 2));
+        out.getRr().addDouble(nullableDouble(rs, 3));
+        out.getSys().addDouble(nullableDouble(rs, 4));
+        out.getDia().addDouble(nullableDouble(rs, 5));
+        out.getTemp().addDouble(nullableDouble(rs, 6));
+    }
+
+    // Columns 1..4: ts_start_ms, fs_hz, samples_bin, samples
+    private static void readEcg(PatientTelemetry out, ResultSet rs) throws SQLException {
+        out.setEcgTsStart(rs.getLong(1));
+        out.setEcgFs(rs.getInt(2));
+
+        double[] samples = ecgSamples(rs);
+        if (samples != null) out.getEcg().addAll(samples, 0, samples.length);
+    }
+
+    // Columns 1..4 as in readEcg, clipped into a range result
+    private static void stitchEcg(EcgStitcher stitcher, ResultSet rs) throws SQLException {
+        double[] samples = ecgSamples(rs);
+        if (samples != null) stitcher.add(rs.getLong(1), rs.getInt(2), samples, 0, samples.length);
+    }
+
+    /**
+     * Columns 1..4 as in readEcg, then part_seqs and part_offsets. Of a block merged by DbEcgCompactor only the
+     * parts written in (afterSeq, upToSeq] are added, so a cursor inside the block is not sent what it has read.
+     */
+    private static void stitchEcgSince(EcgStitcher stitcher, ResultSet rs, long afterSeq, long upToSeq) throws SQLException {
+        double[] samples = ecgSamples(rs);
+        if (samples == null) return;
+        long start = rs.getLong(1);
+        int fs = rs.getInt(2);
+        Array seqArr = rs.getArray(5);
+        Array offArr = rs.getArray(6);
+        if (seqArr == null || offArr == null || fs <= 0) {
+            stitcher.add(start, fs, samples, 0, samples.length);
+            return;
+        }
+        Long[] seqs = (Long[]) seqArr.getArray();
+        Integer[] offs = (Integer[]) offArr.getArray();
+        for (int k = 0; k < seqs.length && k < offs.length; k++) {
+            if (seqs[k] == null || seqs[k] <= afterSeq || seqs[k] > upToSeq) continue;
+            int from = Math.min(offs[k], samples.length);
+            int to = k + 1 < offs.length ? Math.min(offs[k + 1], samples.length) : samples.length;
+            stitcher.add(start + from * 1000L / fs, fs, samples, from, to - from);
+        }
+    }
+
+    private static double[] ecgSamples(ResultSet rs) throws SQLException {
+        byte[] bin = rs.getBytes(3);
         try {
-            java.lang.reflect.Field fStart = PatientTelemetry.class.getDeclaredField("ecgTsStart");
-            java.lang.reflect.Field fFs = PatientTelemetry.class.getDeclaredField("ecgFs");
-            fStart.setAccessible(true);
-            fFs.setAccessible(true);
-            fStart.set(out, start);
-            fFs.set(out, fs);
-        } catch (Exception ignored) {}
-
-        if (samples == null || samples.isBlank()) return;
-        String[] parts = samples.split(",");
-        for (String p : parts) {
-            String t = p.trim();
-            if (t.isEmpty()) continue;
-            try { out.getEcg().add(Double.parseDouble(t)); }
-            catch (NumberFormatException ignored) {}
+            // Rows written before samples_bin existed only carry the TEXT column
+            return bin != null ? EcgCodec.decode(bin) : EcgCodec.decodeText(rs.getString(4));
+        } catch (IllegalArgumentException e) {
+            log.log(Level.WARNING, "Skipping undecodable ECG segment", e);
+            return null;
         }
     }
 
+    /** Indexed range scan on idx_vital_bed_ts / idx_ecg_bed_ts, streamed with a cursor. */
+    @Override
+    public PatientTelemetry getRange(String bedId, long fromMs, long toMs) {
+        return range(bedId, fromMs, toMs, true);
+    }
+
+    /** Like getRange() without the ECG scan. */
     @Override
-    public Map<String, PatientTelemetry> getAll() {
+    public PatientTelemetry getVitalsRange(String bedId, long fromMs, long toMs) {
+        return range(bedId, fromMs, toMs, false);
+    }
+
+    private PatientTelemetry range(String bedId, long fromMs, long toMs, boolean withEcg) {
+        if (bedId == null || bedId.isBlank()) return null;
+
+        PatientTelemetry out = new PatientTelemetry();
+        try (Connection c = open()) {
+            out.setSeq(sequence(c, bedId));
+            // pgjdbc only honours the fetch size inside a transaction
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT ts_ms, hr, rr, sys, dia, temp FROM vital_snapshots " +
+                            "WHERE bed_id=? AND ts_ms BETWEEN ? AND ? ORDER BY ts_ms"
+            )) {
+                ps.setFetchSize(RANGE_FETCH_SIZE);
+                ps.setString(1, bedId);
+                ps.setLong(2, fromMs);
+                ps.setLong(3, toMs);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) readVitals(out, rs);
+                }
+            }
+
+            if (withEcg) readEcgRange(c, bedId, fromMs, toMs, out);
+            c.commit();
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "DB range read failed for " + bedId, e);
+            return null;
+        }
+        return out;
+    }
+
+    /** Like getRange() without the vitals scan. */
+    @Override
+    public EcgStrip getEcg(String bedId, long fromMs, long toMs, int targetFs) {
+        if (bedId == null || bedId.isBlank()) return null;
+
+        PatientTelemetry out = new PatientTelemetry();
+        try (Connection c = open()) {
+            if (sequence(c, bedId) == null) return null;
+            c.setAutoCommit(false);
+            readEcgRange(c, bedId, fromMs, toMs, out);
+            c.commit();
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "DB ECG read failed for " + bedId, e);
+            return null;
+        }
+        return EcgStrip.of(out, fromMs, toMs, targetFs);
+    }
+
+    // Stitches the segments overlapping [fromMs, toMs] into out; c must be in a transaction for the fetch size
+    private static void readEcgRange(Connection c, String bedId, long fromMs, long toMs, PatientTelemetry out) throws SQLException {
+        EcgStitcher stitcher = new EcgStitcher(fromMs, toMs);
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT ts_start_ms, fs_hz, samples_bin, samples FROM ecg_segments " +
+                        "WHERE bed_id=? AND ts_start_ms BETWEEN ? AND ? ORDER BY ts_start_ms"
+        )) {
+            ps.setFetchSize(RANGE_FETCH_SIZE);
+            ps.setString(1, bedId);
+            ps.setLong(2, ecgLookback(fromMs));
+            ps.setLong(3, toMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) stitchEcg(stitcher, rs);
+            }
+        }
+        stitcher.into(out);
+    }
+
+    private static long ecgLookback(long fromMs) {
+        return fromMs < Long.MIN_VALUE + ECG_SEGMENT_LOOKBACK_MS ? Long.MIN_VALUE : fromMs - ECG_SEGMENT_LOOKBACK_MS;
+    }
+
+    // The page's bed ids with their position, which orders both statements of a page read
+    private static final String PAGE_BEDS =
+            "FROM unnest(?::text[]) WITH ORDINALITY AS w(bed_id, n) JOIN patients p ON p.bed_id = w.bed_id ";
+
+    /**
+     * Latest vitals window and latest ECG segment for the page's beds, in two set-based statements
+     * on one connection, read forward together so one bed at a time is held. The LATERAL subqueries
+     * run per bed against idx_vital_bed_ts / idx_ecg_bed_ts, so cost scales with beds x window, not history.
+     */
+    @Override
+    public void getPage(SortedMap<String, Long> page, PageSink sink) throws IOException {
+        if (page.isEmpty()) return;
+        try (Connection c = open()) {
+            c.setAutoCommit(false);
+            Array beds = c.createArrayOf("text", page.keySet().toArray());
+            try (PreparedStatement vitals = c.prepareStatement(
+                    "SELECT v.ts_ms, v.hr, v.rr, v.sys, v.dia, v.temp, p.bed_id, p.seq, w.n " + PAGE_BEDS +
+                            "LEFT JOIN LATERAL (" +
+                            " SELECT ts_ms, hr, rr, sys, dia, temp FROM vital_snapshots" +
+                            " WHERE bed_id = p.bed_id ORDER BY ts_ms DESC LIMIT ?" +
+                            ") v ON true " +
+                            "ORDER BY w.n, v.ts_ms");
+                 PreparedStatement ecg = c.prepareStatement(
+                         "SELECT e.ts_start_ms, e.fs_hz, e.samples_bin, e.samples, w.n " + PAGE_BEDS +
+                                 "JOIN LATERAL (" +
+                                 " SELECT ts_start_ms, fs_hz, samples_bin, samples FROM ecg_segments" +
+                                 " WHERE bed_id = p.bed_id ORDER BY ts_start_ms DESC LIMIT 1" +
+                                 ") e ON true " +
+                                 "ORDER BY w.n")) {
+                vitals.setArray(1, beds);
+                vitals.setInt(2, DEFAULT_VITAL_LIMIT);
+                ecg.setArray(1, beds);
+                streamPage(vitals, ecg, 5, () -> new EcgStitcher(Long.MIN_VALUE, Long.MAX_VALUE),
+                        DbTelemetryStore::stitchEcg, sink);
+            }
+            c.commit();
+        } catch (SQLException e) {
+            throw new IOException("DB page read failed", e);
+        }
+    }
+
+    /** getRange() for the page's beds as two LATERAL range scans, read like getPage(). */
+    @Override
+    public void getPageRange(SortedMap<String, Long> page, long fromMs, long toMs, PageSink sink) throws IOException {
+        if (page.isEmpty()) return;
+        try (Connection c = open()) {
+            c.setAutoCommit(false);
+            Array beds = c.createArrayOf("text", page.keySet().toArray());
+            try (PreparedStatement vitals = c.prepareStatement(
+                    "SELECT v.ts_ms, v.hr, v.rr, v.sys, v.dia, v.temp, p.bed_id, p.seq, w.n " + PAGE_BEDS +
+                            "LEFT JOIN LATERAL (" +
+                            " SELECT ts_ms, hr, rr, sys, dia, temp FROM vital_snapshots" +
+                            " WHERE bed_id = p.bed_id AND ts_ms BETWEEN ? AND ?" +
+                            ") v ON true " +
+                            "ORDER BY w.n, v.ts_ms");
+                 PreparedStatement ecg = c.prepareStatement(
+                         "SELECT e.ts_start_ms, e.fs_hz, e.samples_bin, e.samples, w.n " + PAGE_BEDS +
+                                 "JOIN LATERAL (" +
+                                 " SELECT ts_start_ms, fs_hz, samples_bin, samples FROM ecg_segments" +
+                                 " WHERE bed_id = p.bed_id AND ts_start_ms BETWEEN ? AND ?" +
+                                 ") e ON true " +
+                                 "ORDER BY w.n, e.ts_start_ms")) {
+                vitals.setArray(1, beds);
+                vitals.setLong(2, fromMs);
+                vitals.setLong(3, toMs);
+                ecg.setArray(1, beds);
+                ecg.setLong(2, ecgLookback(fromMs));
+                ecg.setLong(3, toMs);
+                streamPage(vitals, ecg, 5, () -> new EcgStitcher(fromMs, toMs), DbTelemetryStore::stitchEcg, sink);
+            }
+            c.commit();
+        } catch (SQLException e) {
+            throw new IOException("DB range page read failed", e);
+        }
+    }
+
+    private interface EcgRow {
+        void add(EcgStitcher stitcher, ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Hands a page to sink bed by bed from two statements ordered by page position: vitals (columns
+     * 1..6 as in readVitals, then bed_id, seq, position; NULL ts_ms for a bed without rows) and ecg
+     * (segment columns, then position at ecgPosCol). Both are executed, then read forward together.
+     */
+    private static void streamPage(PreparedStatement vitals, PreparedStatement ecg, int ecgPosCol,
+                                   Supplier<EcgStitcher> stitchers, EcgRow ecgRow, PageSink sink)
+            throws SQLException, IOException {
+        vitals.setFetchSize(RANGE_FETCH_SIZE);
+        ecg.setFetchSize(RANGE_FETCH_SIZE);
+        try (ResultSet v = vitals.executeQuery(); ResultSet e = ecg.executeQuery()) {
+            boolean moreEcg = e.next();
+            boolean more = v.next();
+            while (more) {
+                String bed = v.getString(7);
+                long pos = v.getLong(9);
+                PatientTelemetry t = new PatientTelemetry();
+                t.setSeq(v.getLong(8));
+                do {
+                    v.getLong(1);
+                    if (!v.wasNull()) readVitals(t, v);
+                    more = v.next();
+                } while (more && v.getLong(9) == pos);
+
+                EcgStitcher st = stitchers.get();
+                for (; moreEcg && e.getLong(ecgPosCol) <= pos; moreEcg = e.next()) {
+                    if (e.getLong(ecgPosCol) == pos) ecgRow.add(st, e);
+                }
+                st.into(t);
+                sink.accept(bed, t);
+            }
+        }
+    }
+
+    /** One statement over patients and patient_latest, both one row per bed; no history table is read. */
+    @Override
+    public Map<String, PatientTelemetry> getLatest() {
         Map<String, PatientTelemetry> out = new TreeMap<>();
         try (Connection c = open();
-             PreparedStatement ps = c.prepareStatement("SELECT bed_id FROM patients ORDER BY bed_id");
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT l.ts_ms, l.hr, l.rr, l.sys, l.dia, l.temp, p.bed_id, p.seq " +
+                             "FROM patients p LEFT JOIN patient_latest l ON l.bed_id = p.bed_id"
+             );
              ResultSet rs = ps.executeQuery()) {
-
             while (rs.next()) {
-                String bed = rs.getString(1);
-                PatientTelemetry t = get(bed);
-                if (t != null) out.put(bed, t);
+                PatientTelemetry t = new PatientTelemetry();
+                t.setSeq(rs.getLong(8));
+                rs.getLong(1);
+                if (!rs.wasNull()) readVitals(t, rs);
+                out.put(rs.getString(7), t);
             }
         } catch (SQLException e) {
-            log.log(Level.WARNING, "DB getAll failed", e);
+            log.log(Level.WARNING, "DB latest read failed", e);
         }
         return out;
     }
 
-    private static int maxSize(List<?>... lists) {
-        int m = 0;
-        for (List<?> l : lists) {
-            if (l != null) m = Math.max(m, l.size());
+    /**
+     * Reads the coarsest stored rollup level that tiles resolutionMs (one PK range scan, a
+     * handful of rows per bucket whatever the span) and merges it up to resolutionMs.
+     * Resolutions that are not whole minutes are aggregated from raw rows.
+     */
+    @Override
+    public VitalsRollup getRollup(String bedId, long fromMs, long toMs, long resolutionMs) {
+        long level = VitalsRollup.sourceLevel(resolutionMs);
+        if (level == 0) return super.getRollup(bedId, fromMs, toMs, resolutionMs);
+        if (bedId == null || bedId.isBlank()) return null;
+
+        VitalsRollup out = new VitalsRollup(resolutionMs);
+        try (Connection c = open()) {
+            if (sequence(c, bedId) == null) return null;
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT bucket_ms, vital, n, min, max, sum, sumsq FROM vital_rollups " +
+                            "WHERE bed_id=? AND res_ms=? AND bucket_ms BETWEEN ? AND ? ORDER BY bucket_ms"
+            )) {
+                ps.setFetchSize(RANGE_FETCH_SIZE);
+                ps.setString(1, bedId);
+                ps.setLong(2, level);
+                ps.setLong(3, out.windowStart(fromMs));
+                ps.setLong(4, out.windowEnd(toMs));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int vital = VitalsRollup.VITALS.indexOf(rs.getString(2));
+                        if (vital < 0) continue;
+                        out.addStats(rs.getLong(1), vital, rs.getLong(3),
+                                rs.getDouble(4), rs.getDouble(5), rs.getDouble(6), rs.getDouble(7));
+                    }
+                }
+            }
+            c.commit();
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "DB rollup read failed for " + bedId, e);
+            return null;
         }
-        return m;
+        return out;
     }
 
-    private static <T> T getOr(List<T> list, int i, T fallback) {
-        if (list == null) return fallback;
-        if (i < 0 || i >= list.size()) return fallback;
-        return list.get(i);
+    @Override
+    public Map<String, Long> sequences() {
+        Map<String, Long> out = new TreeMap<>();
+        try (Connection c = open();
+             PreparedStatement ps = c.prepareStatement("SELECT bed_id, seq FROM patients");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "DB sequence read failed", e);
+        }
+        return out;
     }
 
-    private static long getOr(List<Long> list, int i, long fallback) {
-        if (list == null) return fallback;
-        if (i < 0 || i >= list.size()) return fallback;
-        Long v = list.get(i);
-        return v != null ? v : fallback;
+    // The bed's current write sequence, or null for an unknown bed
+    private static Long sequence(Connection c, String bedId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT seq FROM patients WHERE bed_id=?")) {
+            ps.setString(1, bedId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
     }
 
-    private static void setNullableDouble(PreparedStatement ps, int idx, Double v) throws SQLException {
-        if (v == null || v.isNaN()) ps.setNull(idx, Types.DOUBLE);
-        else ps.setDouble(idx, v);
+    /**
+     * Rows with afterSeq &lt; seq &lt;= the bed's sequence as read first (or upToSeq if lower). Writes up to that number
+     * have all committed (see nextSequences), so the returned cursor never skips one. Past MAX_SINCE_ROWS rows the
+     * bound drops to the write holding the last row allowed, found on idx_vital_bed_seq before the rows are read.
+     */
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq) throws IOException {
+        return getSince(bedId, afterSeq, Long.MAX_VALUE);
     }
 
-    private static String joinDoubles(List<Double> xs) {
-        StringBuilder sb = new StringBuilder(xs.size() * 8);
-        for (int i = 0; i < xs.size(); i++) {
-            Double v = xs.get(i);
-            if (i > 0) sb.append(',');
-            if (v == null || v.isNaN()) sb.append("0.0");
-            else sb.append(v);
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq, long upToSeq) throws IOException {
+        if (bedId == null || bedId.isBlank()) return null;
+
+        try (Connection c = open()) {
+            Long current = sequence(c, bedId);
+            if (current == null) return null;
+            long upTo = Math.min(current, upToSeq);
+            PatientTelemetry out = new PatientTelemetry();
+            if (upTo > afterSeq) upTo = Math.min(upTo, sinceLimit(c, bedId, afterSeq, upTo));
+            out.setSeq(upTo);
+            if (upTo <= afterSeq) return out;
+
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT ts_ms, hr, rr, sys, dia, temp FROM vital_snapshots " +
+                            "WHERE bed_id=? AND seq > ? AND seq <= ? ORDER BY seq, id"
+            )) {
+                ps.setFetchSize(RANGE_FETCH_SIZE);
+                ps.setString(1, bedId);
+                ps.setLong(2, afterSeq);
+                ps.setLong(3, upTo);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) readVitals(out, rs);
+                }
+            }
+
+            // Oldest start first, as the stitcher needs; a compacted block qualifies if any of its parts does
+            EcgStitcher stitcher = new EcgStitcher(Long.MIN_VALUE, Long.MAX_VALUE);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT ts_start_ms, fs_hz, samples_bin, samples, part_seqs, part_offsets FROM ecg_segments " +
+                            "WHERE bed_id=? AND seq > ? AND COALESCE(seq_min, seq) <= ? ORDER BY ts_start_ms, id"
+            )) {
+                ps.setFetchSize(RANGE_FETCH_SIZE);
+                ps.setString(1, bedId);
+                ps.setLong(2, afterSeq);
+                ps.setLong(3, upTo);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) stitchEcgSince(stitcher, rs, afterSeq, upTo);
+                }
+            }
+            stitcher.into(out);
+            c.commit();
+            return out;
+        } catch (SQLException e) {
+            throw new IOException("DB incremental read failed for " + bedId, e);
+        }
+    }
+
+    // Seq of the write holding the MAX_SINCE_ROWS-th row after afterSeq, or Long.MAX_VALUE if there are fewer rows
+    private static long sinceLimit(Connection c, String bedId, long afterSeq, long upTo) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT seq FROM vital_snapshots WHERE bed_id=? AND seq > ? AND seq <= ? ORDER BY seq, id OFFSET ? LIMIT 1"
+        )) {
+            ps.setString(1, bedId);
+            ps.setLong(2, afterSeq);
+            ps.setLong(3, upTo);
+            ps.setInt(4, MAX_SINCE_ROWS - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : Long.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * getSince() for the page's beds, read like getPage(). Beds more than MAX_SINCE_ROWS behind their cursor
+     * are found first and get their get() window instead; the page is read in runs of such beds and of the
+     * rest, in bed order, which is one run unless the cursor is partly stale.
+     */
+    @Override
+    public void getPageSince(SortedMap<String, Long> page, Map<String, Long> cursor, PageSink sink) throws IOException {
+        if (page.isEmpty()) return;
+        Set<String> behind = behind(page, cursor);
+        SortedMap<String, Long> run = new TreeMap<>();
+        boolean runBehind = false;
+        for (Map.Entry<String, Long> e : page.entrySet()) {
+            boolean b = behind.contains(e.getKey());
+            if (!run.isEmpty() && b != runBehind) {
+                if (runBehind) getPage(run, sink);
+                else readPageSince(run, cursor, sink);
+                run = new TreeMap<>();
+            }
+            runBehind = b;
+            run.put(e.getKey(), e.getValue());
         }
-        return sb.toString();
+        if (runBehind) getPage(run, sink);
+        else readPageSince(run, cursor, sink);
     }
 
-    private static final class Row {
-        final long tsMs;
-        final Double hr, rr, sys, dia, temp;
+    // The page's beds with more than MAX_SINCE_ROWS rows between their cursor entry and page sequence
+    private Set<String> behind(SortedMap<String, Long> page, Map<String, Long> cursor) throws IOException {
+        Set<String> out = new HashSet<>();
+        try (Connection c = open();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT w.bed_id FROM unnest(?::text[], ?::bigint[], ?::bigint[]) AS w(bed_id, after_seq, up_to) " +
+                             "WHERE EXISTS (SELECT 1 FROM vital_snapshots" +
+                             " WHERE bed_id = w.bed_id AND seq > w.after_seq AND seq <= w.up_to OFFSET ?)")) {
+            ps.setArray(1, c.createArrayOf("text", page.keySet().toArray()));
+            ps.setArray(2, c.createArrayOf("bigint", afterSeqs(page, cursor).toArray()));
+            ps.setArray(3, c.createArrayOf("bigint", page.values().toArray()));
+            ps.setInt(4, MAX_SINCE_ROWS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("DB incremental page read failed", e);
+        }
+        return out;
+    }
 
-        Row(long tsMs, Double hr, Double rr, Double sys, Double dia, Double temp) {
-            this.tsMs = tsMs;
-            this.hr = hr;
-            this.rr = rr;
-            this.sys = sys;
-            this.dia = dia;
-            this.temp = temp;
+    private static List<Long> afterSeqs(SortedMap<String, Long> page, Map<String, Long> cursor) {
+        List<Long> after = new ArrayList<>();
+        for (String bed : page.keySet()) after.add(cursor == null ? 0L : cursor.getOrDefault(bed, 0L));
+        return after;
+    }
+
+    // Two statements over (bed, after, upTo) arrays
+    private void readPageSince(SortedMap<String, Long> page, Map<String, Long> cursor, PageSink sink) throws IOException {
+        List<Long> after = afterSeqs(page, cursor);
+
+        String window = "FROM unnest(?::text[], ?::bigint[], ?::bigint[]) WITH ORDINALITY AS w(bed_id, after_seq, up_to, n) " +
+                "JOIN patients p ON p.bed_id = w.bed_id ";
+        try (Connection c = open()) {
+            c.setAutoCommit(false);
+            Array bedArr = c.createArrayOf("text", page.keySet().toArray());
+            Array afterArr = c.createArrayOf("bigint", after.toArray());
+            Array upToArr = c.createArrayOf("bigint", page.values().toArray());
+            try (PreparedStatement vitals = c.prepareStatement(
+                    "SELECT v.ts_ms, v.hr, v.rr, v.sys, v.dia, v.temp, w.bed_id, w.up_to, w.n " + window +
+                            "LEFT JOIN LATERAL (" +
+                            " SELECT id, seq, ts_ms, hr, rr, sys, dia, temp FROM vital_snapshots" +
+                            " WHERE bed_id = w.bed_id AND seq > w.after_seq AND seq <= w.up_to" +
+                            ") v ON true " +
+                            "ORDER BY w.n, v.seq, v.id");
+                 PreparedStatement ecg = c.prepareStatement(
+                         "SELECT e.ts_start_ms, e.fs_hz, e.samples_bin, e.samples, e.part_seqs, e.part_offsets, " +
+                                 "w.after_seq, w.up_to, w.n " + window +
+                                 "JOIN LATERAL (" +
+                                 " SELECT id, ts_start_ms, fs_hz, samples_bin, samples, part_seqs, part_offsets FROM ecg_segments" +
+                                 " WHERE bed_id = w.bed_id AND seq > w.after_seq AND COALESCE(seq_min, seq) <= w.up_to" +
+                                 ") e ON true " +
+                                 "ORDER BY w.n, e.ts_start_ms, e.id")) {
+                for (PreparedStatement ps : new PreparedStatement[] {vitals, ecg}) {
+                    ps.setArray(1, bedArr);
+                    ps.setArray(2, afterArr);
+                    ps.setArray(3, upToArr);
+                }
+                streamPage(vitals, ecg, 9, () -> new EcgStitcher(Long.MIN_VALUE, Long.MAX_VALUE),
+                        (st, rs) -> stitchEcgSince(st, rs, rs.getLong(7), rs.getLong(8)), sink);
+            }
+            c.commit();
+        } catch (SQLException e) {
+            throw new IOException("DB incremental page read failed", e);
         }
     }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("backend", "db");
+        m.put("ingest", useCopy ? "copy" : "batch");
+        m.put("pool", pool.stats());
+        if (partitions != null) m.put("partitions", partitions.stats());
+        if (ecgCompactor != null) m.put("ecgCompaction", ecgCompactor.stats());
+        return m;
+    }
+
+    @Override
+    public void close() {
+        if (ecgCompactor != null) ecgCompactor.close();
+        if (partitions != null) partitions.close();
+        pool.close();
+    }
+
+    private static double nullableDouble(ResultSet rs, int idx) throws SQLException {
+        double v = rs.getDouble(idx);
+        return rs.wasNull() ? Double.NaN : v;
+    }
+
+    private static void setNullableDouble(PreparedStatement ps, int idx, double v) throws SQLException {
+        if (Double.isNaN(v)) ps.setNull(idx, Types.DOUBLE);
+        else ps.setDouble(idx, v);
+    }
 }
@@ -0,0 +1,133 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Growable double[] column. NaN stands in for a missing value.
+ *
+ * Hot paths use addDouble()/getDouble(); the List&lt;Double&gt; view (null for NaN)
+ * keeps existing callers and the JSON wire format ([72.0, null, ...]) unchanged.
+ */
+@JsonSerialize(using = DoubleColumn.Serializer.class)
+public final class DoubleColumn extends AbstractList<Double> implements RandomAccess {
+    private static final double[] EMPTY = new double[0];
+
+    private double[] data = EMPTY;
+    private int size;
+
+    public void addDouble(double v) {
+        if (size == data.length) ensureCapacity(size + 1);
+        data[size++] = v;
+    }
+
+    public void addAll(double[] src, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(src, off, data, size, len);
+        size += len;
+    }
+
+    public double getDouble(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return data[i];
+    }
+
+    /** Value at i, or NaN when i is past the end. */
+    public double getOrNaN(int i) {
+        return i < size ? data[i] : Double.NaN;
+    }
+
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void ensureCapacity(int min) {
+        if (min <= data.length) return;
+        data = Arrays.copyOf(data, Math.max(min, Math.max(8, data.length * 2)));
+    }
+
+    @Override
+    public Double get(int i) {
+        double v = getDouble(i);
+        return Double.isNaN(v) ? null : v;
+    }
+
+    @Override
+    public Double set(int i, Double v) {
+        Double old = get(i);
+        data[i] = v == null ? Double.NaN : v;
+        return old;
+    }
+
+    @Override
+    public boolean add(Double v) {
+        addDouble(v == null ? Double.NaN : v);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int i, Double v) {
+        if (i < 0 || i > size) throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        ensureCapacity(size + 1);
+        System.arraycopy(data, i, data, i + 1, size - i);
+        data[i] = v == null ? Double.NaN : v;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Double> c) {
+        if (c instanceof DoubleColumn) {
+            DoubleColumn o = (DoubleColumn) c;
+            addAll(o.data, 0, o.size);
+            modCount++;
+            return o.size > 0;
+        }
+        return super.addAll(c);
+    }
+
+    @Override
+    public Double remove(int i) {
+        Double old = get(i);
+        System.arraycopy(data, i + 1, data, i, size - i - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Writes the column as a JSON number array without boxing; NaN is written as null. */
+    public static final class Serializer extends StdSerializer<DoubleColumn> {
+        public Serializer() {
+            super(DoubleColumn.class);
+        }
+
+        @Override
+        public void serialize(DoubleColumn c, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(c, c.size);
+            for (int i = 0; i < c.size; i++) {
+                double v = c.data[i];
+                if (Double.isNaN(v)) gen.writeNull();
+                else gen.writeNumber(v);
+            }
+            gen.writeEndArray();
+        }
+    }
+}
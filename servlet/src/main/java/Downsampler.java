@@ -0,0 +1,169 @@
+/**
+ * Server-side reduction of telemetry for chart-sized responses.
+ *
+ * Vitals use largest-triangle-three-buckets over the shared ts axis: each bucket
+ * keeps the one row whose hr/rr/sys/dia/temp points together span the largest
+ * triangles (each series scaled by its own range), so every kept row stays a
+ * real, aligned sample and peaks in any series survive.
+ *
+ * ECG uses min/max buckets, which keep QRS spikes that plain decimation drops.
+ * Each bucket of k samples becomes its (min, max) pair in time order, so the
+ * strip stays evenly spaced at 2 * fs / k Hz. k is picked from the divisors of
+ * 2 * fs to keep that rate a whole number; ranges too wide to draw at 1 Hz
+ * within maxPoints come back without ECG.
+ */
+public final class Downsampler {
+    private Downsampler() {}
+
+    /** Copy of t reduced to at most maxPoints vitals rows and maxPoints ECG samples; t itself if already small enough. */
+    public static PatientTelemetry downsample(PatientTelemetry t, int maxPoints) {
+        if (t == null) return null;
+        int rows = t.vitalsRows();
+        boolean vitalsFit = rows <= maxPoints;
+        boolean ecgFits = t.getEcg().size() <= maxPoints;
+        if (vitalsFit && ecgFits) return t;
+
+        PatientTelemetry out = new PatientTelemetry();
+        out.setSeq(t.getSeq());
+        int[] keep = vitalsFit ? null : lttb(t, maxPoints);
+        for (int j = 0, n = keep == null ? rows : keep.length; j < n; j++) {
+            int i = keep == null ? j : keep[j];
+            out.getTs().addLong(t.getTs().getOr(i, LongColumn.MISSING));
+            out.getHr().addDouble(t.getHr().getOrNaN(i));
+            out.getRr().addDouble(t.getRr().getOrNaN(i));
+            out.getSys().addDouble(t.getSys().getOrNaN(i));
+            out.getDia().addDouble(t.getDia().getOrNaN(i));
+            out.getTemp().addDouble(t.getTemp().getOrNaN(i));
+        }
+
+        if (ecgFits) {
+            out.getEcg().addAll(t.getEcg());
+            out.setEcgTsStart(t.getEcgTsStart());
+            out.setEcgFs(t.getEcgFs());
+        } else {
+            minMaxEcg(t, maxPoints, out);
+        }
+        return out;
+    }
+
+    /** Row indices LTTB keeps, ascending; first and last rows are always kept. */
+    static int[] lttb(PatientTelemetry t, int maxPoints) {
+        int n = t.vitalsRows();
+        int m = Math.max(3, maxPoints);
+        if (n <= m) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            long ts = t.getTs().getOr(i, LongColumn.MISSING);
+            x[i] = ts == LongColumn.MISSING ? i : ts;
+        }
+        DoubleColumn[] cols = {t.getHr(), t.getRr(), t.getSys(), t.getDia(), t.getTemp()};
+        double[][] y = new double[cols.length][];
+        double[] scale = new double[cols.length];
+        for (int s = 0; s < cols.length; s++) {
+            y[s] = new double[n];
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double v = cols[s].getOrNaN(i);
+                y[s][i] = v;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            // Flat or empty series add nothing to the choice
+            scale[s] = max > min ? 1.0 / (max - min) : 0.0;
+        }
+
+        int[] keep = new int[m];
+        int k = 0;
+        keep[k++] = 0;
+        double every = (double) (n - 2) / (m - 2);
+        int a = 0;
+        double[] avgY = new double[cols.length];
+
+        for (int b = 0; b < m - 2; b++) {
+            int lo = (int) Math.floor(b * every) + 1;
+            int hi = Math.min(n - 1, (int) Math.floor((b + 1) * every) + 1);
+
+            // Average point of the next bucket (the last row for the final bucket)
+            int nlo = hi;
+            int nhi = Math.min(n, (int) Math.floor((b + 2) * every) + 1);
+            if (nlo >= nhi) nhi = nlo + 1;
+            double avgX = 0;
+            for (int i = nlo; i < nhi; i++) avgX += x[i];
+            avgX /= nhi - nlo;
+            for (int s = 0; s < cols.length; s++) {
+                double sum = 0;
+                int cnt = 0;
+                for (int i = nlo; i < nhi; i++) {
+                    if (!Double.isNaN(y[s][i])) {
+                        sum += y[s][i];
+                        cnt++;
+                    }
+                }
+                avgY[s] = cnt == 0 ? Double.NaN : sum / cnt;
+            }
+
+            int best = lo;
+            double bestArea = -1;
+            for (int i = lo; i < hi; i++) {
+                double area = 0;
+                for (int s = 0; s < cols.length; s++) {
+                    double ay = y[s][a], by = y[s][i], cy = avgY[s];
+                    if (scale[s] == 0 || Double.isNaN(ay) || Double.isNaN(by) || Double.isNaN(cy)) continue;
+                    area += Math.abs((x[a] - avgX) * (by - ay) - (x[a] - x[i]) * (cy - ay)) * scale[s];
+                }
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            keep[k++] = best;
+            a = best;
+        }
+
+        keep[k++] = n - 1;
+        return keep;
+    }
+
+    private static void minMaxEcg(PatientTelemetry t, int maxPoints, PatientTelemetry out) {
+        Integer fs = t.getEcgFs();
+        if (fs == null || fs <= 0 || t.getEcgTsStart() == null) return;
+
+        int n = t.getEcg().size();
+        int k = 0;
+        for (int d = 2; d <= 2 * fs; d++) {
+            if ((2 * fs) % d == 0 && 2L * ((n + d - 1) / d) <= maxPoints) {
+                k = d;
+                break;
+            }
+        }
+        if (k == 0) return;
+
+        DoubleColumn src = t.getEcg();
+        DoubleColumn dst = out.getEcg();
+        dst.ensureCapacity(2 * ((n + k - 1) / k));
+        for (int lo = 0; lo < n; lo += k) {
+            int hi = Math.min(n, lo + k);
+            int iMin = -1, iMax = -1;
+            for (int i = lo; i < hi; i++) {
+                double v = src.getDouble(i);
+                if (Double.isNaN(v)) continue;
+                if (iMin < 0 || v < src.getDouble(iMin)) iMin = i;
+                if (iMax < 0 || v > src.getDouble(iMax)) iMax = i;
+            }
+            if (iMin < 0) {
+                dst.addDouble(Double.NaN);
+                dst.addDouble(Double.NaN);
+            } else {
+                dst.addDouble(src.getDouble(Math.min(iMin, iMax)));
+                dst.addDouble(src.getDouble(Math.max(iMin, iMax)));
+            }
+        }
+        out.setEcgTsStart(t.getEcgTsStart());
+        out.setEcgFs(2 * fs / k);
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding for ECG segments (ecg_segments.samples_bin).
+ *
+ * Layout: version byte, varint sample count, then one zigzag varint per sample
+ * holding the delta of the sample quantized to int16 microvolts. Adjacent ECG
+ * samples differ by a few hundred uV at most, so nearly every sample fits in
+ * one or two bytes. Samples are in mV; NaN is stored as 0 like the old TEXT path.
+ */
+public final class EcgCodec {
+    public static final int VERSION = 1;
+
+    private static final double UV_PER_MV = 1000.0;
+
+    private EcgCodec() {}
+
+    public static byte[] encode(List<Double> samples) {
+        if (samples instanceof DoubleColumn) {
+            DoubleColumn c = (DoubleColumn) samples;
+            return encode(c.toDoubleArray(), c.size());
+        }
+        int n = samples == null ? 0 : samples.size();
+        double[] xs = new double[n];
+        for (int i = 0; i < n; i++) {
+            Double v = samples.get(i);
+            xs[i] = v == null ? Double.NaN : v;
+        }
+        return encode(xs, n);
+    }
+
+    public static byte[] encode(double[] samples, int n) {
+        return encode(samples, 0, n);
+    }
+
+    /** Encodes samples[off, off + n). */
+    public static byte[] encode(double[] samples, int off, int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(n * 2 + 8);
+        out.write(VERSION);
+        writeVarint(out, n);
+
+        int prev = 0;
+        for (int i = off; i < off + n; i++) {
+            int q = quantize(samples[i]);
+            writeVarint(out, zigzag(q - prev));
+            prev = q;
+        }
+        return out.toByteArray();
+    }
+
+    public static double[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) return new double[0];
+        return decode(ByteBuffer.wrap(bytes), bytes.length);
+    }
+
+    /** Decodes the len bytes at buf's position (e.g. straight from a mapped file), advancing it past them. */
+    public static double[] decode(ByteBuffer buf, int len) {
+        if (len <= 0) return new double[0];
+        int end = buf.position() + len;
+        int version = buf.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported ECG encoding version " + version);
+        }
+
+        int n = readVarint(buf, end);
+        // Every sample takes at least one byte
+        if (n < 0 || n > end - buf.position()) throw new IllegalArgumentException("Truncated ECG segment");
+        double[] out = new double[n];
+        int prev = 0;
+        for (int i = 0; i < n; i++) {
+            prev += unzigzag(readVarint(buf, end));
+            out[i] = prev / UV_PER_MV;
+        }
+        buf.position(end);
+        return out;
+    }
+
+    /** Parses the legacy comma-joined TEXT representation. */
+    public static double[] decodeText(String samples) {
+        if (samples == null || samples.isBlank()) return new double[0];
+        String[] parts = samples.split(",");
+        double[] out = new double[parts.length];
+        int n = 0;
+        for (String p : parts) {
+            String t = p.trim();
+            if (t.isEmpty()) continue;
+            try {
+                double v = Double.parseDouble(t);
+                out[n++] = v;
+            } catch (NumberFormatException ignored) {}
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    static int quantize(double mv) {
+        if (Double.isNaN(mv)) return 0;
+        long uv = Math.round(mv * UV_PER_MV);
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, uv));
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(ByteBuffer b, int end) {
+        int shift = 0;
+        int result = 0;
+        while (shift < 32) {
+            if (b.position() >= end) throw new IllegalArgumentException("Truncated ECG segment");
+            byte x = b.get();
+            result |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) return result;
+            shift += 7;
+        }
+        throw new IllegalArgumentException("Malformed varint in ECG segment");
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Joins stored ECG segments into the single strip PatientTelemetry carries
+ * (ecgTsStart + ecgFs + samples), clipped to [fromMs, toMs].
+ *
+ * Segments must be added oldest first. Gaps between segments are filled with
+ * NaN so sample i stays at ecgTsStart + i / ecgFs; samples overlapping what is
+ * already stitched are skipped. A change of sample rate starts a new strip,
+ * keeping the newest run, and so does a segment ending more than MAX_SPAN_MS
+ * after the strip's start, which bounds the gap fill for open-ended windows.
+ */
+final class EcgStitcher {
+    // Longest strip kept (view=ecg's widest window); of a longer run only the newest part is kept
+    static final long MAX_SPAN_MS = 3_600_000L;
+    // Hard cap on a strip, gap fill included, whatever sample rate a stored segment claims
+    static final long MAX_SAMPLES = MAX_SPAN_MS * PatientTelemetry.MAX_ECG_FS / 1000 + 1;
+
+    private final long fromMs;
+    private final long toMs;
+    private final DoubleColumn samples = new DoubleColumn();
+    private long startMs;
+    private int fs;
+
+    EcgStitcher(long fromMs, long toMs) {
+        this.fromMs = fromMs;
+        this.toMs = toMs;
+    }
+
+    void add(long segStartMs, int segFs, double[] src, int off, int len) {
+        if (segFs <= 0 || len <= 0) return;
+
+        // Doubles so open-ended bounds (Long.MIN_VALUE / MAX_VALUE) cannot overflow
+        int lo = (int) Math.max(0, Math.min(len, Math.ceil(((double) fromMs - segStartMs) * segFs / 1000.0)));
+        int hi = (int) Math.max(0, Math.min(len, Math.floor(((double) toMs - segStartMs) * segFs / 1000.0) + 1));
+        if (lo >= hi) return;
+        lo = (int) Math.max(lo, hi - maxSamples(segFs));
+        long firstMs = segStartMs + lo * 1000L / segFs;
+
+        long at = Math.round((firstMs - startMs) * fs / 1000.0);
+        if (!samples.isEmpty() && (segFs != fs || at + (hi - lo) > maxSamples(fs))) samples.clear();
+        if (samples.isEmpty()) {
+            startMs = firstMs;
+            fs = segFs;
+            samples.addAll(src, off + lo, hi - lo);
+            return;
+        }
+
+        for (long i = samples.size(); i < at; i++) samples.addDouble(Double.NaN);
+        int skip = (int) Math.max(0, samples.size() - at);
+        if (skip < hi - lo) samples.addAll(src, off + lo + skip, hi - lo - skip);
+    }
+
+    // Samples in MAX_SPAN_MS, both ends included, never more than MAX_SAMPLES
+    private static long maxSamples(int fs) {
+        return Math.min(MAX_SAMPLES, MAX_SPAN_MS * fs / 1000 + 1);
+    }
+
+    boolean isEmpty() {
+        return samples.isEmpty();
+    }
+
+    /** Replaces out's ECG strip with what was stitched; leaves it empty if nothing fell in range. */
+    void into(PatientTelemetry out) {
+        out.getEcg().clear();
+        if (samples.isEmpty()) {
+            out.setEcgTsStart(null);
+            out.setEcgFs(null);
+            return;
+        }
+        out.setEcgTsStart(startMs);
+        out.setEcgFs(fs);
+        out.getEcg().addAll(samples);
+    }
+}
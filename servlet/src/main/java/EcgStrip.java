@@ -0,0 +1,128 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ECG strip for one bed over a requested window, as served by
+ * GET /telemetry?view=ecg.
+ *
+ * Built from the stitched strip of a range read (see EcgStitcher): sample i is
+ * at tsStart + i / fs, missing samples inside the strip are NaN (null in JSON),
+ * and gaps lists every [startMs, endMs) part of the window without samples,
+ * including before the first and after the last sample when the window is
+ * bounded. With a target rate the strip is resampled: linear interpolation
+ * when raising the rate, the mean of each output sample's source interval when
+ * lowering it; an output sample next to or over missing input only is missing.
+ */
+public final class EcgStrip {
+    private final long fromMs;
+    private final long toMs;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long tsStart;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Integer fs;
+    private final DoubleColumn samples;
+    private final List<long[]> gaps;
+
+    private EcgStrip(long fromMs, long toMs, Long tsStart, Integer fs, DoubleColumn samples, List<long[]> gaps) {
+        this.fromMs = fromMs;
+        this.toMs = toMs;
+        this.tsStart = tsStart;
+        this.fs = fs;
+        this.samples = samples;
+        this.gaps = gaps;
+    }
+
+    /** The ECG of t (a range read over [fromMs, toMs]) at targetFs, or at its own rate if targetFs is 0. */
+    public static EcgStrip of(PatientTelemetry t, long fromMs, long toMs, int targetFs) {
+        DoubleColumn samples = new DoubleColumn();
+        List<long[]> gaps = new ArrayList<>();
+        Integer srcFs = t.getEcgFs();
+        if (t.getEcg().isEmpty() || t.getEcgTsStart() == null || srcFs == null || srcFs <= 0) {
+            if (fromMs != Long.MIN_VALUE && toMs != Long.MAX_VALUE) gaps.add(new long[] {fromMs, toMs + 1});
+            return new EcgStrip(fromMs, toMs, null, null, samples, gaps);
+        }
+
+        long start = t.getEcgTsStart();
+        int fs = targetFs > 0 ? targetFs : srcFs;
+        if (fs == srcFs) {
+            samples.addAll(t.getEcg());
+        } else {
+            double[] src = t.getEcg().toDoubleArray();
+            resample(src, t.getEcg().size(), srcFs, fs, samples);
+        }
+
+        int n = samples.size();
+        if (fromMs != Long.MIN_VALUE && fromMs < start) gaps.add(new long[] {fromMs, start});
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(samples.getDouble(i))) continue;
+            int j = i;
+            while (j < n && Double.isNaN(samples.getDouble(j))) j++;
+            gaps.add(new long[] {timeOf(start, fs, i), timeOf(start, fs, j)});
+            i = j;
+        }
+        long end = timeOf(start, fs, n);
+        if (toMs != Long.MAX_VALUE && end <= toMs) gaps.add(new long[] {end, toMs + 1});
+        return new EcgStrip(fromMs, toMs, start, fs, samples, gaps);
+    }
+
+    private static long timeOf(long start, int fs, long i) {
+        return start + i * 1000L / fs;
+    }
+
+    // src[0..n) at srcFs onto the same start at dstFs, covering the same span
+    static void resample(double[] src, int n, int srcFs, int dstFs, DoubleColumn out) {
+        if (n == 0) return;
+        double step = (double) srcFs / dstFs;
+        int m = (int) Math.floor((n - 1) / step) + 1;
+        out.ensureCapacity(m);
+        for (int k = 0; k < m; k++) {
+            double x = k * step;
+            if (step <= 1) {
+                int i = (int) Math.floor(x);
+                double f = x - i;
+                double a = src[i];
+                double b = i + 1 < n ? src[i + 1] : a;
+                out.addDouble(f == 0 ? a : a + (b - a) * f);
+            } else {
+                // Source samples nearest this output sample: [x - step / 2, x + step / 2)
+                int lo = (int) Math.max(0, Math.ceil(x - step / 2));
+                int hi = (int) Math.min(n, Math.ceil(x + step / 2));
+                double sum = 0;
+                int present = 0;
+                for (int i = lo; i < hi; i++) {
+                    if (Double.isNaN(src[i])) continue;
+                    sum += src[i];
+                    present++;
+                }
+                out.addDouble(present == 0 ? Double.NaN : sum / present);
+            }
+        }
+    }
+
+    public long getFromMs() {
+        return fromMs;
+    }
+
+    public long getToMs() {
+        return toMs;
+    }
+
+    public Long getTsStart() {
+        return tsStart;
+    }
+
+    public Integer getFs() {
+        return fs;
+    }
+
+    public DoubleColumn getSamples() {
+        return samples;
+    }
+
+    /** [startMs, endMs) spans of the window without samples, in time order. */
+    public List<long[]> getGaps() {
+        return gaps;
+    }
+}
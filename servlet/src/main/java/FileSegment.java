@@ -0,0 +1,446 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * One append-only segment file of a bed in the file backend (FileTelemetryStore).
+ *
+ * Layout: header ('R' 'P' 'M' 'S', int version, int id length, bed id UTF-8),
+ * then records of
+ *
+ *   int length, int CRC-32 of the body, body:
+ *   long seq, long minTs, long maxTs,
+ *   int rows, rows x (long ts, double hr, rr, sys, dia, temp),
+ *   long ecgTsStart (LongColumn.MISSING without ECG), int ecgFs,
+ *   int ecgBytes, EcgCodec bytes
+ *
+ * minTs/maxTs bound every timestamp in the record (vitals rows and the ECG
+ * strip). Records are written through the FileChannel at the end of the
+ * committed prefix and read through a read-only mapping of it, so reads decode
+ * straight from the page cache.
+ *
+ * A sparse index (an entry every INDEX_EVERY_BYTES) holds each indexed record's
+ * offset, its seq and the greatest maxTs of the records before it. Both keys
+ * only grow, so since and range reads binary-search to the first record that
+ * can match. Sealing a segment writes the index to a .idx sidecar; otherwise
+ * the index is rebuilt by scanning on open, which also cuts a torn tail (a
+ * record cut short or failing its CRC after a crash mid-write).
+ *
+ * Appends come from one writer at a time (the bed's lock); readers take no
+ * lock and only look at what committed() covered when they started.
+ */
+final class FileSegment {
+    private static final Logger log = Logger.getLogger(FileSegment.class.getName());
+
+    static final String SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int VERSION = 1;
+    private static final int INDEX_MAGIC = 0x52504D49; // "RPMI"
+    private static final int INDEX_EVERY_BYTES = 64 * 1024;
+    private static final int RECORD_HEADER = 8;
+    static final int ROW_BYTES = 48;
+    // Largest record body; append() refuses bigger ones, and scan() takes a bigger length for a torn or corrupt one
+    static final int MAX_RECORD = 64 << 20;
+
+    final Path path;
+    final long firstSeq;
+    final String bedId;
+    private final int headerBytes;
+
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    // Written by the appender, committed last; readers read committed first
+    private volatile long lastSeq;
+    private volatile long minTs = Long.MAX_VALUE;
+    private volatile long maxTs = Long.MIN_VALUE;
+    // Whether record minTs never decreases, so range scans can stop at the first record past the range
+    private volatile boolean ordered = true;
+    private volatile long committed;
+
+    // Sparse index; arrays are replaced before idxCount grows past them
+    private volatile long[] idxOff = new long[16], idxSeq = new long[16], idxMaxBefore = new long[16];
+    private volatile int idxCount;
+    private long lastIndexedOff = Long.MIN_VALUE / 2;
+    private long maxSoFar = Long.MIN_VALUE;
+    private long lastMinTs = Long.MIN_VALUE;
+
+    private FileSegment(Path path, long firstSeq, String bedId, int headerBytes, FileChannel channel) {
+        this.path = path;
+        this.firstSeq = firstSeq;
+        this.bedId = bedId;
+        this.headerBytes = headerBytes;
+        this.channel = channel;
+        this.lastSeq = firstSeq - 1;
+        this.committed = headerBytes;
+    }
+
+    static String fileName(long firstSeq) {
+        return String.format("%020d", firstSeq) + SUFFIX;
+    }
+
+    /** A new, empty active segment whose first record will have firstSeq. */
+    static FileSegment create(Path dir, String bedId, long firstSeq) throws IOException {
+        Path path = dir.resolve(fileName(firstSeq));
+        byte[] id = bedId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(12 + id.length);
+        header.put((byte) 'R').put((byte) 'P').put((byte) 'M').put((byte) 'S').putInt(VERSION).putInt(id.length).put(id).flip();
+
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            while (header.hasRemaining()) ch.write(header, header.position());
+            ch.force(true);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        return new FileSegment(path, firstSeq, bedId, 12 + id.length, ch);
+    }
+
+    /**
+     * Opens an existing segment. The active one stays writable and has a torn tail cut off;
+     * a sealed one loads its .idx sidecar when it matches the file, else is scanned. Null
+     * when the file has no complete header (a crash right after creating it).
+     */
+    static FileSegment open(Path path, long firstSeq, boolean active) throws IOException {
+        FileChannel ch = active
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            ByteBuffer head = ByteBuffer.allocate(12);
+            if (size < 12 || ch.read(head, 0) < 12) return closeAndNull(ch);
+            head.flip();
+            if (head.get() != 'R' || head.get() != 'P' || head.get() != 'M' || head.get() != 'S' || head.getInt() != VERSION) {
+                throw new IOException("Not a telemetry segment: " + path);
+            }
+            int idLen = head.getInt();
+            if (idLen < 0 || 12L + idLen > size) return closeAndNull(ch);
+            ByteBuffer id = ByteBuffer.allocate(idLen);
+            ch.read(id, 12);
+            FileSegment s = new FileSegment(path, firstSeq, new String(id.array(), StandardCharsets.UTF_8), 12 + idLen, ch);
+
+            if (active || !s.loadIndex(size)) {
+                long good = s.scan(size);
+                if (good < size) {
+                    log.warning("Truncating torn tail of " + path + " at " + good + " of " + size + " bytes");
+                    if (active) ch.truncate(good);
+                }
+            }
+            if (!active) s.seal(false);
+            return s;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private static FileSegment closeAndNull(FileChannel ch) throws IOException {
+        ch.close();
+        return null;
+    }
+
+    // Walks records from the header, checking lengths and CRCs; returns the end of the last good one
+    private long scan(long size) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32 crc = new CRC32();
+        long off = headerBytes;
+        while (off + RECORD_HEADER <= size) {
+            int len = buf.getInt((int) off);
+            int sum = buf.getInt((int) off + 4);
+            if (len < 44 || len > MAX_RECORD || off + RECORD_HEADER + len > size) break;
+            ByteBuffer body = buf.duplicate();
+            body.limit((int) (off + RECORD_HEADER + len)).position((int) off + RECORD_HEADER);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != sum) break;
+            int b = (int) off + RECORD_HEADER;
+            indexed(off, buf.getLong(b), buf.getLong(b + 8), buf.getLong(b + 16), RECORD_HEADER + len);
+            off += RECORD_HEADER + len;
+        }
+        return off;
+    }
+
+    /**
+     * Appends a record built by FileTelemetryStore (length and CRC are filled in here). A body over
+     * MAX_RECORD is refused unwritten, since a scan on reopen would cut it off with everything after it.
+     */
+    void append(ByteBuffer record, long seq, long recMinTs, long recMaxTs) throws IOException {
+        int len = record.remaining() - RECORD_HEADER;
+        if (len > MAX_RECORD) throw new IOException("Record of " + len + " bytes exceeds " + MAX_RECORD + " in " + path);
+        CRC32 crc = new CRC32();
+        ByteBuffer body = record.duplicate();
+        body.position(record.position() + RECORD_HEADER);
+        crc.update(body);
+        record.putInt(record.position(), len);
+        record.putInt(record.position() + 4, (int) crc.getValue());
+
+        long off = committed;
+        long pos = off;
+        while (record.hasRemaining()) pos += channel.write(record, pos);
+        indexed(off, seq, recMinTs, recMaxTs, RECORD_HEADER + len);
+    }
+
+    // Accounts for the record at off, then publishes it through committed
+    private void indexed(long off, long seq, long recMinTs, long recMaxTs, int size) {
+        if (off - lastIndexedOff >= INDEX_EVERY_BYTES) {
+            int n = idxCount;
+            if (n == idxOff.length) {
+                idxMaxBefore = Arrays.copyOf(idxMaxBefore, n * 2);
+                idxSeq = Arrays.copyOf(idxSeq, n * 2);
+                idxOff = Arrays.copyOf(idxOff, n * 2);
+            }
+            idxOff[n] = off;
+            idxSeq[n] = seq;
+            idxMaxBefore[n] = maxSoFar;
+            idxCount = n + 1;
+            lastIndexedOff = off;
+        }
+        if (recMinTs < lastMinTs) ordered = false;
+        lastMinTs = recMinTs;
+        maxSoFar = Math.max(maxSoFar, recMaxTs);
+        if (recMinTs < minTs) minTs = recMinTs;
+        if (recMaxTs > maxTs) maxTs = recMaxTs;
+        lastSeq = seq;
+        committed = off + size;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /** Stops appends: writes the .idx sidecar (when asked), maps the whole file and closes the channel. */
+    synchronized void seal(boolean writeIndex) throws IOException {
+        if (channel == null) return;
+        if (writeIndex) writeIndex();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, committed);
+        channel.close();
+        channel = null;
+    }
+
+    private void writeIndex() throws IOException {
+        int n = idxCount;
+        ByteBuffer b = ByteBuffer.allocate(4 + 8 * 4 + 1 + 4 + n * 24);
+        b.putInt(INDEX_MAGIC).putLong(committed).putLong(lastSeq).putLong(minTs).putLong(maxTs)
+                .put((byte) (ordered ? 1 : 0)).putInt(n);
+        for (int i = 0; i < n; i++) b.putLong(idxOff[i]).putLong(idxSeq[i]).putLong(idxMaxBefore[i]);
+        b.flip();
+        Path idx = indexPath();
+        try (FileChannel ch = FileChannel.open(idx, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(true);
+        }
+    }
+
+    // True if a sidecar written for exactly this file length was loaded
+    private boolean loadIndex(long size) throws IOException {
+        Path idx = indexPath();
+        if (!Files.exists(idx)) return false;
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(idx));
+        if (b.remaining() < 41 || b.getInt() != INDEX_MAGIC || b.getLong() != size) return false;
+        long seq = b.getLong(), lo = b.getLong(), hi = b.getLong();
+        boolean inOrder = b.get() == 1;
+        int n = b.getInt();
+        if (n < 0 || b.remaining() != n * 24L) return false;
+        long[] off = new long[Math.max(16, n)], sq = new long[off.length], mb = new long[off.length];
+        for (int i = 0; i < n; i++) {
+            off[i] = b.getLong();
+            sq[i] = b.getLong();
+            mb[i] = b.getLong();
+        }
+        idxOff = off;
+        idxSeq = sq;
+        idxMaxBefore = mb;
+        idxCount = n;
+        lastSeq = seq;
+        minTs = lo;
+        maxTs = hi;
+        ordered = inOrder;
+        committed = size;
+        return true;
+    }
+
+    private Path indexPath() {
+        String name = path.getFileName().toString();
+        return path.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /** Closes the file and deletes it with its sidecar; readers already holding it keep the mapping. */
+    synchronized void delete() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(indexPath());
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+    }
+
+    long committed() {
+        return committed;
+    }
+
+    long lastSeq() {
+        return lastSeq;
+    }
+
+    long minTs() {
+        return minTs;
+    }
+
+    long maxTs() {
+        return maxTs;
+    }
+
+    /** Read-only view of the records committed so far; mapped once for sealed segments, remapped as the active one grows. */
+    synchronized ByteBuffer view() throws IOException {
+        long end = committed;
+        if (mapped == null || mapped.capacity() < end) {
+            if (channel == null) throw new IOException("Segment closed: " + path);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+        ByteBuffer b = mapped.duplicate();
+        b.limit((int) end);
+        return b;
+    }
+
+    /** Offset to start a scan for records with maxTs >= fromMs: past every indexed record entirely before it. */
+    long startForTs(long fromMs) {
+        int n = idxCount;
+        long[] mb = idxMaxBefore, off = idxOff;
+        int lo = 0, hi = n;
+        // Last entry whose earlier records all end before fromMs
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mb[mid] < fromMs) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo == 0 ? headerBytes : off[lo - 1];
+    }
+
+    /** Offset to start a scan for records with seq > afterSeq. */
+    long startForSeq(long afterSeq) {
+        int n = idxCount;
+        long[] sq = idxSeq, off = idxOff;
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sq[mid] <= afterSeq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo == 0 ? headerBytes : off[lo - 1];
+    }
+
+    /** Offsets of the indexed records, oldest first, for walking a segment backwards a chunk at a time. */
+    long[] indexOffsets() {
+        int n = idxCount;
+        long[] out = Arrays.copyOf(idxOff, n);
+        if (n == 0 || out[0] != headerBytes) {
+            long[] withHead = new long[n + 1];
+            withHead[0] = headerBytes;
+            System.arraycopy(out, 0, withHead, 1, n);
+            return withHead;
+        }
+        return out;
+    }
+
+    boolean isOrdered() {
+        return ordered;
+    }
+
+    /** Iterates records in [from, end) of a view. */
+    static final class Cursor {
+        private final ByteBuffer buf;
+        private final int end;
+        private int next;
+        private int body;
+
+        Cursor(ByteBuffer buf, long from, long end) {
+            this.buf = buf;
+            this.next = (int) from;
+            this.end = (int) end;
+        }
+
+        boolean next() {
+            if (next + RECORD_HEADER > end) return false;
+            int len = buf.getInt(next);
+            body = next + RECORD_HEADER;
+            next = body + len;
+            return true;
+        }
+
+        /** Offset of the record after the current one. */
+        long position() {
+            return next;
+        }
+
+        long seq() {
+            return buf.getLong(body);
+        }
+
+        long minTs() {
+            return buf.getLong(body + 8);
+        }
+
+        long maxTs() {
+            return buf.getLong(body + 16);
+        }
+
+        int rows() {
+            return buf.getInt(body + 24);
+        }
+
+        private int row(int i) {
+            return body + 28 + i * ROW_BYTES;
+        }
+
+        long ts(int i) {
+            return buf.getLong(row(i));
+        }
+
+        /** Copies row i into out's vitals columns. */
+        void copyRow(int i, PatientTelemetry out) {
+            int at = row(i);
+            out.getTs().addLong(buf.getLong(at));
+            out.getHr().addDouble(buf.getDouble(at + 8));
+            out.getRr().addDouble(buf.getDouble(at + 16));
+            out.getSys().addDouble(buf.getDouble(at + 24));
+            out.getDia().addDouble(buf.getDouble(at + 32));
+            out.getTemp().addDouble(buf.getDouble(at + 40));
+        }
+
+        private int ecgAt() {
+            return row(rows());
+        }
+
+        boolean hasEcg() {
+            return buf.getLong(ecgAt()) != LongColumn.MISSING;
+        }
+
+        long ecgTsStart() {
+            return buf.getLong(ecgAt());
+        }
+
+        int ecgFs() {
+            return buf.getInt(ecgAt() + 8);
+        }
+
+        double[] ecgSamples() {
+            int at = ecgAt() + 12;
+            ByteBuffer b = buf.duplicate();
+            b.position(at + 4);
+            return EcgCodec.decode(b, buf.getInt(at));
+        }
+    }
+}
@@ -0,0 +1,586 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durable single-node backend: per-bed append-only segment files (see
+ * FileSegment) under one directory, with no external service.
+ *
+ * Every write to a bed is one record in the bed's active segment, stamped with
+ * the bed's next sequence number (a write too big for one record is split into
+ * several, each with its own sequence number); rows without ts are stored at the write time
+ * and ECG without a start or rate at the write time and 250 Hz, like the other
+ * backends. Once the active segment passes segmentBytes it is sealed and a new
+ * one is started, named after its first sequence number:
+ *
+ *   dir/bed-&lt;hex of the UTF-8 bed id&gt;/00000000000000000001.seg (+ .idx once sealed)
+ *
+ * Reads map segments read-only and decode records in place. Range reads skip
+ * whole segments by their time bounds and use the sparse index to start at
+ * the first record that can match; since reads do the same by sequence. get()
+ * returns the newest DEFAULT_VITAL_LIMIT rows and the newest ECG record, as in
+ * the db backend. On start each bed's active segment is scanned and a torn
+ * tail from a crash mid-write is cut off.
+ *
+ * With fsync (the default) a write is forced to disk before it returns. With
+ * retentionMs &gt; 0, sealed segments whose newest timestamp is more than that
+ * behind the bed's newest data are deleted when the next segment is started.
+ */
+public class FileTelemetryStore extends AbstractTelemetryStore {
+    private static final Logger log = Logger.getLogger(FileTelemetryStore.class.getName());
+    private static final int DEFAULT_VITAL_LIMIT = 600;
+    private static final int DEFAULT_FS = 250;
+    private static final String BED_PREFIX = "bed-";
+    // Rows and ECG samples per record, keeping each under FileSegment.MAX_RECORD (an ECG delta takes at most 3 bytes)
+    private static final int RECORD_ROWS = FileSegment.MAX_RECORD / 2 / FileSegment.ROW_BYTES;
+    private static final int RECORD_ECG_SAMPLES = FileSegment.MAX_RECORD / 2 / 3;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final long retentionMs;
+    private final Map<String, BedLog> beds = new ConcurrentHashMap<>();
+
+    public FileTelemetryStore(Path dir, long segmentBytes, boolean fsync, long retentionMs) {
+        this.dir = dir;
+        // Records are addressed with int offsets inside a mapping
+        this.segmentBytes = Math.max(64 * 1024, Math.min(segmentBytes, 1L << 30));
+        this.fsync = fsync;
+        this.retentionMs = Math.max(0, retentionMs);
+        try {
+            Files.createDirectories(dir);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open telemetry directory " + dir, e);
+        }
+    }
+
+    /**
+     * TELEMETRY_FILE_DIR (default ./telemetry-data), TELEMETRY_FILE_SEGMENT_BYTES (16 MB),
+     * TELEMETRY_FILE_FSYNC (true; false leaves flushing to the OS) and
+     * TELEMETRY_FILE_RETENTION_MS (0 keeps everything).
+     */
+    public static FileTelemetryStore fromEnv() {
+        String d = System.getenv("TELEMETRY_FILE_DIR");
+        String fsync = System.getenv("TELEMETRY_FILE_FSYNC");
+        return new FileTelemetryStore(
+                Paths.get(d == null || d.isBlank() ? "telemetry-data" : d.trim()),
+                DbConfig.getenvLong("TELEMETRY_FILE_SEGMENT_BYTES", 16L << 20),
+                fsync == null || !"false".equalsIgnoreCase(fsync.trim()),
+                DbConfig.getenvLong("TELEMETRY_FILE_RETENTION_MS", 0L));
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, BED_PREFIX + "*")) {
+            for (Path bedDir : ds) {
+                if (!Files.isDirectory(bedDir)) continue;
+                BedLog b = openBed(bedDir);
+                if (b != null) beds.put(b.bedId, b);
+            }
+        }
+        log.info("File telemetry store at " + dir + ": " + beds.size() + " beds");
+    }
+
+    // Null for a directory without a readable segment
+    private BedLog openBed(Path bedDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(bedDir, "*" + FileSegment.SUFFIX)) {
+            ds.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(p -> p.getFileName().toString()));
+
+        List<FileSegment> segs = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path f = files.get(i);
+            String name = f.getFileName().toString();
+            long firstSeq;
+            try {
+                firstSeq = Long.parseLong(name.substring(0, name.length() - FileSegment.SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            FileSegment s = FileSegment.open(f, firstSeq, i == files.size() - 1);
+            if (s == null) {
+                log.warning("Removing segment without a complete header: " + f);
+                Files.deleteIfExists(f);
+                continue;
+            }
+            segs.add(s);
+        }
+        if (segs.isEmpty()) return null;
+
+        FileSegment last = segs.get(segs.size() - 1);
+        BedLog b = new BedLog(last.bedId, bedDir, last.lastSeq());
+        b.segments.addAll(segs);
+        for (FileSegment s : segs) b.newestTs = Math.max(b.newestTs, s.maxTs());
+        b.lastEcg = b.findLastEcg();
+        return b;
+    }
+
+    private BedLog bed(String bedId) {
+        return beds.computeIfAbsent(bedId, id -> {
+            Path bedDir = dir.resolve(BED_PREFIX + hex(id));
+            try {
+                Files.createDirectories(bedDir);
+                BedLog b = new BedLog(id, bedDir, 0);
+                b.segments.add(FileSegment.create(bedDir, id, 1));
+                return b;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    static String hex(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    @Override
+    public void store(String bedId, PatientTelemetry data) {
+        append(bedId, data);
+    }
+
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        Map<String, Long> out = new TreeMap<>();
+        if (batch == null) return out;
+        batch.forEach((bedId, data) -> {
+            long seq = append(bedId, data);
+            if (seq > 0) out.put(bedId, seq);
+        });
+        return out;
+    }
+
+    // The sequence the write got, or 0 if nothing was stored
+    private long append(String bedId, PatientTelemetry data) {
+        if (bedId == null || bedId.isBlank() || data == null) return 0;
+        try {
+            return bed(bedId).append(data, System.currentTimeMillis());
+        } catch (IOException | UncheckedIOException e) {
+            log.log(Level.WARNING, "File store failed for " + bedId, e);
+            return 0;
+        }
+    }
+
+    @Override
+    public PatientTelemetry get(String bedId) {
+        if (bedId == null) return null;
+        BedLog b = beds.get(bedId);
+        return b == null ? null : read(bedId, b::latestWindow);
+    }
+
+    @Override
+    public PatientTelemetry getRange(String bedId, long fromMs, long toMs) {
+        if (bedId == null) return null;
+        BedLog b = beds.get(bedId);
+        return b == null ? null : read(bedId, () -> b.range(fromMs, toMs, true));
+    }
+
+    @Override
+    public PatientTelemetry getVitalsRange(String bedId, long fromMs, long toMs) {
+        if (bedId == null) return null;
+        BedLog b = beds.get(bedId);
+        return b == null ? null : read(bedId, () -> b.range(fromMs, toMs, false));
+    }
+
+    @Override
+    public Map<String, Long> sequences() {
+        Map<String, Long> out = new TreeMap<>();
+        beds.forEach((bed, b) -> out.put(bed, b.seq));
+        return out;
+    }
+
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq) throws IOException {
+        return getSince(bedId, afterSeq, Long.MAX_VALUE);
+    }
+
+    // Not through read(): a failure must reach the caller, which may have sent a cursor past it
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq, long upToSeq) throws IOException {
+        if (bedId == null) return null;
+        BedLog b = beds.get(bedId);
+        return b == null ? null : b.since(afterSeq, upToSeq);
+    }
+
+    private interface Read {
+        PatientTelemetry run() throws IOException;
+    }
+
+    private static PatientTelemetry read(String bedId, Read r) {
+        try {
+            return r.run();
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "File read failed for " + bedId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long segments = 0, bytes = 0;
+        for (BedLog b : beds.values()) {
+            for (FileSegment s : b.segments) {
+                segments++;
+                bytes += s.committed();
+            }
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("backend", "file");
+        m.put("dir", dir.toString());
+        m.put("fsync", fsync);
+        m.put("segmentBytes", segmentBytes);
+        m.put("retentionMs", retentionMs);
+        m.put("beds", beds.size());
+        m.put("segments", segments);
+        m.put("bytesTotal", bytes);
+        return m;
+    }
+
+    @Override
+    public void close() {
+        for (BedLog b : beds.values()) {
+            synchronized (b) {
+                for (FileSegment s : b.segments) {
+                    try {
+                        s.close();
+                    } catch (IOException e) {
+                        log.log(Level.WARNING, "Closing " + s.path + " failed", e);
+                    }
+                }
+            }
+        }
+    }
+
+    // One write as a segment record: 8 bytes left for FileSegment.append, then the body
+    private static ByteBuffer encode(PatientTelemetry in, long seq, long nowMs) {
+        int rows = in.vitalsRows();
+        DoubleColumn ecg = in.getEcg();
+        byte[] ecgBytes = ecg.isEmpty() ? new byte[0] : EcgCodec.encode(ecg);
+        ByteBuffer b = ByteBuffer.allocate(8 + 28 + rows * FileSegment.ROW_BYTES + 16 + ecgBytes.length);
+
+        long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+        b.position(8 + 28);
+        for (int i = 0; i < rows; i++) {
+            long ts = in.getTs().getOr(i, nowMs);
+            minTs = Math.min(minTs, ts);
+            maxTs = Math.max(maxTs, ts);
+            b.putLong(ts)
+                    .putDouble(in.getHr().getOrNaN(i))
+                    .putDouble(in.getRr().getOrNaN(i))
+                    .putDouble(in.getSys().getOrNaN(i))
+                    .putDouble(in.getDia().getOrNaN(i))
+                    .putDouble(in.getTemp().getOrNaN(i));
+        }
+        if (ecg.isEmpty()) {
+            b.putLong(LongColumn.MISSING).putInt(0);
+        } else {
+            int fs = in.getEcgFs() != null && in.getEcgFs() > 0 ? in.getEcgFs() : DEFAULT_FS;
+            long start = in.getEcgTsStart() != null ? in.getEcgTsStart() : nowMs;
+            minTs = Math.min(minTs, start);
+            maxTs = Math.max(maxTs, start + (ecg.size() - 1) * 1000L / fs);
+            b.putLong(start).putInt(fs);
+        }
+        b.putInt(ecgBytes.length).put(ecgBytes);
+        // A write with neither rows nor ECG still takes a sequence number; file it under now
+        if (minTs > maxTs) minTs = maxTs = nowMs;
+
+        b.putLong(8, seq).putLong(16, minTs).putLong(24, maxTs).putInt(32, rows);
+        b.flip();
+        return b;
+    }
+
+    // A write too big for one record as consecutive pieces; almost always just in itself
+    private static List<PatientTelemetry> pieces(PatientTelemetry in, long nowMs) {
+        int rows = in.vitalsRows();
+        int samples = in.getEcg().size();
+        if (rows <= RECORD_ROWS && samples <= RECORD_ECG_SAMPLES) return Collections.singletonList(in);
+
+        int fs = in.getEcgFs() != null && in.getEcgFs() > 0 ? in.getEcgFs() : DEFAULT_FS;
+        long start = in.getEcgTsStart() != null ? in.getEcgTsStart() : nowMs;
+        double[] ecg = samples == 0 ? null : in.getEcg().toDoubleArray();
+        List<PatientTelemetry> out = new ArrayList<>();
+        for (int r = 0, e = 0; r < rows || e < samples; r += RECORD_ROWS, e += RECORD_ECG_SAMPLES) {
+            PatientTelemetry p = new PatientTelemetry();
+            for (int i = r, end = Math.min(rows, r + RECORD_ROWS); i < end; i++) {
+                p.getTs().addLong(in.getTs().getOr(i, nowMs));
+                p.getHr().addDouble(in.getHr().getOrNaN(i));
+                p.getRr().addDouble(in.getRr().getOrNaN(i));
+                p.getSys().addDouble(in.getSys().getOrNaN(i));
+                p.getDia().addDouble(in.getDia().getOrNaN(i));
+                p.getTemp().addDouble(in.getTemp().getOrNaN(i));
+            }
+            if (e < samples) {
+                p.getEcg().addAll(ecg, e, Math.min(samples - e, RECORD_ECG_SAMPLES));
+                p.setEcgTsStart(start + e * 1000L / fs);
+                p.setEcgFs(fs);
+            }
+            out.add(p);
+        }
+        return out;
+    }
+
+    private static void addEcg(FileSegment.Cursor c, List<long[]> starts, List<double[]> samples) {
+        starts.add(new long[] {c.ecgTsStart(), c.ecgFs()});
+        samples.add(c.ecgSamples());
+    }
+
+    // Feeds ECG records to a stitcher oldest start first, as it requires
+    private static void stitch(List<long[]> starts, List<double[]> samples, EcgStitcher st) {
+        Integer[] order = new Integer[starts.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> starts.get(i)[0]));
+        for (int i : order) {
+            double[] s = samples.get(i);
+            st.add(starts.get(i)[0], (int) starts.get(i)[1], s, 0, s.length);
+        }
+    }
+
+    // Copy of t with its rows in ts order (stable), keeping only the newest limit of them
+    private static PatientTelemetry sortedByTs(PatientTelemetry t, int limit) {
+        int n = t.vitalsRows();
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) sorted = t.getTs().getLong(i - 1) <= t.getTs().getLong(i);
+        if (sorted && n <= limit) return t;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        if (!sorted) Arrays.sort(order, Comparator.comparingLong(i -> t.getTs().getLong(i)));
+        PatientTelemetry out = new PatientTelemetry();
+        out.setSeq(t.getSeq());
+        for (int k = Math.max(0, n - limit); k < n; k++) {
+            int i = order[k];
+            out.getTs().addLong(t.getTs().getLong(i));
+            out.getHr().addDouble(t.getHr().getDouble(i));
+            out.getRr().addDouble(t.getRr().getDouble(i));
+            out.getSys().addDouble(t.getSys().getDouble(i));
+            out.getDia().addDouble(t.getDia().getDouble(i));
+            out.getTemp().addDouble(t.getTemp().getDouble(i));
+        }
+        out.getEcg().addAll(t.getEcg());
+        out.setEcgTsStart(t.getEcgTsStart());
+        out.setEcgFs(t.getEcgFs());
+        return out;
+    }
+
+    /**
+     * One bed's segments, oldest first; the last one takes appends. Appends hold the
+     * BedLog's lock and publish seq last, so a reader that reads seq first finds every
+     * record up to it committed.
+     */
+    private final class BedLog {
+        final String bedId;
+        final Path bedDir;
+        final List<FileSegment> segments = new CopyOnWriteArrayList<>();
+        volatile long seq;
+        // Newest timestamp written, for retention
+        long newestTs = Long.MIN_VALUE;
+        // Segment and offset of the newest record with ECG, for get(); null if none
+        volatile EcgRef lastEcg;
+
+        BedLog(String bedId, Path bedDir, long seq) {
+            this.bedId = bedId;
+            this.bedDir = bedDir;
+            this.seq = seq;
+        }
+
+        // Returns the sequence of the write's last record
+        synchronized long append(PatientTelemetry in, long nowMs) throws IOException {
+            for (PatientTelemetry p : pieces(in, nowMs)) {
+                long next = seq + 1;
+                ByteBuffer record = encode(p, next, nowMs);
+                FileSegment active = segments.get(segments.size() - 1);
+                if (active.committed() >= segmentBytes) active = roll(active, next);
+
+                long off = active.committed();
+                active.append(record, next, record.getLong(16), record.getLong(24));
+                if (fsync) active.force();
+                newestTs = Math.max(newestTs, record.getLong(24));
+                if (!p.getEcg().isEmpty()) lastEcg = new EcgRef(active, off);
+                seq = next;
+            }
+            return seq;
+        }
+
+        private FileSegment roll(FileSegment active, long firstSeq) throws IOException {
+            active.seal(true);
+            FileSegment s = FileSegment.create(bedDir, bedId, firstSeq);
+            segments.add(s);
+            if (retentionMs > 0) {
+                long cutoff = newestTs - retentionMs;
+                while (segments.size() > 1 && segments.get(0).maxTs() < cutoff) {
+                    FileSegment old = segments.remove(0);
+                    EcgRef e = lastEcg;
+                    if (e != null && e.segment == old) lastEcg = null;
+                    old.delete();
+                }
+            }
+            return s;
+        }
+
+        // Newest ECG record on disk, walking back from the end a chunk at a time
+        EcgRef findLastEcg() throws IOException {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                FileSegment s = segments.get(i);
+                ByteBuffer view = s.view();
+                long[] offs = s.indexOffsets();
+                long end = view.limit();
+                for (int k = offs.length - 1; k >= 0; k--) {
+                    FileSegment.Cursor c = new FileSegment.Cursor(view, offs[k], end);
+                    long found = -1;
+                    for (long at = offs[k]; c.next(); at = c.position()) {
+                        if (c.hasEcg()) found = at;
+                    }
+                    if (found >= 0) return new EcgRef(s, found);
+                    end = offs[k];
+                }
+            }
+            return null;
+        }
+
+        /** Newest DEFAULT_VITAL_LIMIT rows by ts and the newest ECG record. */
+        PatientTelemetry latestWindow() throws IOException {
+            long upTo = seq;
+            EcgRef ecg = lastEcg;
+            PatientTelemetry all = new PatientTelemetry();
+            all.setSeq(upTo);
+
+            // Chunks newest first, each read forward; stop once enough rows were seen
+            List<PatientTelemetry> chunks = new ArrayList<>();
+            int rows = 0;
+            for (int i = segments.size() - 1; i >= 0 && rows < DEFAULT_VITAL_LIMIT; i--) {
+                FileSegment s = segments.get(i);
+                ByteBuffer view = s.view();
+                long[] offs = s.indexOffsets();
+                long end = view.limit();
+                for (int k = offs.length - 1; k >= 0 && rows < DEFAULT_VITAL_LIMIT; k--) {
+                    PatientTelemetry chunk = new PatientTelemetry();
+                    FileSegment.Cursor c = new FileSegment.Cursor(view, offs[k], end);
+                    while (c.next()) {
+                        if (c.seq() > upTo) break;
+                        for (int r = 0, n = c.rows(); r < n; r++) c.copyRow(r, chunk);
+                    }
+                    rows += chunk.vitalsRows();
+                    chunks.add(chunk);
+                    end = offs[k];
+                }
+            }
+            for (int i = chunks.size() - 1; i >= 0; i--) all.append(chunks.get(i));
+            PatientTelemetry out = sortedByTs(all, DEFAULT_VITAL_LIMIT);
+
+            if (ecg != null) {
+                ByteBuffer view = ecg.segment.view();
+                FileSegment.Cursor c = new FileSegment.Cursor(view, ecg.offset, view.limit());
+                if (c.next() && c.seq() <= upTo) {
+                    double[] samples = c.ecgSamples();
+                    out.getEcg().addAll(samples, 0, samples.length);
+                    out.setEcgTsStart(c.ecgTsStart());
+                    out.setEcgFs(c.ecgFs());
+                }
+            }
+            return out;
+        }
+
+        PatientTelemetry range(long fromMs, long toMs, boolean withEcg) throws IOException {
+            long upTo = seq;
+            PatientTelemetry out = new PatientTelemetry();
+            out.setSeq(upTo);
+            List<long[]> ecgStarts = new ArrayList<>();
+            List<double[]> ecgSamples = new ArrayList<>();
+
+            for (FileSegment s : segments) {
+                if (s.maxTs() < fromMs || s.minTs() > toMs) continue;
+                boolean ordered = s.isOrdered();
+                ByteBuffer view = s.view();
+                FileSegment.Cursor c = new FileSegment.Cursor(view, s.startForTs(fromMs), view.limit());
+                while (c.next()) {
+                    if (c.seq() > upTo) break;
+                    if (c.minTs() > toMs) {
+                        if (ordered) break;
+                        continue;
+                    }
+                    if (c.maxTs() < fromMs) continue;
+                    for (int r = 0, n = c.rows(); r < n; r++) {
+                        long ts = c.ts(r);
+                        if (ts >= fromMs && ts <= toMs) c.copyRow(r, out);
+                    }
+                    if (withEcg && c.hasEcg()) addEcg(c, ecgStarts, ecgSamples);
+                }
+            }
+
+            out = sortedByTs(out, Integer.MAX_VALUE);
+            EcgStitcher st = new EcgStitcher(fromMs, toMs);
+            stitch(ecgStarts, ecgSamples, st);
+            st.into(out);
+            return out;
+        }
+
+        /**
+         * Rows written in (afterSeq, upToSeq] in arrival order, and their ECG stitched oldest start first.
+         * Past MAX_SINCE_ROWS rows it stops before the next write, with seq set to the last one read.
+         */
+        PatientTelemetry since(long afterSeq, long upToSeq) throws IOException {
+            long upTo = Math.min(seq, upToSeq);
+            PatientTelemetry out = new PatientTelemetry();
+            out.setSeq(upTo);
+            if (upTo <= afterSeq) return out;
+
+            // A back-filled record can start before ones written earlier, so ECG is sorted before stitching
+            List<long[]> ecgStarts = new ArrayList<>();
+            List<double[]> ecgSamples = new ArrayList<>();
+            long last = afterSeq;
+            scan:
+            for (FileSegment s : segments) {
+                if (s.lastSeq() <= afterSeq) continue;
+                ByteBuffer view = s.view();
+                FileSegment.Cursor c = new FileSegment.Cursor(view, s.startForSeq(afterSeq), view.limit());
+                while (c.next()) {
+                    long recSeq = c.seq();
+                    if (recSeq > upTo) break;
+                    if (recSeq <= afterSeq) continue;
+                    // A write split into several records shares one seq, so this only stops between writes
+                    if (recSeq != last && out.vitalsRows() >= AbstractTelemetryStore.MAX_SINCE_ROWS) {
+                        out.setSeq(last);
+                        break scan;
+                    }
+                    last = recSeq;
+                    for (int r = 0, n = c.rows(); r < n; r++) c.copyRow(r, out);
+                    if (c.hasEcg()) addEcg(c, ecgStarts, ecgSamples);
+                }
+            }
+            EcgStitcher st = new EcgStitcher(Long.MIN_VALUE, Long.MAX_VALUE);
+            stitch(ecgStarts, ecgSamples, st);
+            st.into(out);
+            return out;
+        }
+    }
+
+    private static final class EcgRef {
+        final FileSegment segment;
+        final long offset;
+
+        EcgRef(FileSegment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Base for store decorators: forwards every call to the wrapped backend, so a
+ * subclass only overrides the calls it adds behaviour to.
+ */
+public abstract class ForwardingTelemetryStore extends AbstractTelemetryStore {
+    protected final AbstractTelemetryStore delegate;
+
+    protected ForwardingTelemetryStore(AbstractTelemetryStore delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void store(String bedId, PatientTelemetry data) {
+        delegate.store(bedId, data);
+    }
+
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        return delegate.storeAll(batch);
+    }
+
+    @Override
+    public PatientTelemetry get(String bedId) {
+        return delegate.get(bedId);
+    }
+
+    @Override
+    public void getPage(SortedMap<String, Long> page, PageSink sink) throws IOException {
+        delegate.getPage(page, sink);
+    }
+
+    @Override
+    public void getPageRange(SortedMap<String, Long> page, long fromMs, long toMs, PageSink sink) throws IOException {
+        delegate.getPageRange(page, fromMs, toMs, sink);
+    }
+
+    @Override
+    public void getPageSince(SortedMap<String, Long> page, Map<String, Long> cursor, PageSink sink) throws IOException {
+        delegate.getPageSince(page, cursor, sink);
+    }
+
+    @Override
+    public PatientTelemetry getRange(String bedId, long fromMs, long toMs) {
+        return delegate.getRange(bedId, fromMs, toMs);
+    }
+
+    @Override
+    public PatientTelemetry getVitalsRange(String bedId, long fromMs, long toMs) {
+        return delegate.getVitalsRange(bedId, fromMs, toMs);
+    }
+
+    @Override
+    public EcgStrip getEcg(String bedId, long fromMs, long toMs, int targetFs) {
+        return delegate.getEcg(bedId, fromMs, toMs, targetFs);
+    }
+
+    @Override
+    public VitalsRollup getRollup(String bedId, long fromMs, long toMs, long resolutionMs) {
+        return delegate.getRollup(bedId, fromMs, toMs, resolutionMs);
+    }
+
+    @Override
+    public Map<String, PatientTelemetry> getLatest() {
+        return delegate.getLatest();
+    }
+
+    @Override
+    public Map<String, Long> sequences() {
+        return delegate.sequences();
+    }
+
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq) throws IOException {
+        return delegate.getSince(bedId, afterSeq);
+    }
+
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq, long upToSeq) throws IOException {
+        return delegate.getSince(bedId, afterSeq, upToSeq);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return delegate.stats();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,60 @@
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body that is gzipped only once it outgrows minBytes.
+ *
+ * Output is held back until the threshold is crossed; at that point
+ * Content-Encoding: gzip is set and everything streams through a
+ * GZIPOutputStream. Smaller bodies are sent as-is on close() with a
+ * Content-Length, since compressing them costs more than it saves.
+ */
+final class GzipResponseStream extends OutputStream {
+    private final HttpServletResponse resp;
+    private final byte[] pending;
+    private int count;
+    private OutputStream gzip;
+    private boolean closed;
+
+    GzipResponseStream(HttpServletResponse resp, int minBytes) {
+        this.resp = resp;
+        this.pending = new byte[Math.max(0, minBytes)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("stream closed");
+        if (gzip == null && count + len <= pending.length) {
+            System.arraycopy(b, off, pending, count, len);
+            count += len;
+            return;
+        }
+        if (gzip == null) {
+            resp.setHeader("Content-Encoding", "gzip");
+            gzip = new GZIPOutputStream(resp.getOutputStream(), 8 * 1024);
+            gzip.write(pending, 0, count);
+        }
+        gzip.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (gzip != null) {
+            gzip.close();
+            return;
+        }
+        resp.setContentLength(count);
+        OutputStream out = resp.getOutputStream();
+        out.write(pending, 0, count);
+        out.close();
+    }
+}
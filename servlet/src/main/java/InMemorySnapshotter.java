@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic and shutdown snapshots of the in-memory backend, restored when the
+ * store is created so a restarted servlet comes back with its history.
+ *
+ * Each bed has its own file, dir/bed-&lt;hex of the UTF-8 bed id&gt;.snap:
+ * 'R' 'P' 'M' 'M', int version, int id length, bed id, int CRC-32 of the body,
+ * then the body from BedTelemetryBuffer.encodeSnapshot(). A pass only rewrites
+ * beds written since their last snapshot. Each file is written next to its
+ * target and renamed over it, so a crash mid-pass leaves the previous snapshot.
+ *
+ * Passes run on a background thread. A bed's lock is held only while its
+ * buffers are copied out, so ingest waits for a copy at most, never for disk.
+ */
+final class InMemorySnapshotter implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(InMemorySnapshotter.class.getName());
+
+    private static final int MAGIC = 0x52504D4D; // "RPMM"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snap";
+
+    private final Path dir;
+    private final Map<String, BedTelemetryBuffer> beds;
+    private final ScheduledExecutorService executor;
+    // Bed -> sequence in its snapshot file
+    private final Map<String, Long> written = new ConcurrentHashMap<>();
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong bedsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long lastPassMs;
+    private volatile long restoredBeds;
+    private volatile long restoreMs;
+
+    private InMemorySnapshotter(Path dir, Map<String, BedTelemetryBuffer> beds) {
+        this.dir = dir;
+        this.beds = beds;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "memory-snapshots");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Loads dir's snapshots into beds (with sequences of at least seqBase), then snapshots
+     * every intervalMs and on close(). With intervalMs 0 only close() writes.
+     */
+    static InMemorySnapshotter start(Path dir, long intervalMs, Map<String, BedTelemetryBuffer> beds,
+                                     RetentionPolicy retention, long seqBase) throws IOException {
+        Files.createDirectories(dir);
+        InMemorySnapshotter s = new InMemorySnapshotter(dir, beds);
+        s.restore(retention, seqBase);
+        if (intervalMs > 0) {
+            s.executor.scheduleWithFixedDelay(s::snapshotQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return s;
+    }
+
+    private void restore(RetentionPolicy retention, long seqBase) throws IOException {
+        long start = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            ds.forEach(files::add);
+        }
+        // Beds are independent; decoding is bulk copies, so the files are read in parallel
+        files.parallelStream().forEach(f -> {
+            try {
+                ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(f));
+                if (b.remaining() < 16 || b.getInt() != MAGIC || b.getInt() != VERSION) {
+                    log.warning("Skipping unreadable snapshot " + f);
+                    return;
+                }
+                byte[] id = new byte[b.getInt()];
+                b.get(id);
+                int sum = b.getInt();
+                CRC32 crc = new CRC32();
+                crc.update(b.duplicate());
+                if ((int) crc.getValue() != sum) {
+                    log.warning("Skipping snapshot failing its checksum: " + f);
+                    return;
+                }
+                String bedId = new String(id, StandardCharsets.UTF_8);
+                BedTelemetryBuffer buffer = BedTelemetryBuffer.restoreSnapshot(retention, b, seqBase);
+                beds.put(bedId, buffer);
+                written.put(bedId, buffer.sequence());
+            } catch (IOException | RuntimeException e) {
+                log.log(Level.WARNING, "Skipping unreadable snapshot " + f, e);
+            }
+        });
+        restoredBeds = written.size();
+        restoreMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Restored " + restoredBeds + " beds from " + dir + " in " + restoreMs + " ms");
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Memory snapshot failed", e);
+        }
+    }
+
+    /** One pass; returns the number of beds written. */
+    synchronized int snapshot() throws IOException {
+        int n = 0;
+        for (Map.Entry<String, BedTelemetryBuffer> e : beds.entrySet()) {
+            String bedId = e.getKey();
+            Long last = written.get(bedId);
+            if (last != null && last == e.getValue().sequence()) continue;
+
+            ByteBuffer body = e.getValue().encodeSnapshot();
+            long seq = body.getLong(0);
+            write(bedId, body);
+            written.put(bedId, seq);
+            n++;
+        }
+        passes.incrementAndGet();
+        bedsWritten.addAndGet(n);
+        lastPassMs = System.currentTimeMillis();
+        return n;
+    }
+
+    private void write(String bedId, ByteBuffer body) throws IOException {
+        byte[] id = bedId.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(16 + id.length);
+        header.putInt(MAGIC).putInt(VERSION).putInt(id.length).put(id).putInt((int) crc.getValue()).flip();
+
+        Path target = dir.resolve("bed-" + FileTelemetryStore.hex(bedId) + SUFFIX);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = {header, body};
+            while (body.hasRemaining()) ch.write(parts);
+            ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        bytesWritten.addAndGet(header.limit() + body.limit());
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("dir", dir.toString());
+        m.put("restoredBeds", restoredBeds);
+        m.put("restoreMs", restoreMs);
+        m.put("passes", passes.get());
+        m.put("bedsWritten", bedsWritten.get());
+        m.put("bytesWritten", bytesWritten.get());
+        m.put("lastPassMs", lastPassMs);
+        return m;
+    }
+
+    /** Stops the schedule and writes a final snapshot. */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotQuietly();
+    }
+}
@@ -1,27 +1,153 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryTelemetryStore extends AbstractTelemetryStore {
-    private final Map<String, PatientTelemetry> store = new ConcurrentHashMap<>();
+    private final Map<String, BedTelemetryBuffer> store = new ConcurrentHashMap<>();
+    private final RetentionPolicy retention;
+    // Sequences start from the ms clock so cursors from before a restart stay behind new writes (a bed
+    // would need over one write per ms to outrun it); counted from SEQ_EPOCH_MS to keep them short
+    private static final long SEQ_EPOCH_MS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    private final long seqBase = System.currentTimeMillis() - SEQ_EPOCH_MS;
+    // Restores and saves snapshots of every bed; null when snapshots are off
+    private final InMemorySnapshotter snapshots;
+
+    public InMemoryTelemetryStore() {
+        this(RetentionPolicy.defaults());
+    }
+
+    public InMemoryTelemetryStore(RetentionPolicy retention) {
+        this.retention = retention;
+        this.snapshots = null;
+    }
+
+    /**
+     * Restores the beds snapshotted in snapshotDir, then snapshots the beds written since
+     * every snapshotIntervalMs (0 = only on close()).
+     */
+    public InMemoryTelemetryStore(RetentionPolicy retention, Path snapshotDir, long snapshotIntervalMs) {
+        this.retention = retention;
+        try {
+            this.snapshots = InMemorySnapshotter.start(snapshotDir, snapshotIntervalMs, store, retention, seqBase);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open snapshot directory " + snapshotDir, e);
+        }
+    }
+
+    /**
+     * RetentionPolicy.fromEnv(); TELEMETRY_MEM_SNAPSHOT_DIR turns snapshots on, written every
+     * TELEMETRY_MEM_SNAPSHOT_INTERVAL_MS (default 30 s) and on shutdown.
+     */
+    public static InMemoryTelemetryStore fromEnv() {
+        String dir = System.getenv("TELEMETRY_MEM_SNAPSHOT_DIR");
+        if (dir == null || dir.isBlank()) return new InMemoryTelemetryStore(RetentionPolicy.fromEnv());
+        return new InMemoryTelemetryStore(RetentionPolicy.fromEnv(), Paths.get(dir.trim()),
+                DbConfig.getenvLong("TELEMETRY_MEM_SNAPSHOT_INTERVAL_MS", 30_000L));
+    }
 
     @Override
     public void store(String bedId, PatientTelemetry incoming) {
         if (bedId == null || incoming == null) return;
-        store.compute(bedId, (id, existing) -> {
-            if (existing == null) return incoming;
-            existing.append(incoming);
-            return existing;
+        append(bedId, incoming);
+    }
+
+    @Override
+    public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+        Map<String, Long> out = new TreeMap<>();
+        if (batch == null) return out;
+        batch.forEach((bedId, incoming) -> {
+            if (bedId != null && incoming != null) out.put(bedId, append(bedId, incoming));
         });
+        return out;
+    }
+
+    private long append(String bedId, PatientTelemetry incoming) {
+        // Plain get first: computeIfAbsent can lock the map bin even when the bed exists
+        BedTelemetryBuffer b = store.get(bedId);
+        if (b == null) b = store.computeIfAbsent(bedId, id -> new BedTelemetryBuffer(retention, seqBase));
+        return b.append(incoming, System.currentTimeMillis());
     }
 
     @Override
     public PatientTelemetry get(String bedId) {
-        return bedId == null ? null : store.get(bedId);
+        if (bedId == null) return null;
+        BedTelemetryBuffer b = store.get(bedId);
+        return b == null ? null : b.snapshot();
     }
 
     @Override
-    public Map<String, PatientTelemetry> getAll() {
-        return store;
+    public PatientTelemetry getRange(String bedId, long fromMs, long toMs) {
+        if (bedId == null) return null;
+        BedTelemetryBuffer b = store.get(bedId);
+        return b == null ? null : b.range(fromMs, toMs);
+    }
+
+    @Override
+    public PatientTelemetry getVitalsRange(String bedId, long fromMs, long toMs) {
+        if (bedId == null) return null;
+        BedTelemetryBuffer b = store.get(bedId);
+        return b == null ? null : b.range(fromMs, toMs, false);
+    }
+
+    @Override
+    public Map<String, PatientTelemetry> getLatest() {
+        Map<String, PatientTelemetry> out = new TreeMap<>();
+        store.forEach((bed, b) -> out.put(bed, b.latest()));
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> sequences() {
+        Map<String, Long> out = new TreeMap<>();
+        store.forEach((bed, b) -> out.put(bed, b.sequence()));
+        return out;
+    }
+
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq) {
+        if (bedId == null) return null;
+        BedTelemetryBuffer b = store.get(bedId);
+        return b == null ? null : b.since(afterSeq);
+    }
+
+    @Override
+    public PatientTelemetry getSince(String bedId, long afterSeq, long upToSeq) {
+        if (bedId == null) return null;
+        BedTelemetryBuffer b = store.get(bedId);
+        return b == null ? null : b.since(afterSeq, upToSeq);
     }
-}
 
+    /** Ring-buffer bytes currently allocated per bed. */
+    public Map<String, Long> memoryByBed() {
+        Map<String, Long> out = new TreeMap<>();
+        store.forEach((bed, b) -> out.put(bed, b.bytesAllocated()));
+        return out;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Long> perBed = memoryByBed();
+        long total = 0;
+        for (long v : perBed.values()) total += v;
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("backend", "memory");
+        m.put("retention", retention.toString());
+        m.put("beds", perBed.size());
+        m.put("bytesTotal", total);
+        m.put("bytesByBed", perBed);
+        m.put("lockedReads", BedTelemetryBuffer.optimisticFallbacks.get());
+        if (snapshots != null) m.put("snapshots", snapshots.stats());
+        return m;
+    }
+
+    @Override
+    public void close() {
+        if (snapshots != null) snapshots.close();
+    }
+}
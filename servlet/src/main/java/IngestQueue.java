@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind buffer between the POST handler and the store.
+ *
+ * The servlet enqueues validated payloads and answers 202 straight away; a
+ * single writer thread drains whatever has piled up, coalesces it into as few
+ * storeAll() calls as possible and writes it to the backing store.
+ */
+public final class IngestQueue {
+    private static final Logger log = Logger.getLogger(IngestQueue.class.getName());
+
+    /** What to do when a payload arrives and the queue is full. */
+    public enum Overflow { BLOCK, SHED_OLDEST, REJECT }
+
+    private static final int MAX_DRAIN = 256;
+
+    private final AbstractTelemetryStore store;
+    private final BlockingQueue<Map<String, PatientTelemetry>> queue;
+    private final Overflow overflow;
+    private final long blockTimeoutMs;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong payloadsWritten = new AtomicLong();
+    private volatile long lastWriteMs;
+
+    public IngestQueue(AbstractTelemetryStore store, int capacity, Overflow overflow, long blockTimeoutMs) {
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.overflow = overflow;
+        this.blockTimeoutMs = Math.max(0, blockTimeoutMs);
+
+        writer = new Thread(this::drainLoop, "telemetry-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads TELEMETRY_INGEST_MODE=async plus TELEMETRY_QUEUE_CAPACITY, TELEMETRY_QUEUE_OVERFLOW
+     * (block | shed-oldest | reject) and TELEMETRY_QUEUE_BLOCK_MS. Returns null in the default sync mode.
+     */
+    public static IngestQueue fromEnv(AbstractTelemetryStore store) {
+        String mode = System.getenv("TELEMETRY_INGEST_MODE");
+        if (mode == null || !"async".equals(mode.trim().toLowerCase(Locale.ROOT))) return null;
+
+        int capacity = (int) DbConfig.getenvLong("TELEMETRY_QUEUE_CAPACITY", 1024);
+        long blockMs = DbConfig.getenvLong("TELEMETRY_QUEUE_BLOCK_MS", 5_000L);
+
+        Overflow overflow = Overflow.REJECT;
+        String o = System.getenv("TELEMETRY_QUEUE_OVERFLOW");
+        if (o != null && !o.isBlank()) {
+            try {
+                overflow = Overflow.valueOf(o.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                log.warning("Unknown TELEMETRY_QUEUE_OVERFLOW=" + o + "; using reject");
+            }
+        }
+
+        log.info("Telemetry ingest=async (capacity=" + capacity + ", overflow=" + overflow + ")");
+        return new IngestQueue(store, capacity, overflow, blockMs);
+    }
+
+    /** Returns false when the payload was refused (queue full under REJECT, or BLOCK timed out). */
+    public boolean offer(Map<String, PatientTelemetry> payload) {
+        if (!running) return false;
+        if (payload == null || payload.isEmpty()) return true;
+
+        boolean ok;
+        switch (overflow) {
+            case BLOCK:
+                try {
+                    ok = queue.offer(payload, blockTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ok = false;
+                }
+                break;
+            case SHED_OLDEST:
+                while (!(ok = queue.offer(payload))) {
+                    if (queue.poll() != null) shed.incrementAndGet();
+                }
+                break;
+            default:
+                ok = queue.offer(payload);
+        }
+
+        if (ok) enqueued.incrementAndGet();
+        else rejected.incrementAndGet();
+        return ok;
+    }
+
+    private void drainLoop() {
+        List<Map<String, PatientTelemetry>> drained = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Map<String, PatientTelemetry> first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                drained.add(first);
+                queue.drainTo(drained, MAX_DRAIN - 1);
+
+                for (Map<String, PatientTelemetry> batch : coalesce(drained)) {
+                    write(batch);
+                }
+                payloadsWritten.addAndGet(drained.size());
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } finally {
+                drained.clear();
+            }
+        }
+    }
+
+    private void write(Map<String, PatientTelemetry> batch) {
+        long t0 = System.nanoTime();
+        try {
+            store.storeAll(batch);
+            writes.incrementAndGet();
+        } catch (RuntimeException e) {
+            writeFailures.incrementAndGet();
+            log.log(Level.WARNING, "Write-behind store failed for " + batch.keySet(), e);
+        }
+        lastWriteMs = (System.nanoTime() - t0) / 1_000_000L;
+    }
+
+    /**
+     * Merges queued payloads into as few batches as possible, preserving per-bed order.
+     * Vitals rows simply concatenate; ECG chunks only merge when contiguous, otherwise
+     * the later chunk starts a new batch so its start timestamp survives.
+     */
+    static List<Map<String, PatientTelemetry>> coalesce(List<Map<String, PatientTelemetry>> payloads) {
+        List<Map<String, PatientTelemetry>> out = new ArrayList<>();
+        for (Map<String, PatientTelemetry> payload : payloads) {
+            for (Map.Entry<String, PatientTelemetry> e : payload.entrySet()) {
+                String bed = e.getKey();
+                PatientTelemetry incoming = e.getValue();
+                if (bed == null || incoming == null) continue;
+
+                // Merge into the newest batch already holding this bed, else the earliest
+                // batch after it that does not; either way the bed's rows stay in order
+                Map<String, PatientTelemetry> target = null;
+                for (int i = out.size() - 1; i >= 0; i--) {
+                    Map<String, PatientTelemetry> m = out.get(i);
+                    PatientTelemetry existing = m.get(bed);
+                    if (existing == null) {
+                        target = m;
+                        continue;
+                    }
+                    if (mergeInto(existing, incoming)) {
+                        incoming = null;
+                    }
+                    break;
+                }
+                if (incoming == null) continue;
+
+                if (target == null) {
+                    target = new LinkedHashMap<>();
+                    out.add(target);
+                }
+                target.put(bed, copyOf(incoming));
+            }
+        }
+        return out;
+    }
+
+    private static boolean mergeInto(PatientTelemetry existing, PatientTelemetry incoming) {
+        boolean hasEcg = !existing.getEcg().isEmpty();
+        boolean inEcg = !incoming.getEcg().isEmpty();
+        if (hasEcg && inEcg && !contiguous(existing, incoming)) return false;
+        if (!sameShape(existing, incoming)) return false;
+
+        existing.getTs().addAll(incoming.getTs());
+        existing.getHr().addAll(incoming.getHr());
+        existing.getRr().addAll(incoming.getRr());
+        existing.getSys().addAll(incoming.getSys());
+        existing.getDia().addAll(incoming.getDia());
+        existing.getTemp().addAll(incoming.getTemp());
+        if (inEcg) {
+            if (!hasEcg) {
+                existing.setEcgTsStart(incoming.getEcgTsStart());
+                existing.setEcgFs(incoming.getEcgFs());
+            }
+            existing.getEcg().addAll(incoming.getEcg());
+        }
+        return true;
+    }
+
+    // Concatenating is only safe when each vitals column is either one-per-ts or absent, on both sides
+    private static boolean sameShape(PatientTelemetry a, PatientTelemetry b) {
+        List<List<?>> as = List.of(a.getHr(), a.getRr(), a.getSys(), a.getDia(), a.getTemp());
+        List<List<?>> bs = List.of(b.getHr(), b.getRr(), b.getSys(), b.getDia(), b.getTemp());
+        for (int i = 0; i < as.size(); i++) {
+            int sa = shape(as.get(i), a);
+            if (sa == 0 || sa != shape(bs.get(i), b)) return false;
+        }
+        return true;
+    }
+
+    // 1 = one value per ts, -1 = absent, 0 = ragged
+    private static int shape(List<?> series, PatientTelemetry t) {
+        if (series.isEmpty()) return -1;
+        return series.size() == t.getTs().size() ? 1 : 0;
+    }
+
+    private static boolean contiguous(PatientTelemetry a, PatientTelemetry b) {
+        if (a.getEcgTsStart() == null || b.getEcgTsStart() == null) return false;
+        if (a.getEcgFs() == null || !a.getEcgFs().equals(b.getEcgFs()) || a.getEcgFs() <= 0) return false;
+        double fs = a.getEcgFs();
+        double expectedNext = a.getEcgTsStart() + a.getEcg().size() * 1000.0 / fs;
+        return Math.abs(b.getEcgTsStart() - expectedNext) <= 1000.0 / fs;
+    }
+
+    private static PatientTelemetry copyOf(PatientTelemetry src) {
+        // Each coalesced bed gets its own instance so merging never mutates a queued payload
+        PatientTelemetry c = new PatientTelemetry();
+        c.append(src);
+        return c;
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("depth", queue.size());
+        m.put("capacity", queue.size() + queue.remainingCapacity());
+        m.put("overflow", overflow.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        m.put("enqueued", enqueued.get());
+        m.put("shed", shed.get());
+        m.put("rejected", rejected.get());
+        m.put("payloadsWritten", payloadsWritten.get());
+        m.put("writes", writes.get());
+        m.put("writeFailures", writeFailures.get());
+        m.put("lastWriteMs", lastWriteMs);
+        return m;
+    }
+
+    /** Stops accepting payloads and gives the writer up to timeoutMs to flush what is queued. */
+    public void close(long timeoutMs) {
+        running = false;
+        try {
+            writer.join(Math.max(1, timeoutMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+            log.warning("Write-behind queue closed with " + queue.size() + " payload(s) unwritten");
+        }
+    }
+}
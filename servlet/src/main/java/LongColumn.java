@@ -0,0 +1,132 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Growable long[] column (timestamps). {@link #MISSING} stands in for a null entry.
+ */
+@JsonSerialize(using = LongColumn.Serializer.class)
+public final class LongColumn extends AbstractList<Long> implements RandomAccess {
+    public static final long MISSING = Long.MIN_VALUE;
+    private static final long[] EMPTY = new long[0];
+
+    private long[] data = EMPTY;
+    private int size;
+
+    public void addLong(long v) {
+        if (size == data.length) ensureCapacity(size + 1);
+        data[size++] = v;
+    }
+
+    public void addAll(long[] src, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(src, off, data, size, len);
+        size += len;
+    }
+
+    public long getLong(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return data[i];
+    }
+
+    /** Value at i, or fallback when i is past the end or the entry is missing. */
+    public long getOr(int i, long fallback) {
+        if (i >= size || data[i] == MISSING) return fallback;
+        return data[i];
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void ensureCapacity(int min) {
+        if (min <= data.length) return;
+        data = Arrays.copyOf(data, Math.max(min, Math.max(8, data.length * 2)));
+    }
+
+    @Override
+    public Long get(int i) {
+        long v = getLong(i);
+        return v == MISSING ? null : v;
+    }
+
+    @Override
+    public Long set(int i, Long v) {
+        Long old = get(i);
+        data[i] = v == null ? MISSING : v;
+        return old;
+    }
+
+    @Override
+    public boolean add(Long v) {
+        addLong(v == null ? MISSING : v);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int i, Long v) {
+        if (i < 0 || i > size) throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        ensureCapacity(size + 1);
+        System.arraycopy(data, i, data, i + 1, size - i);
+        data[i] = v == null ? MISSING : v;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Long> c) {
+        if (c instanceof LongColumn) {
+            LongColumn o = (LongColumn) c;
+            addAll(o.data, 0, o.size);
+            modCount++;
+            return o.size > 0;
+        }
+        return super.addAll(c);
+    }
+
+    @Override
+    public Long remove(int i) {
+        Long old = get(i);
+        System.arraycopy(data, i + 1, data, i, size - i - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Writes the column as a JSON number array without boxing; missing entries are written as null. */
+    public static final class Serializer extends StdSerializer<LongColumn> {
+        public Serializer() {
+            super(LongColumn.class);
+        }
+
+        @Override
+        public void serialize(LongColumn c, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(c, c.size);
+            for (int i = 0; i < c.size; i++) {
+                long v = c.data[i];
+                if (v == MISSING) gen.writeNull();
+                else gen.writeNumber(v);
+            }
+            gen.writeEndArray();
+        }
+    }
+}
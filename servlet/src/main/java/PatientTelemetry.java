@@ -1,19 +1,33 @@
-import java.util.ArrayList;
-import java.util.List;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
+/**
+ * Telemetry for one bed: aligned vitals columns (one entry per ts) plus an ECG strip.
+ *
+ * Series are primitive columns with NaN (or LongColumn.MISSING for ts) as the null
+ * sentinel; they still read as List&lt;Long&gt;/List&lt;Double&gt; and serialize to the same
+ * JSON arrays as before. Not thread-safe: instances are built by one thread and
+ * handed over whole.
+ */
 public class PatientTelemetry {
-    private final List<Long> ts = new ArrayList<>();
-    private final List<Double> hr = new ArrayList<>();
-    private final List<Double> rr = new ArrayList<>();
-    private final List<Double> sys = new ArrayList<>();
-    private final List<Double> dia = new ArrayList<>();
-    private final List<Double> temp = new ArrayList<>();
-    private final List<Double> ecg = new ArrayList<>();
+    // Highest ECG sample rate accepted from uploads; gap fill and strip sizes scale with it
+    public static final int MAX_ECG_FS = 2_000;
+
+    private final LongColumn ts = new LongColumn();
+    private final DoubleColumn hr = new DoubleColumn();
+    private final DoubleColumn rr = new DoubleColumn();
+    private final DoubleColumn sys = new DoubleColumn();
+    private final DoubleColumn dia = new DoubleColumn();
+    private final DoubleColumn temp = new DoubleColumn();
+    private final DoubleColumn ecg = new DoubleColumn();
 
     private Long ecgTsStart;
     private Integer ecgFs;
 
-    public synchronized void append(PatientTelemetry incoming) {
+    // The bed's write sequence this data reflects; the next ?since= cursor. Omitted when unknown.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seq;
+
+    public void append(PatientTelemetry incoming) {
         if (incoming == null) return;
         ts.addAll(incoming.ts);
         hr.addAll(incoming.hr);
@@ -24,17 +38,79 @@ public class PatientTelemetry {
         ecg.addAll(incoming.ecg);
         if (incoming.ecgTsStart != null) ecgTsStart = incoming.ecgTsStart;
         if (incoming.ecgFs != null) ecgFs = incoming.ecgFs;
+        if (incoming.seq != null) seq = incoming.seq;
+    }
+
+    /** Number of vitals rows: the longest of the ts and vitals columns. */
+    public int vitalsRows() {
+        return Math.max(ts.size(), Math.max(hr.size(), Math.max(rr.size(),
+                Math.max(sys.size(), Math.max(dia.size(), temp.size())))));
     }
 
-    public List<Long> getTs() { return ts; }
-    public List<Double> getHr() { return hr; }
-    public List<Double> getRr() { return rr; }
-    public List<Double> getSys() { return sys; }
-    public List<Double> getDia() { return dia; }
-    public List<Double> getTemp() { return temp; }
-    public List<Double> getEcg() { return ecg; }
+    /**
+     * Copy holding only the vitals rows with fromMs &lt;= ts &lt;= toMs and the part of the
+     * ECG strip inside that window. Rows without a timestamp are left out.
+     */
+    public PatientTelemetry slice(long fromMs, long toMs) {
+        PatientTelemetry out = new PatientTelemetry();
+        out.seq = seq;
+        for (int i = 0, n = vitalsRows(); i < n; i++) {
+            long t = ts.getOr(i, LongColumn.MISSING);
+            if (t == LongColumn.MISSING || t < fromMs || t > toMs) continue;
+            out.ts.addLong(t);
+            out.hr.addDouble(hr.getOrNaN(i));
+            out.rr.addDouble(rr.getOrNaN(i));
+            out.sys.addDouble(sys.getOrNaN(i));
+            out.dia.addDouble(dia.getOrNaN(i));
+            out.temp.addDouble(temp.getOrNaN(i));
+        }
+        if (!ecg.isEmpty() && ecgTsStart != null && ecgFs != null) {
+            EcgStitcher s = new EcgStitcher(fromMs, toMs);
+            double[] a = ecg.toDoubleArray();
+            s.add(ecgTsStart, ecgFs, a, 0, a.length);
+            s.into(out);
+        }
+        return out;
+    }
+
+    /** Copy holding only the vitals row with the greatest ts (the last row if none has one), without ECG. */
+    public PatientTelemetry latest() {
+        PatientTelemetry out = new PatientTelemetry();
+        out.seq = seq;
+        int n = vitalsRows();
+        if (n == 0) return out;
+        int best = n - 1;
+        long bestTs = LongColumn.MISSING;
+        for (int i = 0; i < n; i++) {
+            long t = ts.getOr(i, LongColumn.MISSING);
+            if (t != LongColumn.MISSING && t >= bestTs) {
+                best = i;
+                bestTs = t;
+            }
+        }
+        out.ts.addLong(ts.getOr(best, LongColumn.MISSING));
+        out.hr.addDouble(hr.getOrNaN(best));
+        out.rr.addDouble(rr.getOrNaN(best));
+        out.sys.addDouble(sys.getOrNaN(best));
+        out.dia.addDouble(dia.getOrNaN(best));
+        out.temp.addDouble(temp.getOrNaN(best));
+        return out;
+    }
+
+    public LongColumn getTs() { return ts; }
+    public DoubleColumn getHr() { return hr; }
+    public DoubleColumn getRr() { return rr; }
+    public DoubleColumn getSys() { return sys; }
+    public DoubleColumn getDia() { return dia; }
+    public DoubleColumn getTemp() { return temp; }
+    public DoubleColumn getEcg() { return ecg; }
 
     public Long getEcgTsStart() { return ecgTsStart; }
     public Integer getEcgFs() { return ecgFs; }
-}
 
+    public void setEcgTsStart(Long ecgTsStart) { this.ecgTsStart = ecgTsStart; }
+    public void setEcgFs(Integer ecgFs) { this.ecgFs = ecgFs; }
+
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+}
@@ -0,0 +1,116 @@
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Streams rows into PostgreSQL with COPY ... FROM STDIN (text format).
+ *
+ * Rows are built column by column into a small buffer that is flushed to the
+ * server whenever it fills, so a payload is never materialized twice.
+ */
+public final class PgCopy implements AutoCloseable {
+    private static final int FLUSH_CHARS = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CopyIn copy;
+    private final StringBuilder buf = new StringBuilder(FLUSH_CHARS + 1024);
+    private boolean rowStarted;
+
+    private PgCopy(CopyIn copy) {
+        this.copy = copy;
+    }
+
+    /** True when the connection (or the pooled connection it wraps) is a pgjdbc connection. */
+    public static boolean supported(Connection c) {
+        try {
+            return c.isWrapperFor(PGConnection.class);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Starts e.g. {@code COPY t(a, b) FROM STDIN}. */
+    public static PgCopy begin(Connection c, String copySql) throws SQLException {
+        return new PgCopy(c.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql));
+    }
+
+    public PgCopy text(String v) {
+        sep();
+        if (v == null) {
+            buf.append("\\N");
+            return this;
+        }
+        for (int i = 0; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            switch (ch) {
+                case '\\': buf.append("\\\\"); break;
+                case '\t': buf.append("\\t"); break;
+                case '\n': buf.append("\\n"); break;
+                case '\r': buf.append("\\r"); break;
+                default: buf.append(ch);
+            }
+        }
+        return this;
+    }
+
+    public PgCopy num(long v) {
+        sep();
+        buf.append(v);
+        return this;
+    }
+
+    /** NaN/infinite values are written as NULL. */
+    public PgCopy dbl(double v) {
+        sep();
+        if (Double.isNaN(v) || Double.isInfinite(v)) buf.append("\\N");
+        else buf.append(v);
+        return this;
+    }
+
+    public PgCopy bytes(byte[] v) {
+        sep();
+        if (v == null) {
+            buf.append("\\N");
+            return this;
+        }
+        // bytea hex input; the backslash itself must be escaped in COPY text format
+        buf.append("\\\\x");
+        for (byte b : v) {
+            buf.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return this;
+    }
+
+    public void endRow() throws SQLException {
+        buf.append('\n');
+        rowStarted = false;
+        if (buf.length() >= FLUSH_CHARS) flush();
+    }
+
+    /** Sends any buffered rows and completes the COPY, returning the row count. */
+    public long finish() throws SQLException {
+        flush();
+        return copy.endCopy();
+    }
+
+    /** Aborts the COPY if finish() was never reached. */
+    @Override
+    public void close() throws SQLException {
+        if (copy.isActive()) copy.cancelCopy();
+    }
+
+    private void sep() {
+        if (rowStarted) buf.append('\t');
+        rowStarted = true;
+    }
+
+    private void flush() throws SQLException {
+        if (buf.length() == 0) return;
+        byte[] bytes = buf.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buf.setLength(0);
+    }
+}
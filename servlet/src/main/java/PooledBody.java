@@ -0,0 +1,72 @@
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A request body accumulated in BufferPool chunks; read back through inputStream(), then release(). */
+final class PooledBody {
+    private final BufferPool pool;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int tailUsed;
+    private long size;
+
+    PooledBody(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /** Free space in the tail chunk, taking a new chunk from the pool when it is full. */
+    byte[] tail() {
+        if (chunks.isEmpty() || tailUsed == pool.chunkSize()) {
+            chunks.add(pool.acquire());
+            tailUsed = 0;
+        }
+        return chunks.get(chunks.size() - 1);
+    }
+
+    int tailOffset() {
+        return tailUsed;
+    }
+
+    void advance(int n) {
+        tailUsed += n;
+        size += n;
+    }
+
+    long size() {
+        return size;
+    }
+
+    InputStream inputStream() {
+        return new InputStream() {
+            private int chunk, pos;
+
+            @Override
+            public int read() {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                while (chunk < chunks.size()) {
+                    int limit = chunk == chunks.size() - 1 ? tailUsed : pool.chunkSize();
+                    if (pos < limit) {
+                        int n = Math.min(len, limit - pos);
+                        System.arraycopy(chunks.get(chunk), pos, b, off, n);
+                        pos += n;
+                        return n;
+                    }
+                    chunk++;
+                    pos = 0;
+                }
+                return -1;
+            }
+        };
+    }
+
+    void release() {
+        for (byte[] b : chunks) pool.release(b);
+        chunks.clear();
+        tailUsed = 0;
+        size = 0;
+    }
+}
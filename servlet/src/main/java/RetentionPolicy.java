@@ -0,0 +1,43 @@
+/**
+ * Per-bed limits for the in-memory backend.
+ *
+ * Every series keeps at most maxVitalSamples vitals rows / maxEcgSamples ECG
+ * samples, and nothing older than maxAgeMs behind that series' newest
+ * timestamp. Age is measured against the data rather than the wall clock,
+ * because publishers stamp samples with simulation time.
+ */
+public final class RetentionPolicy {
+    public final int maxVitalSamples;
+    public final int maxEcgSamples;
+    public final long maxAgeMs;
+
+    public RetentionPolicy(int maxVitalSamples, int maxEcgSamples, long maxAgeMs) {
+        this.maxVitalSamples = Math.max(1, maxVitalSamples);
+        this.maxEcgSamples = Math.max(1, maxEcgSamples);
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+    }
+
+    /** 1 h of 1 Hz vitals, 10 min of 125 Hz ECG, 24 h max age. */
+    public static RetentionPolicy defaults() {
+        return new RetentionPolicy(3_600, 125 * 600, 24 * 3_600_000L);
+    }
+
+    /** TELEMETRY_MEM_MAX_VITALS, TELEMETRY_MEM_MAX_ECG, TELEMETRY_MEM_MAX_AGE_MS (0 = no age limit). */
+    public static RetentionPolicy fromEnv() {
+        RetentionPolicy d = defaults();
+        return new RetentionPolicy(
+                (int) DbConfig.getenvLong("TELEMETRY_MEM_MAX_VITALS", d.maxVitalSamples),
+                (int) DbConfig.getenvLong("TELEMETRY_MEM_MAX_ECG", d.maxEcgSamples),
+                DbConfig.getenvLong("TELEMETRY_MEM_MAX_AGE_MS", d.maxAgeMs));
+    }
+
+    public boolean hasMaxAge() {
+        return maxAgeMs > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "vitals<=" + maxVitalSamples + ", ecg<=" + maxEcgSamples
+                + (hasMaxAge() ? ", age<=" + maxAgeMs + "ms" : "");
+    }
+}
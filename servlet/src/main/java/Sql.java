@@ -6,24 +6,35 @@ public final class Sql {
     private Sql() {}
 
     public static void initSchema(Connection c) throws SQLException {
+        initSchema(c, false);
+    }
+
+    /**
+     * partitioned: vital_snapshots / ecg_segments are created range-partitioned on their
+     * timestamp (see DbPartitions). Tables that already exist keep their layout.
+     */
+    public static void initSchema(Connection c, boolean partitioned) throws SQLException {
         try (Statement s = c.createStatement()) {
             s.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS patients (" +
-                            " bed_id TEXT PRIMARY KEY" +
+                            " bed_id TEXT PRIMARY KEY," +
+                            " seq BIGINT NOT NULL DEFAULT 0" +
                             ")"
             );
 
             s.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS vital_snapshots (" +
-                            " id BIGSERIAL PRIMARY KEY," +
+                            // A partitioned table's key must include the partition column
+                            (partitioned ? " id BIGSERIAL," : " id BIGSERIAL PRIMARY KEY,") +
                             " bed_id TEXT NOT NULL REFERENCES patients(bed_id) ON DELETE CASCADE," +
+                            " seq BIGINT," +
                             " ts_ms BIGINT NOT NULL," +
                             " hr DOUBLE PRECISION," +
                             " rr DOUBLE PRECISION," +
                             " sys DOUBLE PRECISION," +
                             " dia DOUBLE PRECISION," +
                             " temp DOUBLE PRECISION" +
-                            ")"
+                            (partitioned ? ", PRIMARY KEY (id, ts_ms)) PARTITION BY RANGE (ts_ms)" : ")")
             );
 
             s.executeUpdate(
@@ -33,18 +44,86 @@ public final class Sql {
 
             s.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS ecg_segments (" +
-                            " id BIGSERIAL PRIMARY KEY," +
+                            (partitioned ? " id BIGSERIAL," : " id BIGSERIAL PRIMARY KEY,") +
                             " bed_id TEXT NOT NULL REFERENCES patients(bed_id) ON DELETE CASCADE," +
+                            " seq BIGINT," +
                             " ts_start_ms BIGINT NOT NULL," +
                             " fs_hz INT NOT NULL," +
-                            " samples TEXT NOT NULL" +
-                            ")"
+                            " samples TEXT," +
+                            " samples_bin BYTEA" +
+                            (partitioned ? ", PRIMARY KEY (id, ts_start_ms)) PARTITION BY RANGE (ts_start_ms)" : ")")
             );
 
+            // Migrate pre-existing tables: binary samples column, legacy TEXT becomes optional
+            s.executeUpdate("ALTER TABLE ecg_segments ADD COLUMN IF NOT EXISTS samples_bin BYTEA");
+            s.executeUpdate("ALTER TABLE ecg_segments ALTER COLUMN samples DROP NOT NULL");
+
             s.executeUpdate(
                     "CREATE INDEX IF NOT EXISTS idx_ecg_bed_ts " +
                             "ON ecg_segments(bed_id, ts_start_ms DESC)"
             );
+
+            // Per-bed write sequence for incremental reads; rows stored before it existed keep NULL
+            s.executeUpdate("ALTER TABLE patients ADD COLUMN IF NOT EXISTS seq BIGINT NOT NULL DEFAULT 0");
+            s.executeUpdate("ALTER TABLE vital_snapshots ADD COLUMN IF NOT EXISTS seq BIGINT");
+            s.executeUpdate("ALTER TABLE ecg_segments ADD COLUMN IF NOT EXISTS seq BIGINT");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_vital_bed_seq ON vital_snapshots(bed_id, seq)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_ecg_bed_seq ON ecg_segments(bed_id, seq)");
+            // Blocks merged by DbEcgCompactor: seq is their newest part's, seq_min their oldest's, and each part's
+            // seq and first sample let since reads return only the parts past the cursor
+            s.executeUpdate("ALTER TABLE ecg_segments ADD COLUMN IF NOT EXISTS seq_min BIGINT");
+            s.executeUpdate("ALTER TABLE ecg_segments ADD COLUMN IF NOT EXISTS part_seqs BIGINT[]");
+            s.executeUpdate("ALTER TABLE ecg_segments ADD COLUMN IF NOT EXISTS part_offsets INT[]");
+
+            // Newest vitals row per bed, upserted with every write so dashboards skip the history tables
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS patient_latest (" +
+                            " bed_id TEXT PRIMARY KEY REFERENCES patients(bed_id) ON DELETE CASCADE," +
+                            " seq BIGINT," +
+                            " ts_ms BIGINT NOT NULL," +
+                            " hr DOUBLE PRECISION," +
+                            " rr DOUBLE PRECISION," +
+                            " sys DOUBLE PRECISION," +
+                            " dia DOUBLE PRECISION," +
+                            " temp DOUBLE PRECISION" +
+                            ")"
+            );
+
+            // Seed it once from existing history (a no-op after the first start)
+            s.executeUpdate(
+                    "INSERT INTO patient_latest(bed_id, seq, ts_ms, hr, rr, sys, dia, temp) " +
+                            "SELECT DISTINCT ON (bed_id) bed_id, seq, ts_ms, hr, rr, sys, dia, temp " +
+                            "FROM vital_snapshots WHERE NOT EXISTS (SELECT 1 FROM patient_latest) " +
+                            "ORDER BY bed_id, ts_ms DESC, id DESC"
+            );
+
+            // Per bed/vital summaries at 1 min and 1 h (VitalsRollup), maintained on ingest
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS vital_rollups (" +
+                            " bed_id TEXT NOT NULL REFERENCES patients(bed_id) ON DELETE CASCADE," +
+                            " res_ms BIGINT NOT NULL," +
+                            " bucket_ms BIGINT NOT NULL," +
+                            " vital TEXT NOT NULL," +
+                            " n BIGINT NOT NULL," +
+                            " min DOUBLE PRECISION," +
+                            " max DOUBLE PRECISION," +
+                            " sum DOUBLE PRECISION," +
+                            " sumsq DOUBLE PRECISION," +
+                            " PRIMARY KEY (bed_id, res_ms, bucket_ms, vital)" +
+                            ")"
+            );
+
+            // Seed once from existing history; buckets are floor(ts / res) * res like VitalsRollup
+            s.executeUpdate(
+                    "INSERT INTO vital_rollups(bed_id, res_ms, bucket_ms, vital, n, min, max, sum, sumsq) " +
+                            "SELECT v.bed_id, r.res, v.ts_ms - ((v.ts_ms % r.res) + r.res) % r.res, x.vital, " +
+                            " count(*), min(x.val), max(x.val), sum(x.val), sum(x.val * x.val) " +
+                            "FROM vital_snapshots v " +
+                            "CROSS JOIN (VALUES (" + VitalsRollup.MINUTE_MS + "::bigint), (" + VitalsRollup.HOUR_MS + "::bigint)) r(res) " +
+                            "CROSS JOIN LATERAL (VALUES ('hr', v.hr), ('rr', v.rr), ('sys', v.sys), ('dia', v.dia), ('temp', v.temp)) x(vital, val) " +
+                            "WHERE x.val IS NOT NULL AND NOT EXISTS (SELECT 1 FROM vital_rollups) " +
+                            "GROUP BY 1, 2, 3, 4"
+            );
         }
     }
 }
@@ -0,0 +1,436 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fan-out hub behind GET /telemetry/stream (Server-Sent Events).
+ *
+ * Each accepted write is serialized once per bed into an SSE frame, and that same
+ * byte[] is queued for every subscriber watching the bed, so N viewers cost one
+ * serialization. Subscribers drain their bounded queue through a WriteListener
+ * on the async response; a slow client never blocks ingest, it loses its oldest
+ * queued frames instead and is sent a "dropped" event naming the since= to
+ * re-read each affected bed from.
+ *
+ * Events carry the sequence the bed reached with the write. On a one-bed stream
+ * that is the event id; on an all-beds stream the id is an all-beds cursor
+ * (TelemetryCursor), sent with the hello and with heartbeats once it moved. A
+ * client reconnecting with Last-Event-ID is first sent what it missed, read from
+ * the store given to setStore().
+ */
+public final class TelemetryBroadcaster implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(TelemetryBroadcaster.class.getName());
+
+    /** ServletContext attribute the stream servlet finds the broadcaster under. */
+    public static final String ATTRIBUTE = TelemetryBroadcaster.class.getName();
+
+    private static final Frame HELLO = new Frame("retry: 3000\n\n".getBytes(StandardCharsets.UTF_8));
+    private static final Frame PING = new Frame(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+    // Keeps proxies from idling the connection out and surfaces dead clients as write errors
+    private static final long HEARTBEAT_MS = 15_000L;
+
+    private final ObjectMapper mapper;
+    private final int queueCapacity;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor executor;
+    // Where reconnecting subscribers are backfilled from; without one Last-Event-ID is ignored
+    private volatile AbstractTelemetryStore store;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+
+    public TelemetryBroadcaster(ObjectMapper mapper, int queueCapacity) {
+        this.mapper = mapper;
+        this.queueCapacity = Math.max(1, queueCapacity);
+
+        executor = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread t = new Thread(r, "telemetry-sse");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** TELEMETRY_SSE_QUEUE: frames buffered per subscriber before the oldest are dropped (default 256). */
+    public static TelemetryBroadcaster fromEnv(ObjectMapper mapper) {
+        return new TelemetryBroadcaster(mapper, (int) DbConfig.getenvLong("TELEMETRY_SSE_QUEUE", 256));
+    }
+
+    /** The store new subscribers take their starting ids from and reconnecting ones are backfilled from. */
+    public void setStore(AbstractTelemetryStore store) {
+        this.store = store;
+    }
+
+    /** publish() for writes whose sequences are unknown; their events carry no seq or id. */
+    public void publish(Map<String, PatientTelemetry> batch) {
+        publish(batch, Collections.emptyMap());
+    }
+
+    /**
+     * Queues one "telemetry" event per bed for the subscribers watching it, with the bed's
+     * sequence from seqs (see AbstractTelemetryStore.storeAll()). Never throws into ingest.
+     */
+    public void publish(Map<String, PatientTelemetry> batch, Map<String, Long> seqs) {
+        if (batch == null || subscribers.isEmpty()) return;
+        for (Map.Entry<String, PatientTelemetry> e : batch.entrySet()) {
+            String bed = e.getKey();
+            if (bed == null || e.getValue() == null || !watched(bed)) continue;
+
+            Long seq = seqs == null ? null : seqs.get(bed);
+            Frame frame;
+            try {
+                frame = frame(bed, seq == null ? 0 : seq, e.getValue());
+            } catch (IOException | RuntimeException ex) {
+                log.log(Level.WARNING, "Could not serialize stream event for " + bed, ex);
+                continue;
+            }
+            published.incrementAndGet();
+            for (Subscriber s : subscribers) {
+                if (s.wants(bed)) s.offer(frame);
+            }
+        }
+    }
+
+    private boolean watched(String bed) {
+        for (Subscriber s : subscribers) {
+            if (s.wants(bed)) return true;
+        }
+        return false;
+    }
+
+    // seq 0: unknown, the event goes out without seq and id
+    private Frame frame(String bed, long seq, PatientTelemetry t) throws IOException {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("bed", bed);
+        if (seq > 0) event.put("seq", seq);
+        event.put("telemetry", t);
+        byte[] json = mapper.writeValueAsBytes(event);
+
+        byte[] plain = sse("event: telemetry\ndata: ", json);
+        return new Frame(bed, seq, plain, seq > 0 ? sse("id: " + seq + "\nevent: telemetry\ndata: ", json) : plain);
+    }
+
+    // head + data + the blank line ending the event
+    private static byte[] sse(String head, byte[] data) {
+        byte[] h = head.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[h.length + data.length + 2];
+        System.arraycopy(h, 0, out, 0, h.length);
+        System.arraycopy(data, 0, out, h.length, data.length);
+        out[out.length - 2] = '\n';
+        out[out.length - 1] = '\n';
+        return out;
+    }
+
+    /** subscribe() without a Last-Event-ID. */
+    public void subscribe(AsyncContext ctx, String bed) throws IOException {
+        subscribe(ctx, bed, null);
+    }
+
+    /**
+     * Registers an async response as a subscriber for one bed, or every bed when bed is null.
+     * With a lastEventId from an earlier stream of the same kind, the writes after it are sent
+     * first; an id that does not parse is ignored.
+     */
+    public void subscribe(AsyncContext ctx, String bed, String lastEventId) throws IOException {
+        ServletOutputStream out = ((HttpServletResponse) ctx.getResponse()).getOutputStream();
+        Subscriber s = new Subscriber(ctx, out, bed);
+        ctx.addListener(s);
+        // isReady() may only be called once the listener is set, so nothing is written before this
+        out.setWriteListener(s);
+        // Registered before the store is read, so no write falls between the backfill and the live events
+        subscribers.add(s);
+        connects.incrementAndGet();
+        try {
+            s.start(lastEventId);
+        } catch (IOException | RuntimeException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber s : subscribers) s.offer(PING);
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("subscribers", subscribers.size());
+        m.put("queueCapacity", queueCapacity);
+        m.put("connects", connects.get());
+        m.put("resumes", resumes.get());
+        m.put("eventsPublished", published.get());
+        m.put("framesDropped", dropped.get());
+        return m;
+    }
+
+    /** Ends every open stream and stops the writer threads. */
+    @Override
+    public void close() {
+        for (Subscriber s : subscribers) s.close();
+        executor.shutdownNow();
+    }
+
+    // One queued SSE message; bed and seq are set for telemetry events, seq 0 when unknown
+    private static final class Frame {
+        final String bed;
+        final long seq;
+        final byte[] bytes;
+        // bytes with an "id: seq" line, for one-bed streams
+        final byte[] withId;
+
+        Frame(byte[] bytes) {
+            this(null, 0, bytes, bytes);
+        }
+
+        Frame(String bed, long seq, byte[] bytes, byte[] withId) {
+            this.bed = bed;
+            this.seq = seq;
+            this.bytes = bytes;
+            this.withId = withId;
+        }
+    }
+
+    private final class Subscriber implements WriteListener, AsyncListener {
+        private final AsyncContext ctx;
+        private final ServletOutputStream out;
+        private final String bed;
+        private final ArrayBlockingQueue<Frame> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean started;
+
+        // Guarded by this. Written before the queue: the hello and the writes a reconnect missed
+        private final ArrayDeque<Frame> backlog = new ArrayDeque<>();
+        // Sequences the backfill read up to; queued events at or below them were in it
+        private Map<String, Long> backfilled = Collections.emptyMap();
+        // Newest sequence written per bed, and whether the id sent last is behind it
+        private final Map<String, Long> written = new TreeMap<>();
+        private boolean idPending;
+
+        // Guarded by itself. Beds whose events were dropped -> since= to re-read them from
+        private final Map<String, Long> lost = new TreeMap<>();
+        private long lostEvents;
+
+        Subscriber(AsyncContext ctx, ServletOutputStream out, String bed) {
+            this.ctx = ctx;
+            this.out = out;
+            this.bed = bed;
+        }
+
+        boolean wants(String b) {
+            return bed == null || bed.equals(b);
+        }
+
+        // Queues the hello and any backfill, then lets drain() run
+        synchronized void start(String lastEventId) throws IOException {
+            backlog.add(HELLO);
+            AbstractTelemetryStore src = store;
+            if (src != null) {
+                Map<String, Long> after = resumePoint(lastEventId);
+                Map<String, Long> seqs = src.sequences();
+                for (Map.Entry<String, Long> e : (after != null ? after : seqs).entrySet()) {
+                    if (wants(e.getKey())) written.put(e.getKey(), e.getValue());
+                }
+                if (after != null) {
+                    resumes.incrementAndGet();
+                    for (Map.Entry<String, Long> e : seqs.entrySet()) {
+                        String b = e.getKey();
+                        long from = after.getOrDefault(b, 0L);
+                        if (!wants(b) || e.getValue() <= from) continue;
+                        // A long backlog comes in pages of whole writes, each its own frame, up to queueCapacity
+                        // frames past the hello; the rest is left to the "dropped" notice, as if the queue dropped it
+                        while (from < e.getValue() && backlog.size() <= queueCapacity) {
+                            PatientTelemetry t = src.getSince(b, from, e.getValue());
+                            if (t == null) break;
+                            long seq = t.getSeq() != null ? t.getSeq() : e.getValue();
+                            backlog.add(frame(b, seq, t));
+                            if (seq <= from) break;
+                            from = seq;
+                        }
+                        if (from < e.getValue() && backlog.size() > queueCapacity) {
+                            synchronized (lost) {
+                                lostEvents++;
+                                lost.merge(b, from, Math::min);
+                            }
+                        }
+                    }
+                    backfilled = seqs;
+                }
+                idPending = bed == null || written.containsKey(bed);
+            }
+            started = true;
+            schedule();
+        }
+
+        // The sequences a Last-Event-ID stands for: the bed's for a one-bed stream, a cursor otherwise
+        private Map<String, Long> resumePoint(String lastEventId) {
+            if (lastEventId == null || lastEventId.isBlank()) return null;
+            try {
+                if (bed != null) return Collections.singletonMap(bed, Long.parseLong(lastEventId.trim()));
+                return TelemetryCursor.decode(mapper, lastEventId.trim());
+            } catch (IOException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        void offer(Frame frame) {
+            if (closed) return;
+            while (!queue.offer(frame)) {
+                Frame old = queue.poll();
+                if (old != null) {
+                    dropped.incrementAndGet();
+                    lose(old);
+                }
+            }
+            schedule();
+        }
+
+        private void lose(Frame frame) {
+            if (frame.bed == null) return;
+            synchronized (lost) {
+                lostEvents++;
+                if (frame.seq > 0) lost.merge(frame.bed, frame.seq - 1, Math::min);
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(() -> {
+                        scheduled.set(false);
+                        drain();
+                    });
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        // Writes queued frames while the stream accepts them; when isReady() turns false the
+        // container calls onWritePossible() later, so no thread waits on a slow client
+        private synchronized void drain() {
+            if (closed || !started) return;
+            try {
+                while (out.isReady()) {
+                    byte[] next = next();
+                    if (next == null) {
+                        out.flush();
+                        return;
+                    }
+                    out.write(next);
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        // The backlog first, then a "dropped" notice if events were lost, then the queue
+        private byte[] next() throws IOException {
+            Frame f = backlog.poll();
+            if (f == null) {
+                byte[] notice = droppedNotice();
+                if (notice != null) return notice;
+                do {
+                    f = queue.poll();
+                    if (f == null) return null;
+                } while (f.seq > 0 && f.seq <= backfilled.getOrDefault(f.bed, 0L));
+            }
+            if (f.bed == null) return withPendingId(f.bytes);
+            if (f.seq > written.getOrDefault(f.bed, 0L)) {
+                written.put(f.bed, f.seq);
+                // One-bed events carry their own id
+                if (bed == null) idPending = true;
+            }
+            return bed != null ? f.withId : f.bytes;
+        }
+
+        private byte[] droppedNotice() throws IOException {
+            Map<String, Object> event = new LinkedHashMap<>();
+            synchronized (lost) {
+                if (lostEvents == 0) return null;
+                event.put("dropped", lostEvents);
+                event.put("since", new TreeMap<>(lost));
+                lostEvents = 0;
+                lost.clear();
+            }
+            return sse("event: dropped\ndata: ", mapper.writeValueAsBytes(event));
+        }
+
+        // Puts the id in front of a hello or heartbeat when it moved since it was last sent
+        private byte[] withPendingId(byte[] frame) throws IOException {
+            if (!idPending) return frame;
+            idPending = false;
+            String id = bed == null ? TelemetryCursor.encode(mapper, written) : Long.toString(written.get(bed));
+            byte[] head = ("id: " + id + "\n").getBytes(StandardCharsets.UTF_8);
+            byte[] out = new byte[head.length + frame.length];
+            System.arraycopy(head, 0, out, 0, head.length);
+            System.arraycopy(frame, 0, out, head.length, frame.length);
+            return out;
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            try {
+                ctx.complete();
+            } catch (IllegalStateException ignored) {}
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {}
+    }
+}
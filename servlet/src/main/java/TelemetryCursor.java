@@ -0,0 +1,57 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * All-beds since= cursors, as handed out in X-Telemetry-Cursor and as the event id
+ * of an all-beds stream, so clients can pass them back verbatim. A bed missing from
+ * a cursor reads from its first write.
+ *
+ * The token is base64url JSON [base, {"bed": seq - base, ...}] with base the lowest
+ * seq: a ward's seqs sit close together however large they are, so each bed costs
+ * its id and a few digits, and a 300-bed cursor fits an 8 KB header.
+ * Tokens of the older {"bed": seq, ...} form are still read.
+ */
+final class TelemetryCursor {
+    private TelemetryCursor() {}
+
+    static String encode(ObjectMapper mapper, Map<String, Long> cursor) throws IOException {
+        long base = cursor.isEmpty() ? 0L : Collections.min(cursor.values());
+        Map<String, Long> deltas = new TreeMap<>();
+        cursor.forEach((bed, seq) -> deltas.put(bed, seq - base));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mapper.writeValueAsBytes(List.of(base, deltas)));
+    }
+
+    /** Throws IOException or IllegalArgumentException for a malformed token. */
+    static Map<String, Long> decode(ObjectMapper mapper, String token) throws IOException {
+        if (token.isEmpty()) return new TreeMap<>();
+        JsonNode root = mapper.readTree(Base64.getUrlDecoder().decode(token));
+        long base = 0;
+        JsonNode seqs = root;
+        if (root != null && root.isArray()) {
+            if (root.size() != 2 || !root.get(0).canConvertToLong()) throw new IllegalArgumentException("bad cursor");
+            base = root.get(0).asLong();
+            seqs = root.get(1);
+        }
+        if (seqs == null || !seqs.isObject()) throw new IllegalArgumentException("bad cursor");
+        Map<String, Long> m = new TreeMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = seqs.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            if (e.getValue().isNull()) continue;
+            long delta = e.getValue().asLong();
+            if (!e.getValue().canConvertToLong() || (delta > 0 && base > Long.MAX_VALUE - delta)
+                    || (delta < 0 && base < Long.MIN_VALUE - delta)) {
+                throw new IllegalArgumentException("bad cursor");
+            }
+            m.put(e.getKey(), base + delta);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,161 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token-level decoder for POST /telemetry bodies.
+ *
+ * Reads {"patients": {"bed": {"ts": [...], "hr": [...], ..., "ecg": [...]}}}
+ * straight off the request stream into PatientTelemetry's primitive columns,
+ * without building the body String, a generic Map tree, a convertValue() copy
+ * per bed, or a boxed value per sample.
+ */
+public final class TelemetryPayloadParser {
+
+    /** Payload problems, carrying the error text the servlet answers 400 with. */
+    public static final class BadPayloadException extends IOException {
+        public BadPayloadException(String message) {
+            super(message);
+        }
+    }
+
+    private final JsonFactory factory;
+
+    public TelemetryPayloadParser(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    public Map<String, PatientTelemetry> parse(InputStream in) throws IOException {
+        try (JsonParser p = factory.createParser(in)) {
+            // ECG arrays are mostly doubles; the fast parser avoids JDK FloatingDecimal garbage
+            p.enable(JsonParser.Feature.USE_FAST_DOUBLE_PARSER);
+            return parse(p);
+        } catch (InputCoercionException e) {
+            throw new BadPayloadException("bad patient payload");
+        } catch (JsonParseException e) {
+            throw new BadPayloadException("invalid json");
+        }
+    }
+
+    private Map<String, PatientTelemetry> parse(JsonParser p) throws IOException {
+        JsonToken root = p.nextToken();
+        if (root == null) throw new BadPayloadException("empty body");
+        if (root != JsonToken.START_OBJECT) throw new BadPayloadException("invalid json");
+
+        Map<String, PatientTelemetry> patients = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            if ("patients".equals(field) && t == JsonToken.START_OBJECT) {
+                patients = readPatients(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (patients == null) throw new BadPayloadException("missing patients");
+        return patients;
+    }
+
+    private Map<String, PatientTelemetry> readPatients(JsonParser p) throws IOException {
+        Map<String, PatientTelemetry> out = new LinkedHashMap<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String bedId = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            if (t == JsonToken.VALUE_NULL) continue;
+            if (t != JsonToken.START_OBJECT) throw new BadPayloadException("bad patient payload");
+            out.put(bedId, readPatient(p));
+        }
+        return out;
+    }
+
+    private PatientTelemetry readPatient(JsonParser p) throws IOException {
+        PatientTelemetry pt = new PatientTelemetry();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "ts": readLongs(p, pt.getTs()); break;
+                case "hr": readDoubles(p, pt.getHr()); break;
+                case "rr": readDoubles(p, pt.getRr()); break;
+                case "sys": readDoubles(p, pt.getSys()); break;
+                case "dia": readDoubles(p, pt.getDia()); break;
+                case "temp": readDoubles(p, pt.getTemp()); break;
+                case "ecg": readDoubles(p, pt.getEcg()); break;
+                case "ecgTsStart":
+                    pt.setEcgTsStart(p.currentToken() == JsonToken.VALUE_NULL ? null : longValue(p));
+                    break;
+                case "ecgFs":
+                    pt.setEcgFs(p.currentToken() == JsonToken.VALUE_NULL ? null : ecgFs(longValue(p)));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return pt;
+    }
+
+    /** Range-checks an uploaded ECG sample rate before it is narrowed to int. */
+    static int ecgFs(long fs) throws BadPayloadException {
+        if (fs < 1 || fs > PatientTelemetry.MAX_ECG_FS) throw new BadPayloadException("bad ecgFs " + fs);
+        return (int) fs;
+    }
+
+    private static void readDoubles(JsonParser p, DoubleColumn out) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) return;
+        if (p.currentToken() != JsonToken.START_ARRAY) throw new BadPayloadException("bad patient payload");
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            out.addDouble(t == JsonToken.VALUE_NULL ? Double.NaN : doubleValue(p));
+        }
+    }
+
+    private static void readLongs(JsonParser p, LongColumn out) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) return;
+        if (p.currentToken() != JsonToken.START_ARRAY) throw new BadPayloadException("bad patient payload");
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            out.addLong(t == JsonToken.VALUE_NULL ? LongColumn.MISSING : longValue(p));
+        }
+    }
+
+    private static double doubleValue(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+            case VALUE_STRING:
+                try {
+                    return Double.parseDouble(p.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw new BadPayloadException("bad patient payload");
+                }
+            default:
+                throw new BadPayloadException("bad patient payload");
+        }
+    }
+
+    private static long longValue(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+                return p.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return (long) p.getDoubleValue();
+            case VALUE_STRING:
+                try {
+                    return Long.parseLong(p.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw new BadPayloadException("bad patient payload");
+                }
+            default:
+                throw new BadPayloadException("bad patient payload");
+        }
+    }
+}
@@ -1,58 +1,155 @@
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletInputStream;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
 
-@WebServlet(urlPatterns = "/telemetry", loadOnStartup = 1)
+@WebServlet(urlPatterns = "/telemetry", loadOnStartup = 1, asyncSupported = true)
 public class TelemetryServlet extends HttpServlet {
+    // Range queries (from/to/maxPoints) are downsampled to this many points unless maxPoints says otherwise
+    private static final int DEFAULT_MAX_POINTS = 1_000;
+    private static final int MAX_POINTS_LIMIT = 10_000;
+    // Widest from..to of a range query without resolution=; to defaults to now for the check
+    private static final long MAX_RANGE_WINDOW_MS = 86_400_000L;
+    // view=ecg strips: widest from..to window and highest fs= rate served
+    private static final long MAX_ECG_WINDOW_MS = EcgStitcher.MAX_SPAN_MS;
+    private static final int MAX_ECG_FS = 2_000;
+    // Next ?since= value for the response; a bed's seq for ?bed=, an opaque token for all beds
+    private static final String CURSOR_HEADER = "X-Telemetry-Cursor";
+    // All-beds pages: most beds per response, and the after= value of the next page when there is one
+    private static final int MAX_PAGE_BEDS = 1_000;
+    private static final String NEXT_PAGE_HEADER = "X-Telemetry-Next-After";
+
     private final ObjectMapper mapper = new ObjectMapper();
+    private final TelemetryPayloadParser parser = new TelemetryPayloadParser(mapper.getFactory());
     private AbstractTelemetryStore store;
+    private IngestQueue ingest;
+    private TelemetryBroadcaster broadcaster;
+
+    // Async POST: bodies are buffered without blocking, then parsed and stored on postExecutor
+    private BufferPool postBuffers;
+    private ThreadPoolExecutor postExecutor;
+    private long maxBodyBytes;
+    private long postTimeoutMs;
+
+    // GET bodies are gzipped for clients that accept it once they pass this many bytes
+    private int gzipMinBytes = 1024;
 
     @Override
     public void init() {
 
-        store = TelemetryStores.create();
+        broadcaster = TelemetryBroadcaster.fromEnv(mapper);
+        store = new BroadcastingTelemetryStore(TelemetryStores.create(), broadcaster);
+        broadcaster.setStore(store);
+        getServletContext().setAttribute(TelemetryBroadcaster.ATTRIBUTE, broadcaster);
+        ingest = IngestQueue.fromEnv(store);
+        initAsyncPost();
+        gzipMinBytes = (int) DbConfig.getenvLong("TELEMETRY_GZIP_MIN_BYTES", gzipMinBytes);
+    }
+
+    /**
+     * TELEMETRY_POST_THREADS (default: CPU count) and TELEMETRY_POST_QUEUE (default 256) size the
+     * processing executor; TELEMETRY_MAX_BODY_BYTES (default 32 MiB) and TELEMETRY_POST_TIMEOUT_MS
+     * (default 30 s) bound each upload; the timeout is lifted once the body is in and the store begins.
+     */
+    private void initAsyncPost() {
+        int threads = (int) DbConfig.getenvLong("TELEMETRY_POST_THREADS", Runtime.getRuntime().availableProcessors());
+        int queue = (int) DbConfig.getenvLong("TELEMETRY_POST_QUEUE", 256);
+        maxBodyBytes = DbConfig.getenvLong("TELEMETRY_MAX_BODY_BYTES", 32L << 20);
+        postTimeoutMs = DbConfig.getenvLong("TELEMETRY_POST_TIMEOUT_MS", 30_000L);
+        postBuffers = new BufferPool(16 * 1024, 256);
+
+        AtomicInteger n = new AtomicInteger();
+        postExecutor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queue)), r -> {
+                    Thread t = new Thread(r, "telemetry-post-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String body = req.getReader().lines().collect(Collectors.joining());
-        if (body == null || body.isBlank()) {
-            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"empty body\"}");
+        String encoding = req.getHeader("Content-Encoding");
+        boolean gzip = encoding != null && (encoding.trim().equalsIgnoreCase("gzip") || encoding.trim().equalsIgnoreCase("x-gzip"));
+        if (encoding != null && !gzip && !encoding.trim().equalsIgnoreCase("identity")) {
+            resp.setHeader("Accept-Encoding", "gzip");
+            json(resp, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "{\"error\":\"unsupported content encoding\"}");
             return;
         }
 
-        Map<String, Object> payload;
-        try {
-            payload = mapper.readValue(body, Map.class);
-        } catch (Exception e) {
-            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid json\"}");
+        boolean binary = TelemetryWireFormat.matches(req.getContentType());
+
+        if (postExecutor == null || !req.isAsyncSupported()) {
+            processPost(req.getInputStream(), gzip, binary, resp);
             return;
         }
 
-        Object p = payload.get("patients");
-        if (!(p instanceof Map)) {
-            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"missing patients\"}");
+        if (req.getContentLengthLong() > maxBodyBytes) {
+            json(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "{\"error\":\"body too large\"}");
             return;
         }
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(postTimeoutMs);
+        ServletInputStream in = req.getInputStream();
+        AsyncPostHandler handler = new AsyncPostHandler(ctx, in, postBuffers, maxBodyBytes, postExecutor,
+                (body, r) -> processPost(body, gzip, binary, r));
+        ctx.addListener(handler);
+        in.setReadListener(handler);
+    }
 
-        Map<String, Object> patients = (Map<String, Object>) p;
-
+    // Parses one complete body and stores or enqueues it; runs on the container thread or postExecutor.
+    // gzip bodies are inflated as the parser reads them, capped at maxBodyBytes once decompressed;
+    // binary bodies are application/x-rpm-telemetry (TelemetryWireFormat), anything else is JSON.
+    private void processPost(InputStream body, boolean gzip, boolean binary, HttpServletResponse resp) throws IOException {
+        Map<String, PatientTelemetry> batch;
         try {
-            for (Map.Entry<String, Object> entry : patients.entrySet()) {
-                String bedId = entry.getKey();
-                Object vitalsObj = entry.getValue();
-                PatientTelemetry pt = mapper.convertValue(vitalsObj, PatientTelemetry.class);
-                store.store(bedId, pt);
+            InputStream in = body;
+            if (gzip) {
+                in = new GZIPInputStream(in, 8 * 1024);
+                if (maxBodyBytes > 0) in = new LimitedInputStream(in, maxBodyBytes);
+            }
+            batch = binary ? TelemetryWireFormat.decode(in) : parser.parse(in);
+        } catch (TelemetryPayloadParser.BadPayloadException e) {
+            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"" + e.getMessage() + "\"}");
+            return;
+        } catch (BodyTooLargeException e) {
+            json(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "{\"error\":\"body too large\"}");
+            return;
+        } catch (ZipException | EOFException e) {
+            if (!gzip) throw e;
+            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid gzip\"}");
+            return;
+        }
+
+        if (ingest != null) {
+            if (!ingest.offer(batch)) {
+                resp.setHeader("Retry-After", "1");
+                json(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "{\"error\":\"ingest queue full\"}");
+                return;
             }
-        } catch (Exception e) {
-            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"bad patient payload\"}");
+            json(resp, HttpServletResponse.SC_ACCEPTED, "{\"status\":\"accepted\"}");
             return;
         }
 
+        store.storeAll(batch);
+
         json(resp, HttpServletResponse.SC_OK, "{\"status\":\"stored\"}");
     }
 
@@ -61,20 +158,317 @@ public class TelemetryServlet extends HttpServlet {
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
 
+        if ("stats".equals(req.getParameter("view"))) {
+            Map<String, Object> stats = new LinkedHashMap<>(store.stats());
+            if (ingest != null) stats.put("ingestQueue", ingest.stats());
+            if (postExecutor != null) {
+                Map<String, Object> post = new LinkedHashMap<>();
+                post.put("active", postExecutor.getActiveCount());
+                post.put("queued", postExecutor.getQueue().size());
+                post.put("completed", postExecutor.getCompletedTaskCount());
+                post.put("buffers", postBuffers.stats());
+                stats.put("asyncPost", post);
+            }
+            writeJson(req, resp, stats);
+            return;
+        }
+
+        // from/to are epoch ms, both inclusive; to is optional except with resolution=. Any of these switches
+        // to a range query; resolution=<ms> asks for per-bucket vitals stats (VitalsRollup) instead of rows
+        String from = req.getParameter("from");
+        String to = req.getParameter("to");
+        String maxPointsParam = req.getParameter("maxPoints");
+        String resolutionParam = req.getParameter("resolution");
+        boolean ranged = from != null || to != null || maxPointsParam != null || resolutionParam != null;
+        long fromMs = Long.MIN_VALUE, toMs = Long.MAX_VALUE;
+        int maxPoints = DEFAULT_MAX_POINTS;
+        long resolutionMs = 0;
+        if (ranged) {
+            try {
+                if (from != null) fromMs = Long.parseLong(from.trim());
+                if (to != null) toMs = Long.parseLong(to.trim());
+                if (maxPointsParam != null) maxPoints = Integer.parseInt(maxPointsParam.trim());
+                if (resolutionParam != null) resolutionMs = Long.parseLong(resolutionParam.trim());
+            } catch (NumberFormatException e) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid range\"}");
+                return;
+            }
+            if (fromMs > toMs || maxPoints < 3 || (resolutionParam != null && resolutionMs <= 0)) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid range\"}");
+                return;
+            }
+            maxPoints = Math.min(maxPoints, MAX_POINTS_LIMIT);
+            // Rows and ECG are read in full before downsampling, so their window is bounded. Rollups from
+            // stored levels may span longer but are capped in buckets; other resolutions aggregate raw rows
+            long end = to != null ? toMs : System.currentTimeMillis();
+            if (resolutionParam != null) {
+                double span = (double) toMs - fromMs;
+                if (from == null || to == null || span / resolutionMs >= MAX_POINTS_LIMIT
+                        || (VitalsRollup.sourceLevel(resolutionMs) == 0 && span > MAX_RANGE_WINDOW_MS)) {
+                    json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"resolution needs from and to, at most 10000 buckets, and at most 24 h unless whole minutes\"}");
+                    return;
+                }
+            } else if (from == null || (double) end - fromMs > MAX_RANGE_WINDOW_MS) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"range needs from and at most 24 h; use resolution for longer\"}");
+                return;
+            }
+        }
+
         String bed = req.getParameter("bed");
-        if (bed != null && !bed.isBlank()) {
-            PatientTelemetry pt = store.get(bed);
+        boolean oneBed = bed != null && !bed.isBlank();
+        if (resolutionParam != null && !oneBed) {
+            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"resolution needs a bed\"}");
+            return;
+        }
+
+        // view=ecg: one bed's ECG over from..to, stitched with gaps marked, optionally resampled to fs=
+        boolean ecgView = "ecg".equals(req.getParameter("view"));
+        int targetFs = 0;
+        if (ecgView) {
+            if (!oneBed || from == null || to == null || maxPointsParam != null || resolutionParam != null
+                    || req.getParameter("since") != null) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"view=ecg needs bed, from and to only\"}");
+                return;
+            }
+            try {
+                String fsParam = req.getParameter("fs");
+                if (fsParam != null) targetFs = Integer.parseInt(fsParam.trim());
+            } catch (NumberFormatException e) {
+                targetFs = -1;
+            }
+            if ((double) toMs - fromMs > MAX_ECG_WINDOW_MS || targetFs < 0 || targetFs > MAX_ECG_FS) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid ECG window or rate\"}");
+                return;
+            }
+        }
+
+        // view=latest: newest vitals row per bed (no history, no ECG) for dashboards
+        boolean latest = "latest".equals(req.getParameter("view"));
+        if (latest && (ranged || req.getParameter("since") != null)) {
+            json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"view=latest cannot be combined with since/from/to/maxPoints/resolution\"}");
+            return;
+        }
+
+        // since=<cursor>: only data written after the cursor; a seq number for one bed, an opaque token for all.
+        // A bed's backlog comes in pages of whole writes (see MAX_SINCE_ROWS), each read's cursor the next page's
+        String since = req.getParameter("since");
+        long afterSeq = 0;
+        Map<String, Long> cursor = null;
+        if (since != null) {
+            if (ranged) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"since cannot be combined with from/to/maxPoints/resolution\"}");
+                return;
+            }
+            try {
+                if (oneBed) afterSeq = Long.parseLong(since.trim());
+                else cursor = TelemetryCursor.decode(mapper, since.trim());
+            } catch (IllegalArgumentException | IOException e) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid cursor\"}");
+                return;
+            }
+        }
+
+        // limit=<n>&after=<bed id>: one page of the all-beds read, n beds with ids after the given one
+        String limitParam = req.getParameter("limit");
+        String after = req.getParameter("after");
+        int limit = Integer.MAX_VALUE;
+        if (limitParam != null || after != null) {
+            if (oneBed || latest || ecgView || resolutionParam != null) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"limit/after page the all-beds read only\"}");
+                return;
+            }
+            try {
+                if (limitParam != null) limit = Integer.parseInt(limitParam.trim());
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1) {
+                json(resp, HttpServletResponse.SC_BAD_REQUEST, "{\"error\":\"invalid limit\"}");
+                return;
+            }
+            limit = Math.min(limit, MAX_PAGE_BEDS);
+        }
+
+        // The body is a function of the query and the beds' write sequences, so an unchanged poll
+        // is answered from the sequences alone. The data read afterwards is at least as new.
+        // gzip and identity bodies are different representations, so they get different tags
+        String etag = etag(req.getQueryString(), acceptsGzip(req), oneBed ? bed : null);
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("Vary", "Accept-Encoding");
+        if (matches(req.getHeader("If-None-Match"), etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (latest) {
+            Map<String, PatientTelemetry> rows = new TreeMap<>(store.getLatest());
+            if (!oneBed) {
+                writeJson(req, resp, rows);
+                return;
+            }
+            PatientTelemetry pt = rows.get(bed);
             if (pt == null) {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 resp.getWriter().write("{\"error\":\"unknown bed\"}");
                 return;
             }
-            mapper.writeValue(resp.getWriter(), pt);
+            writeJson(req, resp, pt);
+            return;
+        }
+
+        if (ecgView) {
+            EcgStrip strip = store.getEcg(bed, fromMs, toMs, targetFs);
+            if (strip == null) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                resp.getWriter().write("{\"error\":\"unknown bed\"}");
+                return;
+            }
+            writeJson(req, resp, strip);
+            return;
+        }
+
+        if (resolutionParam != null) {
+            VitalsRollup rollup = store.getRollup(bed, fromMs, toMs, resolutionMs);
+            if (rollup == null) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                resp.getWriter().write("{\"error\":\"unknown bed\"}");
+                return;
+            }
+            writeJson(req, resp, rollup);
+            return;
+        }
+
+        if (oneBed) {
+            PatientTelemetry pt = since != null ? store.getSince(bed, afterSeq)
+                    : ranged ? store.getRange(bed, fromMs, toMs) : store.get(bed);
+            if (pt == null) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                resp.getWriter().write("{\"error\":\"unknown bed\"}");
+                return;
+            }
+            if (pt.getSeq() != null) resp.setHeader(CURSOR_HEADER, Long.toString(pt.getSeq()));
+            writeJson(req, resp, ranged ? Downsampler.downsample(pt, maxPoints) : pt);
+            return;
+        }
+
+        // All beds in id order, handed over by the store one at a time and written out as they come,
+        // so the response holds one bed at a time however large the ward. The beds and their
+        // sequences are fixed first: they pick the page and make the cursor, which has to be sent
+        // before the body. since= reads stop at those sequences; other reads may be newer, as with the ETag.
+        NavigableMap<String, Long> seqs = new TreeMap<>(store.sequences());
+        SortedMap<String, Long> page = new TreeMap<>();
+        for (Map.Entry<String, Long> e : (after != null ? seqs.tailMap(after, false) : seqs).entrySet()) {
+            if (cursor != null && e.getValue() <= cursor.getOrDefault(e.getKey(), 0L)) continue;
+            if (page.size() == limit) {
+                resp.setHeader(NEXT_PAGE_HEADER, page.lastKey());
+                break;
+            }
+            page.put(e.getKey(), e.getValue());
+        }
+
+        Map<String, Long> next = cursor != null ? new TreeMap<>(cursor) : new TreeMap<>();
+        next.putAll(page);
+        resp.setHeader(CURSOR_HEADER, TelemetryCursor.encode(mapper, next));
+
+        // Not closed when a read fails: closing would end the object (and the gzip stream) and pass a
+        // partial page off as whole under a cursor that skips what was missed. The exception aborts it.
+        JsonGenerator gen = jsonGenerator(req, resp);
+        gen.writeStartObject();
+        int points = maxPoints;
+        AbstractTelemetryStore.PageSink sink = (b, t) -> {
+            gen.writeFieldName(b);
+            gen.writeObject(ranged ? Downsampler.downsample(t, points) : t);
+        };
+        if (since != null) store.getPageSince(page, cursor, sink);
+        else if (ranged) store.getPageRange(page, fromMs, toMs, sink);
+        else store.getPage(page, sink);
+        gen.writeEndObject();
+        gen.close();
+    }
+
+    // Writes a GET body, gzipped past gzipMinBytes when the client accepts it
+    private void writeJson(HttpServletRequest req, HttpServletResponse resp, Object body) throws IOException {
+        if (!acceptsGzip(req)) {
+            mapper.writeValue(resp.getWriter(), body);
             return;
         }
+        // writeValue closes the stream, which finishes the gzip trailer or sends the small body
+        mapper.writeValue(new GzipResponseStream(resp, gzipMinBytes), body);
+    }
 
-        Map<String, PatientTelemetry> sorted = new TreeMap<>(store.getAll());
-        mapper.writeValue(resp.getWriter(), sorted);
+    // writeJson() for bodies written piece by piece; closing the generator finishes the body
+    private JsonGenerator jsonGenerator(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!acceptsGzip(req)) return mapper.getFactory().createGenerator(resp.getWriter());
+        return mapper.getFactory().createGenerator(new GzipResponseStream(resp, gzipMinBytes));
+    }
+
+    // Accept-Encoding lists gzip (or *) without q=0
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        String accept = req.getHeader("Accept-Encoding");
+        if (accept == null) return false;
+        for (String part : accept.split(",")) {
+            String[] p = part.trim().split(";");
+            String coding = p[0].trim().toLowerCase();
+            if (!coding.equals("gzip") && !coding.equals("x-gzip") && !coding.equals("*")) continue;
+            double q = 1;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (q > 0) return true;
+        }
+        return false;
+    }
+
+    // Strong validator over the query string, the encoding and the write sequences of the beds it covers
+    private String etag(String query, boolean gzip, String bed) {
+        Map<String, Long> seqs = store.sequences();
+        StringBuilder sb = new StringBuilder(query == null ? "" : query).append(gzip ? "\ngzip\n" : "\n");
+        if (bed != null) {
+            sb.append(bed).append('=').append(seqs.get(bed));
+        } else {
+            new TreeMap<>(seqs).forEach((b, seq) -> sb.append(b).append('=').append(seq).append('\n'));
+        }
+
+        // 64-bit FNV-1a
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < sb.length(); i++) {
+            h ^= sb.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return "\"" + Long.toHexString(h) + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals("*") || t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        if (postExecutor != null) {
+            postExecutor.shutdown();
+            try {
+                postExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (ingest != null) ingest.close(10_000L);
+        if (broadcaster != null) broadcaster.close();
+        if (store != null) store.close();
     }
 
     private static void json(HttpServletResponse resp, int status, String body) throws IOException {
@@ -84,7 +478,33 @@ public class TelemetryServlet extends HttpServlet {
         resp.getWriter().write(body);
     }
 
+    private static final class BodyTooLargeException extends IOException {
+        BodyTooLargeException() {
+            super("body too large");
+        }
+    }
 
+    // Fails the read once more than max bytes have come out of the wrapped stream
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
 
+        LimitedInputStream(InputStream in, long max) {
+            super(in);
+            this.remaining = max;
+        }
 
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && --remaining < 0) throw new BodyTooLargeException();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0 && (remaining -= n) < 0) throw new BodyTooLargeException();
+            return n;
+        }
+    }
 }
@@ -16,19 +16,48 @@ public final class TelemetryStores {
             DbConfig cfg = DbConfig.fromEnv();
             if (cfg == null) {
                 log.warning("Telemetry backend=db but DB config missing (need DB_URL or PG* vars). Falling back to memory.");
-                return new InMemoryTelemetryStore();
+                return new InMemoryTelemetryStore(RetentionPolicy.fromEnv());
             }
 
+            DbTelemetryStore.IngestMode ingest = ingestMode();
             try {
-                log.info("Telemetry backend=db (" + cfg.sanitized() + ")");
-                return new DbTelemetryStore(cfg);
+                long cacheTtlMs = DbConfig.getenvLong("TELEMETRY_CACHE_TTL_MS", 1_000L);
+                log.info("Telemetry backend=db (" + cfg.sanitized() + ", ingest=" + ingest + ", cacheTtlMs=" + cacheTtlMs + ")");
+                DbTelemetryStore db = new DbTelemetryStore(cfg, ingest);
+                // TELEMETRY_CACHE_TTL_MS=0 sends every read to PostgreSQL
+                return cacheTtlMs > 0 ? new CachingTelemetryStore(db, cacheTtlMs) : db;
             } catch (RuntimeException e) {
                 log.log(Level.WARNING, "DB init failed; falling back to memory", e);
-                return new InMemoryTelemetryStore();
+                return new InMemoryTelemetryStore(RetentionPolicy.fromEnv());
+            }
+        }
+
+        if ("file".equals(backend)) {
+            try {
+                FileTelemetryStore file = FileTelemetryStore.fromEnv();
+                log.info("Telemetry backend=file (" + file.stats().get("dir") + ")");
+                return file;
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "File store init failed; falling back to memory", e);
+                return new InMemoryTelemetryStore(RetentionPolicy.fromEnv());
             }
         }
 
         log.info("Telemetry backend=memory");
-        return new InMemoryTelemetryStore();
+        try {
+            return InMemoryTelemetryStore.fromEnv();
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Snapshot restore failed; starting empty", e);
+            return new InMemoryTelemetryStore(RetentionPolicy.fromEnv());
+        }
+    }
+
+    // TELEMETRY_DB_INGEST=copy streams rows with COPY FROM STDIN; anything else uses JDBC batches
+    private static DbTelemetryStore.IngestMode ingestMode() {
+        String v = System.getenv("TELEMETRY_DB_INGEST");
+        if (v != null && "copy".equals(v.trim().toLowerCase(Locale.ROOT))) {
+            return DbTelemetryStore.IngestMode.COPY;
+        }
+        return DbTelemetryStore.IngestMode.BATCH;
     }
 }
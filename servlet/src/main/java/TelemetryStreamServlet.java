@@ -0,0 +1,46 @@
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * GET /telemetry/stream[?bed=...]: Server-Sent Events feed of newly stored telemetry.
+ *
+ * Each write arrives as "event: telemetry" with data {"bed": ..., "seq": ..., "telemetry": {...}},
+ * seq being the bed's since= cursor after the write. The request goes async and holds no
+ * container thread while open. A reconnecting EventSource sends Last-Event-ID and is first
+ * sent what it missed; after a "dropped" event the client re-reads the beds it lists with
+ * GET /telemetry?bed=...&since=... (see TelemetryBroadcaster).
+ */
+@WebServlet(urlPatterns = "/telemetry/stream", asyncSupported = true, loadOnStartup = 2)
+public class TelemetryStreamServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        TelemetryBroadcaster broadcaster =
+                (TelemetryBroadcaster) getServletContext().getAttribute(TelemetryBroadcaster.ATTRIBUTE);
+        if (broadcaster == null) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().write("{\"error\":\"stream unavailable\"}");
+            return;
+        }
+
+        String bed = req.getParameter("bed");
+        if (bed != null && bed.isBlank()) bed = null;
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        // Stop reverse proxies (nginx) from buffering the stream
+        resp.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(0);
+        broadcaster.subscribe(ctx, bed, req.getHeader("Last-Event-ID"));
+    }
+}
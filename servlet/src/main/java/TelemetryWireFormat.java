@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary alternative to the JSON POST body, sent as application/x-rpm-telemetry.
+ *
+ * Layout (version 1), all integers unsigned LEB128 varints unless noted:
+ *
+ *   header  'R' 'P' 'M' 'T' version-byte
+ *   frame*  frame length, then the frame bytes; a zero length ends the body
+ *   frame   bed id length, bed id (UTF-8), row count,
+ *           ts token per row, then hr, rr, sys, dia, temp tokens per row,
+ *           flags (1 = ecgTsStart, 2 = ecgFs),
+ *           [zigzag ecgTsStart - first ts], [ecgFs],
+ *           ECG sample count, ECG token per sample
+ *
+ * A token is 0 for a missing value (null ts, NaN sample), otherwise
+ * zigzag(q - previous q) + 1, where q is the value quantized to its column's
+ * step and previous q is the last present value of that column (0 at the
+ * start). Steps: ts 1 ms, hr/rr/sys/dia 0.1, temp 0.01 C, ECG 1 uV. Steady
+ * vitals and ECG therefore cost one or two bytes per value.
+ *
+ * Decoders skip frame bytes they do not understand, so later versions can
+ * append fields to a frame.
+ *
+ * The client's rpm.net.TelemetryWireEncoder writes this layout; TelemetryWireFormatTest
+ * decodes bytes pinned by the client's own test.
+ */
+public final class TelemetryWireFormat {
+    public static final String CONTENT_TYPE = "application/x-rpm-telemetry";
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'R', 'P', 'M', 'T'};
+    private static final int FLAG_ECG_TS_START = 1;
+    private static final int FLAG_ECG_FS = 2;
+    // Counts come from the client; columns grow past this on demand instead of trusting them up front
+    private static final int MAX_PRESIZE = 4096;
+
+    // Quantization steps as divisors, so decoding q / scale rounds to the nearest double (72.4, not 72.39999)
+    static final double VITALS_SCALE = 10;
+    static final double TEMP_SCALE = 100;
+    static final double ECG_SCALE = 1000;
+
+    private TelemetryWireFormat() {}
+
+    /** True when a Content-Type header names this format (parameters ignored). */
+    public static boolean matches(String contentType) {
+        if (contentType == null) return false;
+        int semi = contentType.indexOf(';');
+        String type = (semi < 0 ? contentType : contentType.substring(0, semi)).trim();
+        return type.equalsIgnoreCase(CONTENT_TYPE);
+    }
+
+    public static Map<String, PatientTelemetry> decode(InputStream in) throws IOException {
+        Reader r = new Reader(in);
+        for (byte m : MAGIC) {
+            if (r.readByte() != (m & 0xFF)) throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+        }
+        int version = r.readByte();
+        if (version != VERSION) {
+            throw new TelemetryPayloadParser.BadPayloadException("unsupported binary version " + version);
+        }
+
+        Map<String, PatientTelemetry> out = new LinkedHashMap<>();
+        long frameLen;
+        while ((frameLen = r.readVarlong()) != 0) {
+            if (frameLen < 0) throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+            r.limit = r.consumed + frameLen;
+            String bedId = new String(r.readBytes(r.readCount()), StandardCharsets.UTF_8);
+            out.put(bedId, readFrame(r));
+            if (r.consumed > r.limit) throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+            r.skip(r.limit - r.consumed);
+            r.limit = Long.MAX_VALUE;
+        }
+        return out;
+    }
+
+    private static PatientTelemetry readFrame(Reader r) throws IOException {
+        PatientTelemetry pt = new PatientTelemetry();
+        int rows = r.readCount();
+
+        LongColumn ts = pt.getTs();
+        ts.ensureCapacity(Math.min(rows, MAX_PRESIZE));
+        long prevTs = 0;
+        long firstTs = 0;
+        boolean haveTs = false;
+        for (int i = 0; i < rows; i++) {
+            long token = r.readVarlong();
+            if (token == 0) {
+                ts.addLong(LongColumn.MISSING);
+                continue;
+            }
+            prevTs += unzigzag(token - 1);
+            if (!haveTs) {
+                firstTs = prevTs;
+                haveTs = true;
+            }
+            ts.addLong(prevTs);
+        }
+        readValues(r, rows, VITALS_SCALE, pt.getHr());
+        readValues(r, rows, VITALS_SCALE, pt.getRr());
+        readValues(r, rows, VITALS_SCALE, pt.getSys());
+        readValues(r, rows, VITALS_SCALE, pt.getDia());
+        readValues(r, rows, TEMP_SCALE, pt.getTemp());
+
+        long flags = r.readVarlong();
+        if ((flags & FLAG_ECG_TS_START) != 0) pt.setEcgTsStart(firstTs + unzigzag(r.readVarlong()));
+        if ((flags & FLAG_ECG_FS) != 0) pt.setEcgFs(TelemetryPayloadParser.ecgFs(r.readVarlong()));
+        readValues(r, r.readCount(), ECG_SCALE, pt.getEcg());
+        return pt;
+    }
+
+    private static void readValues(Reader r, int n, double scale, DoubleColumn out) throws IOException {
+        out.ensureCapacity(Math.min(n, MAX_PRESIZE));
+        long q = 0;
+        for (int i = 0; i < n; i++) {
+            long token = r.readVarlong();
+            if (token == 0) {
+                out.addDouble(Double.NaN);
+            } else {
+                q += unzigzag(token - 1);
+                out.addDouble(q / scale);
+            }
+        }
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // Buffered varint reader that tracks the bytes consumed so frame bounds can be checked
+    private static final class Reader {
+        private final InputStream in;
+        private final byte[] buf = new byte[8 * 1024];
+        private int pos, end;
+        long consumed;
+        long limit = Long.MAX_VALUE;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        int readByte() throws IOException {
+            if (pos == end) {
+                end = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (end <= 0) {
+                    end = 0;
+                    throw new TelemetryPayloadParser.BadPayloadException("truncated binary payload");
+                }
+            }
+            if (consumed++ >= limit) throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarlong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+        }
+
+        // Element counts: every element takes at least one byte, so a count past the frame end is corrupt
+        int readCount() throws IOException {
+            long n = readVarlong();
+            if (n < 0 || n > limit - consumed || n > Integer.MAX_VALUE - 8) {
+                throw new TelemetryPayloadParser.BadPayloadException("invalid binary payload");
+            }
+            return (int) n;
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            byte[] out = new byte[n];
+            for (int i = 0; i < n; i++) out[i] = (byte) readByte();
+            return out;
+        }
+
+        void skip(long n) throws IOException {
+            for (long i = 0; i < n; i++) readByte();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Per-bucket summaries of each vital at one resolution: count, min, max, sum
+ * and sum of squares, served as count/min/max/mean/std columns.
+ *
+ * The five stats merge by addition/min/max, so a bucket can be built from raw
+ * rows, from stored 1-minute or 1-hour rollups, or from finer buckets of a
+ * resolution that divides this one. sourceLevel() picks the coarsest stored
+ * level that can answer a requested resolution.
+ *
+ * Buckets start at multiples of resolutionMs (epoch-aligned, UTC); a bucket
+ * with no present value of a vital has count 0 and NaN stats for it.
+ */
+public final class VitalsRollup {
+    public static final long MINUTE_MS = 60_000L;
+    public static final long HOUR_MS = 3_600_000L;
+
+    /** Vitals in column order; the index is the vital argument below. */
+    public static final List<String> VITALS = List.of("hr", "rr", "sys", "dia", "temp");
+
+    // Offsets into a bucket's per-vital stats block
+    static final int N = 0, MIN = 1, MAX = 2, SUM = 3, SUMSQ = 4, STATS = 5;
+
+    private final long resolutionMs;
+    // Bucket start -> VITALS.size() blocks of STATS
+    private final TreeMap<Long, double[]> buckets = new TreeMap<>();
+
+    public VitalsRollup(long resolutionMs) {
+        if (resolutionMs <= 0) throw new IllegalArgumentException("resolution must be positive");
+        this.resolutionMs = resolutionMs;
+    }
+
+    /** Stored level (HOUR_MS or MINUTE_MS) whose buckets tile resolutionMs exactly, or 0 to aggregate raw rows. */
+    public static long sourceLevel(long resolutionMs) {
+        if (resolutionMs % HOUR_MS == 0) return HOUR_MS;
+        if (resolutionMs % MINUTE_MS == 0) return MINUTE_MS;
+        return 0;
+    }
+
+    public long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    long bucketOf(long ts) {
+        return Math.floorDiv(ts, resolutionMs) * resolutionMs;
+    }
+
+    /** Start of the bucket holding fromMs; queries cover whole buckets. Open bounds stay open. */
+    long windowStart(long fromMs) {
+        return fromMs == Long.MIN_VALUE ? fromMs : bucketOf(fromMs);
+    }
+
+    /** Last ms of the bucket holding toMs. */
+    long windowEnd(long toMs) {
+        long start = bucketOf(toMs);
+        return toMs == Long.MAX_VALUE || start > Long.MAX_VALUE - resolutionMs ? Long.MAX_VALUE : start + resolutionMs - 1;
+    }
+
+    /** Adds one raw reading; NaN is ignored. */
+    public void addSample(long ts, int vital, double v) {
+        if (Double.isNaN(v)) return;
+        addStats(ts, vital, 1, v, v, v, v * v);
+    }
+
+    /** Merges a summary (raw or from a finer bucket starting at ts) into the bucket holding ts. */
+    public void addStats(long ts, int vital, long n, double min, double max, double sum, double sumsq) {
+        if (n <= 0) return;
+        double[] b = buckets.computeIfAbsent(bucketOf(ts), k -> emptyBucket());
+        int o = vital * STATS;
+        if (b[o + N] == 0) {
+            b[o + MIN] = min;
+            b[o + MAX] = max;
+        } else {
+            b[o + MIN] = Math.min(b[o + MIN], min);
+            b[o + MAX] = Math.max(b[o + MAX], max);
+        }
+        b[o + N] += n;
+        b[o + SUM] += sum;
+        b[o + SUMSQ] += sumsq;
+    }
+
+    /** Adds every vitals row of t; rows without ts count at missingTs, or are skipped if that is MISSING. */
+    public void addRows(PatientTelemetry t, long missingTs) {
+        for (int i = 0, n = t.vitalsRows(); i < n; i++) {
+            long ts = t.getTs().getOr(i, missingTs);
+            if (ts == LongColumn.MISSING) continue;
+            addSample(ts, 0, t.getHr().getOrNaN(i));
+            addSample(ts, 1, t.getRr().getOrNaN(i));
+            addSample(ts, 2, t.getSys().getOrNaN(i));
+            addSample(ts, 3, t.getDia().getOrNaN(i));
+            addSample(ts, 4, t.getTemp().getOrNaN(i));
+        }
+    }
+
+    private static double[] emptyBucket() {
+        return new double[VITALS.size() * STATS];
+    }
+
+    /** Bucket start -> stats blocks (see the offsets above), for backends persisting the rollup. */
+    NavigableMap<Long, double[]> buckets() {
+        return buckets;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    /** Bucket start times. */
+    public LongColumn getTs() {
+        LongColumn out = new LongColumn();
+        out.ensureCapacity(buckets.size());
+        for (long t : buckets.keySet()) out.addLong(t);
+        return out;
+    }
+
+    public Series getHr() { return series(0); }
+    public Series getRr() { return series(1); }
+    public Series getSys() { return series(2); }
+    public Series getDia() { return series(3); }
+    public Series getTemp() { return series(4); }
+
+    private Series series(int vital) {
+        Series s = new Series(buckets.size());
+        int o = vital * STATS;
+        for (double[] b : buckets.values()) {
+            long n = (long) b[o + N];
+            s.count.addLong(n);
+            if (n == 0) {
+                s.min.addDouble(Double.NaN);
+                s.max.addDouble(Double.NaN);
+                s.mean.addDouble(Double.NaN);
+                s.std.addDouble(Double.NaN);
+                continue;
+            }
+            double mean = b[o + SUM] / n;
+            s.min.addDouble(b[o + MIN]);
+            s.max.addDouble(b[o + MAX]);
+            s.mean.addDouble(mean);
+            // Population std; clamped since E[x^2] - mean^2 can dip below 0 by rounding
+            s.std.addDouble(Math.sqrt(Math.max(0, b[o + SUMSQ] / n - mean * mean)));
+        }
+        return s;
+    }
+
+    /** One vital's stats, one entry per bucket in getTs() order. */
+    public static final class Series {
+        private final LongColumn count = new LongColumn();
+        private final DoubleColumn min = new DoubleColumn();
+        private final DoubleColumn max = new DoubleColumn();
+        private final DoubleColumn mean = new DoubleColumn();
+        private final DoubleColumn std = new DoubleColumn();
+
+        Series(int buckets) {
+            count.ensureCapacity(buckets);
+            min.ensureCapacity(buckets);
+            max.ensureCapacity(buckets);
+            mean.ensureCapacity(buckets);
+            std.ensureCapacity(buckets);
+        }
+
+        public LongColumn getCount() { return count; }
+        public DoubleColumn getMin() { return min; }
+        public DoubleColumn getMax() { return max; }
+        public DoubleColumn getMean() { return mean; }
+        public DoubleColumn getStd() { return std; }
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncPostHandlerTest {
+
+    // Input stream that hands out at most `step` bytes before reporting not-ready, like a slow uplink
+    private static final class Trickle extends ServletInputStream {
+        private final byte[] data;
+        private final int step;
+        private int pos, budget;
+
+        Trickle(String s, int step) {
+            this.data = s.getBytes(StandardCharsets.UTF_8);
+            this.step = step;
+        }
+
+        void arrive() { budget = step; }
+
+        @Override public boolean isReady() { return budget > 0 && pos < data.length; }
+        @Override public boolean isFinished() { return pos >= data.length; }
+        @Override public void setReadListener(ReadListener l) {}
+        @Override public int read() { return pos < data.length ? data[pos++] & 0xff : -1; }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(Math.min(len, budget), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            budget -= n;
+            return n;
+        }
+    }
+
+    // A body arriving in small pieces across callbacks is reassembled and processed once, then completed
+    @Test
+    void handler_shouldBufferTrickledBodyAcrossChunks() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"patients\":{\"bed-1\":{\"ecg\":[");
+        for (int i = 0; i < 5_000; i++) sb.append(i == 0 ? "" : ",").append(i % 100);
+        String json = sb.append("]}}}").toString();
+
+        AsyncContext ctx = mock(AsyncContext.class);
+        when(ctx.getResponse()).thenReturn(mock(HttpServletResponse.class));
+        Trickle in = new Trickle(json, 700);
+        BufferPool pool = new BufferPool(1024, 8);
+        AtomicReference<String> seen = new AtomicReference<>();
+        AsyncPostHandler h = new AsyncPostHandler(ctx, in, pool, 1 << 20, Runnable::run,
+                (body, resp) -> seen.set(new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+
+        while (!in.isFinished()) {
+            in.arrive();
+            h.onDataAvailable();
+        }
+        h.onAllDataRead();
+
+        assertEquals(json, seen.get());
+        verify(ctx).complete();
+        assertEquals(8, pool.stats().get("pooled"));
+    }
+
+    // Bodies over the limit are refused with 413 without being processed
+    @Test
+    void handler_shouldRejectOversizedBody() throws Exception {
+        AsyncContext ctx = mock(AsyncContext.class);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        StringWriter out = new StringWriter();
+        when(resp.getWriter()).thenReturn(new PrintWriter(out));
+        when(ctx.getResponse()).thenReturn(resp);
+        Trickle in = new Trickle("x".repeat(5_000), 5_000);
+        AsyncPostHandler h = new AsyncPostHandler(ctx, in, new BufferPool(1024, 8), 4_096, Runnable::run,
+                (body, r) -> fail("oversized body must not be processed"));
+
+        in.arrive();
+        h.onDataAvailable();
+        h.onAllDataRead();
+
+        verify(resp).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(ctx).complete();
+    }
+
+    // The upload timeout is lifted once the body is in; if it fires anyway before the store starts,
+    // the body is refused with 503 and never stored
+    @Test
+    void handler_shouldAnswerTimeoutOfQueuedBodyWith503() throws Exception {
+        AsyncContext ctx = mock(AsyncContext.class);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        when(resp.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        when(ctx.getResponse()).thenReturn(resp);
+        Trickle in = new Trickle("{}", 2);
+        List<Runnable> queued = new ArrayList<>();
+        AsyncPostHandler h = new AsyncPostHandler(ctx, in, new BufferPool(1024, 8), 4_096, queued::add,
+                (body, r) -> fail("timed-out body must not be processed"));
+
+        in.arrive();
+        h.onDataAvailable();
+        h.onAllDataRead();
+        verify(ctx).setTimeout(0);
+
+        h.onTimeout(null);
+        queued.forEach(Runnable::run);
+
+        verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(resp).setHeader("Retry-After", "1");
+        verify(ctx, times(1)).complete();
+    }
+}
@@ -0,0 +1,158 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BedTelemetryBufferTest {
+
+    // Once the sample cap is reached the oldest rows are overwritten
+    @Test
+    void append_shouldKeepOnlyNewestRowsUpToCapacity() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(100, 1000, 0));
+        for (int i = 0; i < 250; i++) b.append(TestTelemetry.row(i, i), 0);
+
+        PatientTelemetry out = b.snapshot();
+        assertEquals(100, out.getTs().size());
+        assertEquals(150L, out.getTs().get(0));
+        assertEquals(249.0, out.getHr().get(99));
+        assertNull(out.getRr().get(0));
+    }
+
+    // Rows older than the max age behind the newest row are dropped
+    @Test
+    void append_shouldEvictRowsOlderThanMaxAge() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(1000, 1000, 10_000));
+        for (int i = 0; i < 60; i++) b.append(TestTelemetry.row(i * 1000L, i), 0);
+
+        PatientTelemetry out = b.snapshot();
+        assertEquals(11, out.getTs().size());
+        assertEquals(49_000L, out.getTs().get(0));
+    }
+
+    // ECG keeps its time base after eviction and age trimming
+    @Test
+    void append_shouldTrackEcgStartAcrossEviction() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(10, 250, 0));
+        for (int s = 0; s < 4; s++) b.append(TestTelemetry.ecg(s * 1000L, 125, 125), 0);
+
+        PatientTelemetry out = b.snapshot();
+        assertEquals(250, out.getEcg().size());
+        assertEquals(2000L, out.getEcgTsStart());
+
+        BedTelemetryBuffer aged = new BedTelemetryBuffer(new RetentionPolicy(10, 10_000, 1_500));
+        for (int s = 0; s < 4; s++) aged.append(TestTelemetry.ecg(s * 1000L, 100, 100), 0);
+        PatientTelemetry a = aged.snapshot();
+        assertEquals(2490L, a.getEcgTsStart());
+        assertEquals(151, a.getEcg().size());
+    }
+
+    // Memory stays bounded by the policy no matter how much is appended
+    @Test
+    void bytesAllocated_shouldStayBounded() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(64, 1024, 0));
+        for (int i = 0; i < 10_000; i++) b.append(TestTelemetry.row(i, 1), 0);
+        for (int i = 0; i < 100; i++) b.append(TestTelemetry.ecg(i * 1000L, 125, 125), 0);
+
+        assertTrue(b.bytesAllocated() <= 64 * 8 * 6 + 1024 * 8 + 1024 * 32);
+    }
+
+    // Range reads return only rows and ECG samples inside [from, to], in order or not
+    @Test
+    void range_shouldClipRowsAndEcgToWindow() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(100, 1000, 0));
+        for (int i = 0; i < 150; i++) b.append(TestTelemetry.row(i * 1000L, i), 0);
+        for (int s = 0; s < 4; s++) b.append(TestTelemetry.ecg(s * 1000L, 100, 100), 0);
+
+        PatientTelemetry out = b.range(60_000, 69_500);
+        assertEquals(10, out.getTs().size());
+        assertEquals(60_000L, out.getTs().get(0));
+        assertEquals(69.0, out.getHr().get(9));
+
+        PatientTelemetry e = b.range(1_500, 2_495);
+        assertEquals(1_500L, e.getEcgTsStart());
+        assertEquals(100, e.getEcg().size());
+        assertEquals(50.0, e.getEcg().get(0));
+
+        b.append(TestTelemetry.row(10_000, -1), 0);
+        PatientTelemetry unordered = b.range(9_000, 11_000);
+        assertEquals(1, unordered.getTs().size());
+        assertEquals(-1.0, unordered.getHr().get(0));
+    }
+
+    // since() returns only the rows and ECG of later writes, plus the next cursor
+    @Test
+    void since_shouldReturnOnlyNewerWrites() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(100, 1000, 0), 40);
+        b.append(TestTelemetry.row(1000, 60), 0);
+        b.append(TestTelemetry.row(2000, 61), 0);
+        b.append(TestTelemetry.ecg(2000, 100, 100), 0);
+        b.append(TestTelemetry.row(3000, 62), 0);
+
+        PatientTelemetry out = b.since(41);
+        assertEquals(44L, out.getSeq());
+        assertEquals(2, out.getTs().size());
+        assertEquals(2000L, out.getTs().get(0));
+        assertEquals(100, out.getEcg().size());
+
+        PatientTelemetry none = b.since(44);
+        assertTrue(none.getTs().isEmpty());
+        assertTrue(none.getEcg().isEmpty());
+    }
+
+    // A since() past MAX_SINCE_ROWS stops after the write holding the last row allowed; its seq pages on
+    @Test
+    void since_shouldPageLongBacklogsByWholeWrites() {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(20_000, 1000, 0), 0);
+        for (int w = 0; w < 4_000; w++) {
+            PatientTelemetry t = new PatientTelemetry();
+            for (int r = 0; r < 3; r++) {
+                t.getTs().add(w * 3L + r);
+                t.getHr().add(60.0);
+            }
+            b.append(t, 0);
+        }
+
+        PatientTelemetry first = b.since(0);
+        // Row 9999 is the first of write 3334, which is returned whole
+        assertEquals(3_334L, first.getSeq());
+        assertEquals(10_002, first.getTs().size());
+
+        PatientTelemetry rest = b.since(first.getSeq());
+        assertEquals(4_000L, rest.getSeq());
+        assertEquals(10_002L, rest.getTs().get(0));
+        assertEquals(1_998, rest.getTs().size());
+    }
+
+    // Reads racing a writer always see one whole write: rows match the sequence and never tear
+    @Test
+    void reads_shouldBeConsistentWhileAppending() throws Exception {
+        BedTelemetryBuffer b = new BedTelemetryBuffer(new RetentionPolicy(50_000, 5000, 0));
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 200_000; i++) {
+                PatientTelemetry t = TestTelemetry.row(i, i);
+                t.getRr().add((double) i);
+                b.append(t, 0);
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        int reads = 0;
+        while (!done.get() || reads == 0) {
+            PatientTelemetry s = b.snapshot();
+            int n = s.getTs().size();
+            long seq = s.getSeq();
+            assertEquals(Math.min(seq, 50_000), n);
+            for (int i = 0; i < n; i++) {
+                long expected = seq - n + 1 + i;
+                assertEquals(expected, s.getTs().getLong(i));
+                assertEquals((double) expected, s.getHr().getDouble(i));
+                assertEquals((double) expected, s.getRr().getDouble(i));
+            }
+            reads++;
+        }
+        writer.join();
+    }
+}
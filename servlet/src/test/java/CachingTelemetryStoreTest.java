@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingTelemetryStoreTest {
+
+    // Counts get() and getPage() calls reaching the backend; the first get() can be held until released
+    private static final class CountingStore extends ForwardingTelemetryStore {
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger pages = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        CountingStore() {
+            super(new InMemoryTelemetryStore());
+        }
+
+        @Override
+        public PatientTelemetry get(String bedId) {
+            gets.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.get(bedId);
+        }
+
+        @Override
+        public void getPage(SortedMap<String, Long> page, PageSink sink) throws IOException {
+            pages.incrementAndGet();
+            delegate.getPage(page, sink);
+        }
+    }
+
+    // Repeated reads are served from the cache until a write to that bed invalidates it
+    @Test
+    void get_shouldCacheUntilTheBedIsWritten() {
+        CountingStore backend = new CountingStore();
+        CachingTelemetryStore store = new CachingTelemetryStore(backend, 60_000);
+        store.store("bed-1", TestTelemetry.row(1000L, 70.0));
+
+        store.get("bed-1");
+        store.get("bed-1");
+        assertEquals(1, backend.gets.get());
+
+        store.store("bed-2", TestTelemetry.row(1000L, 80.0));
+        store.get("bed-1");
+        assertEquals(1, backend.gets.get());
+
+        store.store("bed-1", TestTelemetry.row(1000L, 75.0));
+        assertEquals(2, store.get("bed-1").getHr().size());
+        assertEquals(2, backend.gets.get());
+    }
+
+    // Concurrent misses on one bed wait for a single backend load
+    @Test
+    void get_shouldCollapseConcurrentMisses() throws Exception {
+        CountingStore backend = new CountingStore();
+        CachingTelemetryStore store = new CachingTelemetryStore(backend, 60_000);
+        store.store("bed-1", TestTelemetry.row(1000L, 70.0));
+        backend.release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<PatientTelemetry>> results = new ArrayList<>();
+            results.add(pool.submit(() -> store.get("bed-1")));
+            assertTrue(backend.entered.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) results.add(pool.submit(() -> store.get("bed-1")));
+            // Let the followers reach the in-flight entry before the leader finishes
+            Thread.sleep(100);
+            backend.release.countDown();
+
+            for (Future<PatientTelemetry> f : results) assertEquals(1, f.get(5, TimeUnit.SECONDS).getHr().size());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, backend.gets.get());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cache = (Map<String, Object>) store.stats().get("cache");
+        assertEquals(1L, cache.get("loads"));
+        assertEquals(7L, (long) cache.get("hits") + (long) cache.get("coalesced"));
+    }
+
+    // All-beds reads go through the cached page read, which any write drops
+    @Test
+    void getAll_shouldBeServedFromCachedPage() {
+        CountingStore backend = new CountingStore();
+        CachingTelemetryStore store = new CachingTelemetryStore(backend, 60_000);
+        store.store("bed-1", TestTelemetry.row(1000L, 70.0));
+        store.store("bed-2", TestTelemetry.row(1000L, 80.0));
+
+        assertEquals(2, store.getAll().size());
+        assertEquals(2, store.getAll().size());
+        assertEquals(1, backend.pages.get());
+
+        store.store("bed-2", TestTelemetry.row(1000L, 81.0));
+        assertEquals(2, store.getAll().get("bed-2").getHr().size());
+        assertEquals(2, backend.pages.get());
+    }
+}
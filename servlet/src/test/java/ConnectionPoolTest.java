@@ -0,0 +1,185 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionPoolTest {
+
+    // Hands out a fresh mocked Connection for every jdbc:pooltest: URL and remembers them in order
+    static final class StubDriver implements Driver {
+        final List<Connection> physical = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            Connection c = mock(Connection.class);
+            physical.add(c);
+            return c;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:pooltest:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+
+    private static final StubDriver driver = new StubDriver();
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @BeforeEach
+    void resetDriver() {
+        driver.physical.clear();
+    }
+
+    private static ConnectionPool pool(int min, int max, long idleTimeoutMs, long waitTimeoutMs) {
+        return new ConnectionPool(new DbConfig("jdbc:pooltest:db", null, null, min, max, idleTimeoutMs, waitTimeoutMs));
+    }
+
+    private static void await(ConnectionPool pool, String stat, Object value) throws InterruptedException {
+        for (int i = 0; i < 500 && !value.equals(pool.stats().get(stat)); i++) Thread.sleep(10);
+    }
+
+    // With every slot leased a borrow gives up after poolWaitTimeoutMs; the returned slot is then reused
+    @Test
+    void borrow_shouldTimeOutWhenEverySlotIsLeased() throws SQLException {
+        try (ConnectionPool pool = pool(0, 1, 60_000, 50)) {
+            Connection leased = pool.borrow();
+
+            long t0 = System.nanoTime();
+            assertThrows(SQLTransientConnectionException.class, pool::borrow);
+            assertTrue(System.nanoTime() - t0 >= 40_000_000L);
+            assertEquals(1L, pool.stats().get("waits"));
+            assertEquals(1L, pool.stats().get("timeouts"));
+
+            leased.close();
+            try (Connection again = pool.borrow()) {
+                assertFalse(again.isClosed());
+            }
+            assertEquals(1L, pool.stats().get("created"));
+        }
+    }
+
+    // A connection idle past the validation window is checked on borrow; a dead one is closed and replaced
+    @Test
+    void borrow_shouldEvictIdleConnectionThatFailsValidation() throws Exception {
+        try (ConnectionPool pool = pool(0, 2, 60_000, 1_000)) {
+            pool.borrow().close();
+            Connection stale = driver.physical.get(0);
+            when(stale.isValid(anyInt())).thenReturn(false);
+            Thread.sleep(1_100);
+
+            try (Connection c = pool.borrow()) {
+                c.createStatement();
+            }
+            verify(stale).isValid(anyInt());
+            verify(stale).close();
+            verify(stale, never()).createStatement();
+            assertEquals(2, driver.physical.size());
+            verify(driver.physical.get(1)).createStatement();
+            assertEquals(1L, pool.stats().get("validationFailures"));
+            assertEquals(1, pool.stats().get("open"));
+        }
+    }
+
+    // Idle connections older than poolIdleTimeoutMs are closed oldest first, but never below poolMin
+    @Test
+    void housekeeping_shouldEvictIdleConnectionsDownToPoolMin() throws Exception {
+        try (ConnectionPool pool = pool(1, 3, 1_000, 1_000)) {
+            Connection a = pool.borrow();
+            Connection b = pool.borrow();
+            Connection c = pool.borrow();
+            a.close();
+            b.close();
+            c.close();
+
+            await(pool, "evicted", 2L);
+            assertEquals(2L, pool.stats().get("evicted"));
+            assertEquals(1, pool.stats().get("open"));
+            assertEquals(1, pool.stats().get("idle"));
+            verify(driver.physical.get(0)).close();
+            verify(driver.physical.get(1)).close();
+            verify(driver.physical.get(2), never()).close();
+        }
+    }
+
+    // An empty pool is topped up to poolMin in the background
+    @Test
+    void housekeeping_shouldOpenConnectionsUpToPoolMin() throws Exception {
+        try (ConnectionPool pool = pool(2, 4, 1_000, 1_000)) {
+            await(pool, "open", 2);
+            assertEquals(2, pool.stats().get("open"));
+            assertEquals(2, pool.stats().get("idle"));
+            assertEquals(2L, pool.stats().get("created"));
+        }
+    }
+
+    // Closing a lease twice returns the connection once; the stale proxy refuses further use
+    @Test
+    void lease_shouldReturnOnceWhenClosedTwice() throws SQLException {
+        try (ConnectionPool pool = pool(0, 1, 60_000, 50)) {
+            Connection c = pool.borrow();
+            c.close();
+            c.close();
+
+            assertTrue(c.isClosed());
+            assertThrows(SQLException.class, c::createStatement);
+            assertEquals(1, pool.stats().get("idle"));
+            assertEquals(0, pool.stats().get("inUse"));
+
+            // A second permit would let both of these through
+            Connection first = pool.borrow();
+            assertThrows(SQLTransientConnectionException.class, pool::borrow);
+            first.close();
+            verify(driver.physical.get(0), never()).close();
+            assertEquals(1L, pool.stats().get("created"));
+        }
+    }
+}
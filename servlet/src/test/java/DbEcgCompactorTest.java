@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbEcgCompactorTest {
+
+    // An uploaded segment of n samples at fs from startMs, stored as samples_bin
+    private static DbEcgCompactor.Segment segment(long id, long seq, long startMs, int fs, int n) {
+        double[] samples = new double[n];
+        for (int i = 0; i < n; i++) samples[i] = (id * 1000 + i) / 1000.0;
+        return new DbEcgCompactor.Segment(id, seq, startMs, fs, EcgCodec.encode(samples, n), null);
+    }
+
+    // A block from an earlier pass keeps its parts when merged again, and the next upload becomes a part after them
+    @Test
+    void merge_shouldShiftPartsOfAnExistingBlock() {
+        DbEcgCompactor.Segment block = segment(1, 6, 0, 250, 500);
+        block.parts(new Long[] {5L, 6L}, new Integer[] {0, 250});
+        DbEcgCompactor.Segment next = segment(2, 7, 2_000, 250, 250);
+
+        List<List<DbEcgCompactor.Segment>> runs = DbEcgCompactor.runs(Arrays.asList(block, next), 10_000);
+        assertEquals(1, runs.size());
+        DbEcgCompactor.Block b = DbEcgCompactor.merge(runs.get(0));
+
+        assertEquals(Arrays.asList(5L, 6L, 7L), b.partSeqs);
+        assertEquals(Arrays.asList(0, 250, 500), b.partOffsets);
+        assertEquals(7L, b.seq);
+        assertEquals(5L, b.seqMin);
+        assertEquals(750, b.samples.length);
+        assertEquals(2.0, b.samples[500], 1e-9);
+        assertArrayEquals(new Long[] {1L, 2L}, b.ids);
+    }
+
+    // Rows written before samples_bin carry only the TEXT column; they merge like the rest, and an undecodable one ends the run
+    @Test
+    void runs_shouldMergeLegacyTextRows() {
+        DbEcgCompactor.Segment text = new DbEcgCompactor.Segment(1, 1L, 0, 4, null, "0.1, 0.2,0.3,0.4");
+        DbEcgCompactor.Segment bin = segment(2, 2, 1_000, 4, 4);
+        DbEcgCompactor.Segment broken = new DbEcgCompactor.Segment(3, 3L, 2_000, 4, new byte[] {1}, null);
+        DbEcgCompactor.Segment after = segment(4, 4, 3_000, 4, 4);
+
+        List<List<DbEcgCompactor.Segment>> runs = DbEcgCompactor.runs(Arrays.asList(text, bin, broken, after), 10_000);
+
+        assertEquals(3, runs.size());
+        assertEquals(Arrays.asList(text, bin), runs.get(0));
+        DbEcgCompactor.Block b = DbEcgCompactor.merge(runs.get(0));
+        assertEquals(0.2, b.samples[1], 1e-9);
+        assertEquals(2.0, b.samples[4], 1e-9);
+        assertEquals(Arrays.asList(0, 4), b.partOffsets);
+    }
+
+    // A run stops before the segment that would take the block past blockMs, and gaps or a new rate end it too
+    @Test
+    void runs_shouldRespectBlockLengthAndContinuity() {
+        DbEcgCompactor.Segment[] s = new DbEcgCompactor.Segment[7];
+        for (int i = 0; i < s.length; i++) s[i] = segment(i + 1, i + 1, i * 1_000L, 250, 250);
+
+        List<List<DbEcgCompactor.Segment>> runs = DbEcgCompactor.runs(Arrays.asList(s), 3_000);
+        assertEquals(Arrays.asList(3, 3, 1), Arrays.asList(runs.get(0).size(), runs.get(1).size(), runs.get(2).size()));
+
+        DbEcgCompactor.Segment gap = segment(8, 8, 1_010, 250, 250);
+        DbEcgCompactor.Segment rate = segment(9, 9, 1_000, 125, 125);
+        assertFalse(DbEcgCompactor.continues(s[0], 250, gap, 10_000));
+        assertFalse(DbEcgCompactor.continues(s[0], 250, rate, 10_000));
+        assertTrue(DbEcgCompactor.continues(s[0], 250, segment(10, 10, 1_001, 250, 250), 10_000));
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownsamplerTest {
+
+    // LTTB keeps the requested number of aligned rows, the end points and a lone spike
+    @Test
+    void downsample_shouldKeepEndpointsAndPeaks() {
+        PatientTelemetry t = new PatientTelemetry();
+        for (int i = 0; i < 10_000; i++) {
+            t.getTs().add(i * 1000L);
+            t.getHr().add(i == 4_321 ? 180.0 : 70.0 + (i % 3));
+            t.getTemp().add(36.5);
+        }
+
+        PatientTelemetry out = Downsampler.downsample(t, 100);
+
+        assertEquals(100, out.getTs().size());
+        assertEquals(100, out.getTemp().size());
+        assertEquals(0L, out.getTs().get(0));
+        assertEquals(9_999_000L, out.getTs().get(99));
+        assertTrue(out.getHr().contains(180.0));
+        int spike = out.getHr().indexOf(180.0);
+        assertEquals(4_321_000L, out.getTs().get(spike));
+    }
+
+    // ECG min/max buckets keep the strip evenly spaced at a whole-number rate and keep spikes
+    @Test
+    void downsample_shouldMinMaxEcg() {
+        PatientTelemetry t = new PatientTelemetry();
+        t.setEcgTsStart(0L);
+        t.setEcgFs(250);
+        for (int i = 0; i < 2_500; i++) t.getEcg().add(i == 1_234 ? 2.5 : 0.0);
+
+        PatientTelemetry out = Downsampler.downsample(t, 500);
+
+        assertEquals(500, out.getEcg().size());
+        assertEquals(50, out.getEcgFs());
+        assertEquals(0L, out.getEcgTsStart());
+        assertTrue(out.getEcg().contains(2.5));
+    }
+
+    // Small inputs come back untouched
+    @Test
+    void downsample_shouldPassThroughSmallSeries() {
+        PatientTelemetry t = new PatientTelemetry();
+        t.getTs().add(1L);
+        t.getHr().add(60.0);
+
+        assertSame(t, Downsampler.downsample(t, 10));
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EcgCodecTest {
+
+    // Encoded samples should decode back to within the 1 uV quantization step
+    @Test
+    void encode_shouldRoundTripWithinOneMicrovolt() {
+        List<Double> samples = new ArrayList<>();
+        for (int i = 0; i < 250; i++) samples.add(Math.sin(i / 10.0) * 1.5);
+
+        double[] decoded = EcgCodec.decode(EcgCodec.encode(samples));
+
+        assertEquals(samples.size(), decoded.length);
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(samples.get(i), decoded[i], 0.0005);
+        }
+    }
+
+    // Smooth signals should need far fewer bytes than the comma-joined text form
+    @Test
+    void encode_shouldBeSmallerThanText() {
+        List<Double> samples = new ArrayList<>();
+        for (int i = 0; i < 250; i++) samples.add(Math.sin(i / 10.0) * 1.5);
+
+        byte[] bin = EcgCodec.encode(samples);
+
+        assertTrue(bin.length < 2 * samples.size() + 4);
+    }
+
+    // Null/NaN samples become 0 and out-of-range values are clamped to int16 uV
+    @Test
+    void encode_shouldHandleNullsAndClamp() {
+        double[] decoded = EcgCodec.decode(EcgCodec.encode(Arrays.asList(null, Double.NaN, 100.0, -100.0)));
+
+        assertArrayEquals(new double[]{0.0, 0.0, 32.767, -32.768}, decoded, 1e-9);
+    }
+
+    // Legacy TEXT rows are still readable, skipping junk entries
+    @Test
+    void decodeText_shouldParseLegacyRows() {
+        assertArrayEquals(new double[]{0.1, -0.2, 1.5}, EcgCodec.decodeText("0.1, -0.2,abc,1.5,"), 1e-12);
+        assertEquals(0, EcgCodec.decodeText(null).length);
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTelemetryStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    //Verifies that latest, range and since reads see the stored rows and ECG, across segment rolls
+    @Test
+    void reads_shouldMatchWhatWasStored() throws IOException {
+        FileTelemetryStore store = new FileTelemetryStore(dir, 64 * 1024, false, 0);
+        for (int i = 0; i < 2000; i++) store.store("bed-1", TestTelemetry.row(1_000L * i, 60 + i % 40));
+        PatientTelemetry ecg = new PatientTelemetry();
+        ecg.setEcgTsStart(10_000L);
+        ecg.setEcgFs(250);
+        for (int i = 0; i < 500; i++) ecg.getEcg().add(i % 2 == 0 ? 0.5 : -0.25);
+        store.store("bed-1", ecg);
+
+        PatientTelemetry latest = store.get("bed-1");
+        assertEquals(600, latest.getHr().size());
+        assertEquals(1_999_000L, latest.getTs().getLong(599));
+        assertEquals(500, latest.getEcg().size());
+        assertEquals(2001L, latest.getSeq());
+
+        PatientTelemetry range = store.getRange("bed-1", 10_000L, 11_000L);
+        assertEquals(List.of(10_000L, 11_000L), range.getTs());
+        assertEquals(10_000L, range.getEcgTsStart());
+        assertEquals(251, range.getEcg().size());
+
+        PatientTelemetry since = store.getSince("bed-1", 1995);
+        assertEquals(5, since.getHr().size());
+        assertEquals(500, since.getEcg().size());
+        assertTrue(store.stats().get("segments") instanceof Long && (long) store.stats().get("segments") > 1);
+        store.close();
+    }
+
+    //Verifies that a since read keeps back-filled ECG that starts before what was written earlier
+    @Test
+    void getSince_shouldStitchBackfilledEcgByStart() throws IOException {
+        FileTelemetryStore store = new FileTelemetryStore(dir, 64 * 1024, false, 0);
+        for (long start : new long[] {2_000L, 1_000L}) {
+            PatientTelemetry ecg = new PatientTelemetry();
+            ecg.setEcgTsStart(start);
+            ecg.setEcgFs(250);
+            for (int i = 0; i < 250; i++) ecg.getEcg().add(start == 1_000L ? 0.25 : 0.5);
+            store.store("bed-1", ecg);
+        }
+
+        PatientTelemetry since = store.getSince("bed-1", 0);
+        assertEquals(1_000L, since.getEcgTsStart());
+        assertEquals(500, since.getEcg().size());
+        assertEquals(0.25, since.getEcg().get(0));
+        assertEquals(0.5, since.getEcg().get(499));
+        store.close();
+    }
+
+    //Verifies that a reopened store continues the sequence and drops a record torn by a crash mid-write
+    @Test
+    void reopen_shouldRecoverAndTruncateTornTail() throws IOException {
+        FileTelemetryStore store = new FileTelemetryStore(dir, 64 * 1024, true, 0);
+        store.store("bed-1", TestTelemetry.row(1_000L, 70.0));
+        store.store("bed-1", TestTelemetry.row(2_000L, 71.0));
+        store.store("bed-1", TestTelemetry.row(3_000L, 72.0));
+        store.close();
+
+        Path seg = segments(dir).get(0);
+        long size = Files.size(seg);
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.WRITE)) {
+            ch.truncate(size - 10);
+        }
+
+        store = new FileTelemetryStore(dir, 64 * 1024, true, 0);
+        PatientTelemetry t = store.get("bed-1");
+        assertEquals(List.of(70.0, 71.0), t.getHr());
+        assertEquals(2L, t.getSeq());
+
+        store.store("bed-1", TestTelemetry.row(4_000L, 73.0));
+        assertEquals(List.of(70.0, 71.0, 73.0), store.get("bed-1").getHr());
+        assertEquals(3L, store.sequences().get("bed-1"));
+        store.close();
+    }
+}
@@ -1,4 +1,9 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -52,4 +57,99 @@ class InMemoryTelemetryStoreTest {
         // Store should remain empty
         assertTrue(store.getAll().isEmpty());
     }
+
+    //Verifies that a multi-bed batch is stored under each bed ID and appends to existing beds
+    @Test
+    void storeAll_shouldStoreEveryBedInBatch() {
+        InMemoryTelemetryStore store = new InMemoryTelemetryStore();
+
+        PatientTelemetry existing = new PatientTelemetry();
+        existing.getHr().add(60.0);
+        store.store("bed-1", existing);
+
+        Map<String, PatientTelemetry> batch = new LinkedHashMap<>();
+        PatientTelemetry a = new PatientTelemetry();
+        a.getHr().add(61.0);
+        PatientTelemetry b = new PatientTelemetry();
+        b.getHr().add(90.0);
+        batch.put("bed-1", a);
+        batch.put("bed-3", b);
+
+        store.storeAll(batch);
+
+        assertEquals(2, store.get("bed-1").getHr().size());
+        assertEquals(90.0, store.get("bed-3").getHr().get(0));
+    }
+
+    //Verifies that an unbounded read across a day-long ECG gap keeps the newest run instead of padding the gap
+    @Test
+    void getSince_shouldNotPadLongEcgGaps() {
+        InMemoryTelemetryStore store = new InMemoryTelemetryStore(new RetentionPolicy(100, 1_000, 0));
+        for (long start : new long[] {1_000L, 1_000L + 24 * 3_600_000L}) {
+            PatientTelemetry t = new PatientTelemetry();
+            t.setEcgTsStart(start);
+            t.setEcgFs(250);
+            for (int i = 0; i < 250; i++) t.getEcg().add(0.5);
+            store.store("bed-1", t);
+        }
+
+        PatientTelemetry since = store.getSince("bed-1", 0);
+        assertEquals(250, since.getEcg().size());
+        assertEquals(1_000L + 24 * 3_600_000L, since.getEcgTsStart());
+    }
+
+    //Verifies that a stored segment claiming an absurd sample rate cannot make a read pad a gap past MAX_SAMPLES
+    @Test
+    void getSince_shouldCapGapFillWhateverTheSampleRate() {
+        InMemoryTelemetryStore store = new InMemoryTelemetryStore();
+        for (long start : new long[] {1_000L, 1_000L + 50 * 60_000L}) {
+            PatientTelemetry t = new PatientTelemetry();
+            t.setEcgTsStart(start);
+            t.setEcgFs(100_000);
+            t.getEcg().add(0.5);
+            t.getEcg().add(0.5);
+            store.store("bed-1", t);
+        }
+
+        PatientTelemetry since = store.getSince("bed-1", 0);
+        assertEquals(2, since.getEcg().size());
+        assertEquals(1_000L + 50 * 60_000L, since.getEcgTsStart());
+    }
+
+    //Verifies that a store reopened on the same snapshot directory comes back with every bed's history
+    @Test
+    void snapshot_shouldRestoreHistoryOnReopen(@TempDir Path dir) {
+        RetentionPolicy policy = new RetentionPolicy(100, 1000, 0);
+        InMemoryTelemetryStore store = new InMemoryTelemetryStore(policy, dir, 0);
+        for (int i = 0; i < 150; i++) {
+            PatientTelemetry t = new PatientTelemetry();
+            t.getTs().add(1_000L * i);
+            t.getHr().add(60.0 + i);
+            store.store("bed-1", t);
+        }
+        PatientTelemetry ecg = new PatientTelemetry();
+        ecg.setEcgTsStart(5_000L);
+        ecg.setEcgFs(250);
+        for (int i = 0; i < 1200; i++) ecg.getEcg().add(i / 1000.0);
+        store.store("bed-2", ecg);
+        PatientTelemetry before1 = store.get("bed-1");
+        PatientTelemetry before2 = store.get("bed-2");
+        store.close();
+
+        InMemoryTelemetryStore reopened = new InMemoryTelemetryStore(policy, dir, 0);
+        PatientTelemetry after1 = reopened.get("bed-1");
+        PatientTelemetry after2 = reopened.get("bed-2");
+        assertEquals(before1.getTs(), after1.getTs());
+        assertEquals(before1.getHr(), after1.getHr());
+        assertEquals(before2.getEcg(), after2.getEcg());
+        assertEquals(before2.getEcgTsStart(), after2.getEcgTsStart());
+        assertEquals(2, reopened.getRange("bed-1", 140_000L, 141_000L).getHr().size());
+
+        // New writes get sequences past every cursor handed out before the restart
+        reopened.store("bed-1", new PatientTelemetry());
+        long seq = reopened.sequences().get("bed-1");
+        assertTrue(seq > before1.getSeq());
+        assertEquals(0, reopened.getSince("bed-1", seq - 1).getHr().size());
+        reopened.close();
+    }
 }
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestQueueTest {
+
+    // Queued payloads are eventually written through to the backing store
+    @Test
+    void offer_shouldWriteBehindToStore() throws Exception {
+        InMemoryTelemetryStore store = new InMemoryTelemetryStore();
+        IngestQueue queue = new IngestQueue(store, 16, IngestQueue.Overflow.REJECT, 0);
+
+        assertTrue(queue.offer(Collections.singletonMap("bed-1", TestTelemetry.row(1000, 70.0))));
+        queue.close(5_000);
+
+        assertEquals(70.0, store.get("bed-1").getHr().get(0));
+    }
+
+    // A full queue under the reject policy refuses new payloads instead of blocking
+    @Test
+    void offer_shouldRejectWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        AbstractTelemetryStore slow = new InMemoryTelemetryStore() {
+            @Override
+            public Map<String, Long> storeAll(Map<String, PatientTelemetry> batch) {
+                writing.countDown();
+                try { release.await(); } catch (InterruptedException ignored) {}
+                return Collections.emptyMap();
+            }
+        };
+        IngestQueue queue = new IngestQueue(slow, 1, IngestQueue.Overflow.REJECT, 0);
+
+        assertTrue(queue.offer(Collections.singletonMap("bed-1", TestTelemetry.row(1, 1))));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.offer(Collections.singletonMap("bed-1", TestTelemetry.row(2, 2))));
+        assertFalse(queue.offer(Collections.singletonMap("bed-1", TestTelemetry.row(3, 3))));
+        assertEquals(1L, queue.stats().get("rejected"));
+
+        release.countDown();
+        queue.close(5_000);
+    }
+
+    // Same-bed payloads coalesce into one batch, but a non-contiguous ECG chunk starts a new one
+    @Test
+    void coalesce_shouldMergeVitalsAndKeepEcgGapsApart() {
+        List<Map<String, PatientTelemetry>> out = IngestQueue.coalesce(List.of(
+                Map.of("bed-1", TestTelemetry.row(1000, 70.0), "bed-2", TestTelemetry.ecg(0, 125, 125)),
+                Map.of("bed-1", TestTelemetry.row(2000, 71.0), "bed-2", TestTelemetry.ecg(1000, 125, 125)),
+                Map.of("bed-2", TestTelemetry.ecg(5000, 125, 125))
+        ));
+
+        assertEquals(2, out.size());
+        assertEquals(2, out.get(0).get("bed-1").getHr().size());
+        assertEquals(250, out.get(0).get("bed-2").getEcg().size());
+        assertEquals(0L, out.get(0).get("bed-2").getEcgTsStart());
+        assertEquals(5000L, out.get(1).get("bed-2").getEcgTsStart());
+    }
+}
@@ -1,3 +1,4 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,4 +39,19 @@ class PatientTelemetryTest {
         assertTrue(base.getHr().isEmpty());
         assertTrue(base.getTemp().isEmpty());
     }
+
+    // Test that the primitive columns keep the JSON wire format, with missing values as null
+    @Test
+    void json_shouldRoundTripColumnsWithNulls() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String json = "{\"ts\":[1000,2000],\"hr\":[72.0,null],\"rr\":[],\"sys\":[],\"dia\":[],"
+                + "\"temp\":[36.8,37.0],\"ecg\":[0.1,-0.25],\"ecgTsStart\":5,\"ecgFs\":125}";
+
+        PatientTelemetry t = mapper.readValue(json, PatientTelemetry.class);
+
+        assertTrue(Double.isNaN(t.getHr().getDouble(1)));
+        assertNull(t.getHr().get(1));
+        assertEquals(2000L, t.getTs().getLong(1));
+        assertEquals(json, mapper.writeValueAsString(t));
+    }
 }
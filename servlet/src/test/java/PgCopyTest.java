@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PgCopyTest {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    private CopyIn copyIn;
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        copyIn = mock(CopyIn.class);
+        doAnswer(inv -> {
+            sent.write(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2));
+            return null;
+        }).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        when(copyIn.endCopy()).thenReturn(1L);
+
+        CopyManager api = mock(CopyManager.class);
+        when(api.copyIn("COPY t FROM STDIN")).thenReturn(copyIn);
+        PGConnection pg = mock(PGConnection.class);
+        when(pg.getCopyAPI()).thenReturn(api);
+        conn = mock(Connection.class);
+        when(conn.unwrap(PGConnection.class)).thenReturn(pg);
+    }
+
+    private String sent() {
+        return new String(sent.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Backslash, tab, newline and carriage return are escaped so they cannot split a column or a row
+    @Test
+    void text_shouldEscapeDelimitersAndBackslash() throws SQLException {
+        try (PgCopy copy = PgCopy.begin(conn, "COPY t FROM STDIN")) {
+            copy.text("a\\b\tc\nd\re").text("plain").endRow();
+            assertEquals(1L, copy.finish());
+        }
+        assertEquals("a\\\\b\\tc\\nd\\re\tplain\n", sent());
+    }
+
+    // Null text, null bytes and non-finite doubles are all written as \N
+    @Test
+    void nulls_shouldBeWrittenAsBackslashN() throws SQLException {
+        try (PgCopy copy = PgCopy.begin(conn, "COPY t FROM STDIN")) {
+            copy.text(null).bytes(null).dbl(Double.NaN).dbl(Double.POSITIVE_INFINITY).dbl(72.5).num(-3).endRow();
+            copy.finish();
+        }
+        assertEquals("\\N\t\\N\t\\N\t\\N\t72.5\t-3\n", sent());
+    }
+
+    // bytea goes in as hex input; its leading backslash is itself escaped for COPY text format
+    @Test
+    void bytes_shouldWriteEscapedHexBytea() throws SQLException {
+        try (PgCopy copy = PgCopy.begin(conn, "COPY t FROM STDIN")) {
+            copy.num(1).bytes(new byte[] {0x00, 0x7f, (byte) 0x80, (byte) 0xff}).endRow();
+            copy.bytes(new byte[0]).endRow();
+            copy.finish();
+        }
+        assertEquals("1\t\\\\x007f80ff\n\\\\x\n", sent());
+    }
+
+    // A COPY left unfinished is cancelled on close rather than committed
+    @Test
+    void close_shouldCancelAnUnfinishedCopy() throws SQLException {
+        when(copyIn.isActive()).thenReturn(true);
+        try (PgCopy copy = PgCopy.begin(conn, "COPY t FROM STDIN")) {
+            copy.num(1).endRow();
+        }
+        verify(copyIn).cancelCopy();
+        verify(copyIn, never()).endCopy();
+        assertEquals("", sent());
+    }
+}
@@ -0,0 +1,130 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TelemetryBroadcasterTest {
+
+    // Output stream that records what is written and reports ready only while open
+    private static final class Sink extends ServletOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        volatile boolean ready = true;
+        WriteListener listener;
+
+        @Override public boolean isReady() { return ready; }
+        @Override public void setWriteListener(WriteListener l) { listener = l; }
+        @Override public synchronized void write(int b) { bytes.write(b); }
+        @Override public synchronized void write(byte[] b, int off, int len) { bytes.write(b, off, len); }
+
+        synchronized String text() { return bytes.toString(StandardCharsets.UTF_8); }
+    }
+
+    private static Sink subscribe(TelemetryBroadcaster hub, String bed) throws Exception {
+        return subscribe(hub, bed, null);
+    }
+
+    private static Sink subscribe(TelemetryBroadcaster hub, String bed, String lastEventId) throws Exception {
+        Sink sink = new Sink();
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        when(resp.getOutputStream()).thenReturn(sink);
+        AsyncContext ctx = mock(AsyncContext.class);
+        when(ctx.getResponse()).thenReturn(resp);
+        hub.subscribe(ctx, bed, lastEventId);
+        return sink;
+    }
+
+    private static void await(Sink sink, String text) throws InterruptedException {
+        for (int i = 0; i < 200 && !sink.text().contains(text); i++) Thread.sleep(10);
+    }
+
+    // Every subscriber gets the events for the beds it watches, and only those
+    @Test
+    void publish_shouldFanOutToMatchingSubscribers() throws Exception {
+        TelemetryBroadcaster hub = new TelemetryBroadcaster(new ObjectMapper(), 16);
+        Sink all = subscribe(hub, null);
+        Sink bed2 = subscribe(hub, "bed-2");
+
+        hub.publish(Map.of("bed-1", TestTelemetry.row(1000L, 61.0)));
+        hub.publish(Map.of("bed-2", TestTelemetry.row(1000L, 62.0)));
+        await(all, "62.0");
+        await(bed2, "62.0");
+        hub.close();
+
+        assertTrue(all.text().contains("event: telemetry\ndata: {\"bed\":\"bed-1\""));
+        assertTrue(all.text().contains("62.0"));
+        assertTrue(bed2.text().contains("\"bed\":\"bed-2\""));
+        assertFalse(bed2.text().contains("61.0"));
+    }
+
+    // A subscriber that cannot keep up loses its oldest frames instead of growing without bound
+    @Test
+    void publish_shouldDropOldestFramesForSlowSubscriber() throws Exception {
+        TelemetryBroadcaster hub = new TelemetryBroadcaster(new ObjectMapper(), 2);
+        Sink slow = subscribe(hub, null);
+        slow.ready = false;
+
+        for (int i = 0; i < 10; i++) hub.publish(Map.of("bed-1", TestTelemetry.row(1000L, 100.0 + i)));
+        assertTrue((long) hub.stats().get("framesDropped") >= 8);
+
+        slow.ready = true;
+        slow.listener.onWritePossible();
+        hub.close();
+
+        assertTrue(slow.text().contains("109.0"));
+        assertFalse(slow.text().contains("100.0"));
+        assertTrue(slow.text().contains("event: dropped\ndata: {\"dropped\":8"));
+    }
+
+    // Events carry the stored sequence as seq and, on a one-bed stream, as the id; a reconnect with
+    // Last-Event-ID is first sent the writes made after it
+    @Test
+    void subscribe_shouldResumeFromLastEventId() throws Exception {
+        TelemetryBroadcaster hub = new TelemetryBroadcaster(new ObjectMapper(), 16);
+        AbstractTelemetryStore store = new BroadcastingTelemetryStore(new InMemoryTelemetryStore(), hub);
+        hub.setStore(store);
+
+        Sink live = subscribe(hub, "bed-1");
+        store.store("bed-1", TestTelemetry.row(1000L, 70.0));
+        long first = store.sequences().get("bed-1");
+        await(live, "70.0");
+        assertTrue(live.text().contains("id: " + first + "\nevent: telemetry\ndata: {\"bed\":\"bed-1\",\"seq\":" + first + ","));
+
+        store.store("bed-1", TestTelemetry.row(1000L, 71.0));
+        store.store("bed-1", TestTelemetry.row(1000L, 72.0));
+        Sink resumed = subscribe(hub, "bed-1", Long.toString(first));
+        await(resumed, "72.0");
+        hub.close();
+
+        assertTrue(resumed.text().contains("id: " + store.sequences().get("bed-1") + "\n"));
+        assertTrue(resumed.text().contains("71.0"));
+        assertFalse(resumed.text().contains("70.0"));
+    }
+
+    // A resume with more to send than the queue holds sends what fits, then says where to re-read the rest
+    @Test
+    void subscribe_shouldBoundResumeBacklogByQueueCapacity() throws Exception {
+        TelemetryBroadcaster hub = new TelemetryBroadcaster(new ObjectMapper(), 2);
+        AbstractTelemetryStore store = new InMemoryTelemetryStore();
+        hub.setStore(store);
+        for (String bed : new String[] {"bed-1", "bed-2", "bed-3", "bed-4"}) store.store(bed, TestTelemetry.row(1000L, 80.0));
+
+        // "e30" is the cursor {}: every bed from the start
+        Sink resumed = subscribe(hub, null, "e30");
+        await(resumed, "event: dropped");
+        hub.close();
+
+        assertTrue(resumed.text().contains("\"bed\":\"bed-1\""));
+        assertTrue(resumed.text().contains("\"bed\":\"bed-2\""));
+        assertFalse(resumed.text().contains("\"bed\":\"bed-3\""));
+        assertTrue(resumed.text().contains("event: dropped\ndata: {\"dropped\":2,\"since\":{\"bed-3\":0,\"bed-4\":0}}"));
+    }
+}
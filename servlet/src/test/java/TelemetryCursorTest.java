@@ -0,0 +1,44 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryCursorTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // A cursor decodes to the sequences it was made from, including the empty one
+    @Test
+    void decode_shouldRoundTripEncode() throws Exception {
+        Map<String, Long> in = new TreeMap<>(Map.of("bed-1", 87_000_000_123L, "bed-2", 87_000_000_001L, "bed-3", 5L));
+
+        assertEquals(in, TelemetryCursor.decode(mapper, TelemetryCursor.encode(mapper, in)));
+        assertEquals(Map.of(), TelemetryCursor.decode(mapper, TelemetryCursor.encode(mapper, Map.of())));
+    }
+
+    // A 300-bed cursor fits an 8 KB header whatever the size of its seqs
+    @Test
+    void encode_shouldStayCompactForLargeSeqs() throws Exception {
+        Map<String, Long> ward = new TreeMap<>();
+        for (int i = 0; i < 300; i++) ward.put(String.format("bed-%03d", i), 1_760_000_000_000_000L + i * 977L);
+
+        assertTrue(TelemetryCursor.encode(mapper, ward).length() < 8_192);
+    }
+
+    // Tokens of the older {"bed": seq} form are still read; malformed tokens are rejected
+    @Test
+    void decode_shouldReadLegacyTokensAndRejectMalformedOnes() throws Exception {
+        // {"bed-1":42}
+        assertEquals(Map.of("bed-1", 42L), TelemetryCursor.decode(mapper, "eyJiZWQtMSI6NDJ9"));
+        // {}
+        assertEquals(Map.of(), TelemetryCursor.decode(mapper, "e30"));
+
+        // [1] and [9223372036854775807,{"b":1}]
+        assertThrows(IllegalArgumentException.class, () -> TelemetryCursor.decode(mapper, "WzFd"));
+        assertThrows(IllegalArgumentException.class,
+                () -> TelemetryCursor.decode(mapper, "WzkyMjMzNzIwMzY4NTQ3NzU4MDcseyJiIjoxfV0"));
+    }
+}
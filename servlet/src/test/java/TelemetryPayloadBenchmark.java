@@ -0,0 +1,88 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the old POST decode path (body String -> Map tree -> convertValue per bed)
+ * with TelemetryPayloadParser on a ward-sized payload. Not a unit test; run main().
+ *
+ *   java -cp <test+main classpath> TelemetryPayloadBenchmark [beds] [iterations]
+ */
+public class TelemetryPayloadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int beds = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        byte[] body = payload(beds).getBytes(StandardCharsets.UTF_8);
+        ObjectMapper mapper = new ObjectMapper();
+        TelemetryPayloadParser parser = new TelemetryPayloadParser(mapper.getFactory());
+
+        System.out.printf("payload: %d beds, %d bytes%n", beds, body.length);
+        for (int round = 0; round < 2; round++) {
+            String label = round == 0 ? "warm-up" : "measured";
+            run(label + " legacy   ", iterations, () -> legacy(mapper, body).size());
+            run(label + " streaming", iterations, () -> parser.parse(new ByteArrayInputStream(body)).size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, PatientTelemetry> legacy(ObjectMapper mapper, byte[] body) throws Exception {
+        String s = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))
+                .lines().collect(Collectors.joining());
+        Map<String, Object> payload = mapper.readValue(s, Map.class);
+        Map<String, Object> patients = (Map<String, Object>) payload.get("patients");
+        Map<String, PatientTelemetry> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : patients.entrySet()) {
+            out.put(e.getKey(), mapper.convertValue(e.getValue(), PatientTelemetry.class));
+        }
+        return out;
+    }
+
+    /** One measured operation; its result is summed so the JIT cannot drop the work. */
+    interface Op {
+        int run() throws Exception;
+    }
+
+    // Shared with TelemetryWireBenchmark
+    static void run(String label, int iterations, Op op) throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long sink = 0;
+
+        long cpu0 = mx.getCurrentThreadCpuTime();
+        long bytes0 = mx.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += op.run();
+        long nanos = System.nanoTime() - t0;
+        long cpu = mx.getCurrentThreadCpuTime() - cpu0;
+        long bytes = mx.getThreadAllocatedBytes(tid) - bytes0;
+
+        System.out.printf("%s: %8.1f payloads/s, %8.1f us CPU/payload, %8.1f KB allocated/payload (%d)%n",
+                label, iterations / (nanos / 1e9), cpu / 1e3 / iterations, bytes / 1024.0 / iterations, sink);
+    }
+
+    // Shape of TelemetryPublisher uploads: one vitals row and one second of 125 Hz ECG per bed
+    static String payload(int beds) {
+        StringBuilder sb = new StringBuilder("{\"patients\":{");
+        for (int b = 0; b < beds; b++) {
+            if (b > 0) sb.append(',');
+            sb.append("\"Bed ").append(b).append("\":{\"ts\":[1760000000000],\"hr\":[72.4],\"rr\":[16.1],")
+                    .append("\"sys\":[121.3],\"dia\":[79.8],\"temp\":[36.9],\"ecgTsStart\":1759999999000,")
+                    .append("\"ecgFs\":125,\"ecg\":[");
+            for (int i = 0; i < 125; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(Math.sin(i / 7.0) * 0.8 + 0.05 * b);
+            }
+            sb.append("]}");
+        }
+        return sb.append("}}").toString();
+    }
+}
@@ -0,0 +1,57 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryPayloadParserTest {
+
+    private final TelemetryPayloadParser parser = new TelemetryPayloadParser(new JsonFactory());
+
+    private Map<String, PatientTelemetry> parse(String json) throws IOException {
+        return parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String errorOf(String json) {
+        return assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> parse(json)).getMessage();
+    }
+
+    // Every known field of every bed is decoded, nulls are kept and unknown fields skipped
+    @Test
+    void parse_shouldDecodeAllBeds() throws Exception {
+        Map<String, PatientTelemetry> out = parse("{\"timestamp\":\"x\",\"patients\":{"
+                + "\"bed-1\":{\"ts\":[1000,2000],\"hr\":[72.5,null],\"temp\":[36.8,37],\"extra\":{\"a\":[1]}},"
+                + "\"bed-2\":{\"ecgTsStart\":500,\"ecgFs\":125,\"ecg\":[0.1,-0.2]}}}");
+
+        assertEquals(2, out.size());
+        PatientTelemetry b1 = out.get("bed-1");
+        assertEquals(2000L, b1.getTs().get(1));
+        assertEquals(72.5, b1.getHr().get(0));
+        assertNull(b1.getHr().get(1));
+        assertEquals(37.0, b1.getTemp().get(1));
+
+        PatientTelemetry b2 = out.get("bed-2");
+        assertEquals(500L, b2.getEcgTsStart());
+        assertEquals(125, b2.getEcgFs());
+        assertEquals(-0.2, b2.getEcg().get(1));
+    }
+
+    // Malformed bodies map onto the servlet's existing 400 error messages
+    @Test
+    void parse_shouldReportPayloadErrors() {
+        assertEquals("empty body", errorOf("   "));
+        assertEquals("invalid json", errorOf("{invalid-json"));
+        assertEquals("invalid json", errorOf("{\"patients\":{\"bed-1\":{\"hr\":[1,"));
+        assertEquals("missing patients", errorOf("{\"beds\":{}}"));
+        assertEquals("bad patient payload", errorOf("{\"patients\":{\"bed-1\":[1,2]}}"));
+        assertEquals("bad patient payload", errorOf("{\"patients\":{\"bed-1\":{\"hr\":[\"fast\"]}}}"));
+        assertEquals("bad ecgFs 0", errorOf("{\"patients\":{\"bed-1\":{\"ecgFs\":0}}}"));
+        assertEquals("bad ecgFs 100000", errorOf("{\"patients\":{\"bed-1\":{\"ecgFs\":100000}}}"));
+        // 2^32 + 250 must not wrap to a plausible 250
+        assertEquals("bad ecgFs 4294967546", errorOf("{\"patients\":{\"bed-1\":{\"ecgFs\":4294967546}}}"));
+    }
+}
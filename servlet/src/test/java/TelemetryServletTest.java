@@ -1,14 +1,24 @@
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -36,11 +46,26 @@ class TelemetryServletTest {
         when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
     }
 
+    // Wraps a request body as the servlet input stream
+    private static ServletInputStream body(String s) {
+        return body(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ServletInputStream body(byte[] bytes) {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        return new ServletInputStream() {
+            @Override public int read() { return in.read(); }
+            @Override public int read(byte[] b, int off, int len) { return in.read(b, off, len); }
+            @Override public boolean isFinished() { return in.available() == 0; }
+            @Override public boolean isReady() { return true; }
+            @Override public void setReadListener(ReadListener l) { throw new UnsupportedOperationException(); }
+        };
+    }
+
     // Test that invalid JSON sent via POST results in a 400 Bad Request
     @Test
     void doPost_invalidJson_returns400() throws Exception {
-        when(request.getReader())
-                .thenReturn(new BufferedReader(new StringReader("{invalid-json")));
+        when(request.getInputStream()).thenReturn(body("{invalid-json"));
 
         servlet.doPost(request, response);
 
@@ -65,8 +90,7 @@ class TelemetryServletTest {
                         + "  }"
                         + "}";
 
-        when(request.getReader())
-                .thenReturn(new BufferedReader(new StringReader(json)));
+        when(request.getInputStream()).thenReturn(body(json));
 
         servlet.doPost(request, response);
 
@@ -92,8 +116,7 @@ class TelemetryServletTest {
                         + "  }"
                         + "}";
 
-        when(request.getReader())
-                .thenReturn(new BufferedReader(new StringReader(json)));
+        when(request.getInputStream()).thenReturn(body(json));
         servlet.doPost(request, response);
 
         // reset mocks for GET
@@ -107,4 +130,350 @@ class TelemetryServletTest {
         assertTrue(responseBody.toString().contains("hr"));
         assertTrue(responseBody.toString().contains("80.0"));
     }
+
+    //Test that with the write-behind queue enabled a valid POST is accepted with 202
+    @Test
+    void doPost_asyncIngest_returns202() throws Exception {
+        Field ingestField = TelemetryServlet.class.getDeclaredField("ingest");
+        ingestField.setAccessible(true);
+        IngestQueue queue = new IngestQueue(new InMemoryTelemetryStore(), 8, IngestQueue.Overflow.REJECT, 0);
+        ingestField.set(servlet, queue);
+
+        String json = "{\"patients\":{\"bed-3\":{\"ts\":[3000],\"hr\":[90.0]}}}";
+        when(request.getInputStream()).thenReturn(body(json));
+
+        servlet.doPost(request, response);
+        queue.close(5_000);
+
+        verify(response).setStatus(HttpServletResponse.SC_ACCEPTED);
+        assertTrue(responseBody.toString().contains("accepted"));
+    }
+
+    //Test that from/to limit GET to a time window and maxPoints caps the rows returned
+    @Test
+    void doGet_range_returnsDownsampledWindow() throws Exception {
+        StringBuilder json = new StringBuilder("{\"patients\":{\"bed-4\":{\"ts\":[");
+        for (int i = 0; i < 500; i++) json.append(i == 0 ? "" : ",").append(i * 1000L);
+        json.append("],\"hr\":[");
+        for (int i = 0; i < 500; i++) json.append(i == 0 ? "" : ",").append(60 + i % 5);
+        json.append("]}}}");
+        when(request.getInputStream()).thenReturn(body(json.toString()));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("bed")).thenReturn("bed-4");
+        when(request.getParameter("from")).thenReturn("100000");
+        when(request.getParameter("to")).thenReturn("399000");
+        when(request.getParameter("maxPoints")).thenReturn("50");
+
+        servlet.doGet(request, response);
+
+        PatientTelemetry out = new com.fasterxml.jackson.databind.ObjectMapper()
+                .readValue(responseBody.toString(), PatientTelemetry.class);
+        assertEquals(50, out.getTs().size());
+        assertEquals(100_000L, out.getTs().get(0));
+        assertEquals(399_000L, out.getTs().get(49));
+    }
+
+    //Test that a malformed range is rejected with 400
+    @Test
+    void doGet_invalidRange_returns400() throws Exception {
+        when(request.getParameter("from")).thenReturn("yesterday");
+
+        servlet.doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        assertTrue(responseBody.toString().contains("invalid range"));
+    }
+
+    //Test that row ranges without from, or wider than a day, are rejected with 400
+    @Test
+    void doGet_unboundedRange_returns400() throws Exception {
+        when(request.getParameter("bed")).thenReturn("bed-4");
+        when(request.getParameter("maxPoints")).thenReturn("100");
+
+        servlet.doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+        reset(response);
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        when(request.getParameter("from")).thenReturn("0");
+        when(request.getParameter("to")).thenReturn(Long.toString(2 * 86_400_000L));
+
+        servlet.doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    //Test that since= returns only newer rows and an unchanged poll with If-None-Match gets 304
+    @Test
+    void doGet_sinceAndEtag_returnIncrementalAndNotModified() throws Exception {
+        when(request.getInputStream()).thenReturn(body("{\"patients\":{\"bed-5\":{\"ts\":[1000],\"hr\":[70.0]}}}"));
+        servlet.doPost(request, response);
+        when(request.getInputStream()).thenReturn(body("{\"patients\":{\"bed-5\":{\"ts\":[2000],\"hr\":[71.0]}}}"));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("bed")).thenReturn("bed-5");
+        servlet.doGet(request, response);
+        PatientTelemetry full = new com.fasterxml.jackson.databind.ObjectMapper()
+                .readValue(responseBody.toString(), PatientTelemetry.class);
+        assertEquals(2, full.getTs().size());
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("bed")).thenReturn("bed-5");
+        when(request.getParameter("since")).thenReturn(Long.toString(full.getSeq() - 1));
+        servlet.doGet(request, response);
+        assertTrue(responseBody.toString().contains("2000"));
+        assertFalse(responseBody.toString().contains("1000"));
+
+        org.mockito.ArgumentCaptor<String> etag = org.mockito.ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+        reset(response);
+        when(request.getHeader("If-None-Match")).thenReturn(etag.getValue());
+        servlet.doGet(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getWriter();
+    }
+
+    //Test that a gzip POST is inflated and stored, and a large GET is gzipped for clients that accept it
+    @Test
+    void gzip_postAndGet_roundTrip() throws Exception {
+        StringBuilder json = new StringBuilder("{\"patients\":{\"bed-6\":{\"ts\":[1000],\"ecgTsStart\":1000,\"ecgFs\":125,\"ecg\":[");
+        for (int i = 0; i < 1000; i++) json.append(i == 0 ? "" : ",").append(Math.sin(i / 10.0));
+        json.append("]}}}");
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(zipped)) {
+            gz.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        when(request.getHeader("Content-Encoding")).thenReturn("gzip");
+        when(request.getInputStream()).thenReturn(body(zipped.toByteArray()));
+
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+
+        reset(request, response);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override public void write(int b) { sent.write(b); }
+            @Override public boolean isReady() { return true; }
+            @Override public void setWriteListener(WriteListener l) { throw new UnsupportedOperationException(); }
+        });
+        when(request.getParameter("bed")).thenReturn("bed-6");
+        when(request.getHeader("Accept-Encoding")).thenReturn("br;q=1.0, gzip;q=0.8");
+
+        servlet.doGet(request, response);
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response, never()).getWriter();
+        PatientTelemetry out = new com.fasterxml.jackson.databind.ObjectMapper()
+                .readValue(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray())), PatientTelemetry.class);
+        assertEquals(1000, out.getEcg().size());
+    }
+
+    //Test that view=latest returns only the newest vitals row of each bed
+    @Test
+    void doGet_viewLatest_returnsNewestRowPerBed() throws Exception {
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-7\":{\"ts\":[1000,3000,2000],\"hr\":[70.0,72.0,71.0]},\"bed-8\":{\"ts\":[5000],\"hr\":[90.0]}}}"));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("view")).thenReturn("latest");
+
+        servlet.doGet(request, response);
+
+        java.util.Map<String, PatientTelemetry> out = new com.fasterxml.jackson.databind.ObjectMapper().readValue(
+                responseBody.toString(), new com.fasterxml.jackson.core.type.TypeReference<java.util.Map<String, PatientTelemetry>>() {});
+        assertEquals(java.util.List.of(3000L), out.get("bed-7").getTs());
+        assertEquals(java.util.List.of(72.0), out.get("bed-7").getHr());
+        assertEquals(java.util.List.of(5000L), out.get("bed-8").getTs());
+        assertTrue(out.get("bed-7").getEcg().isEmpty());
+    }
+
+    // resolution=<ms> returns per-bucket stats over whole buckets; it needs a bed
+    @Test
+    void doGet_resolution_returnsBucketStats() throws Exception {
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-7\":{\"ts\":[1000,30000,61000],\"hr\":[70.0,74.0,90.0]}}}"));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("bed")).thenReturn("bed-7");
+        when(request.getParameter("from")).thenReturn("20000");
+        when(request.getParameter("to")).thenReturn("70000");
+        when(request.getParameter("resolution")).thenReturn("60000");
+
+        servlet.doGet(request, response);
+
+        com.fasterxml.jackson.databind.JsonNode out = new com.fasterxml.jackson.databind.ObjectMapper().readTree(responseBody.toString());
+        assertEquals("[0,60000]", out.get("ts").toString());
+        assertEquals("[2,1]", out.get("hr").get("count").toString());
+        assertEquals(72.0, out.get("hr").get("mean").get(0).asDouble(), 1e-9);
+        assertEquals(2.0, out.get("hr").get("std").get(0).asDouble(), 1e-9);
+        assertEquals(90.0, out.get("hr").get("max").get(1).asDouble(), 1e-9);
+        assertEquals("[0,0]", out.get("rr").get("count").toString());
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("resolution")).thenReturn("60000");
+
+        servlet.doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+        // Rollups need from and to, are capped in buckets, and below whole minutes are capped at 24 h
+        String[][] rejected = {
+                {"0", null, "60000"},
+                {"0", "600000001", "60000"},
+                {"0", "86400001", "30000"},
+        };
+        for (String[] q : rejected) {
+            reset(request, response);
+            when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+            when(request.getParameter("bed")).thenReturn("bed-7");
+            when(request.getParameter("from")).thenReturn(q[0]);
+            when(request.getParameter("to")).thenReturn(q[1]);
+            when(request.getParameter("resolution")).thenReturn(q[2]);
+
+            servlet.doGet(request, response);
+
+            verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+
+    // view=ecg stitches segments over from..to, marks the gap between them and the window's ends, and resamples on fs=
+    @Test
+    void doGet_viewEcg_stitchesWithExplicitGaps() throws Exception {
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-7\":{\"ecgTsStart\":1000,\"ecgFs\":4,\"ecg\":[0.1,0.2,0.3,0.4]}}}"));
+        servlet.doPost(request, response);
+        reset(request);
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-7\":{\"ecgTsStart\":2500,\"ecgFs\":4,\"ecg\":[0.5,0.6]}}}"));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("bed")).thenReturn("bed-7");
+        when(request.getParameter("view")).thenReturn("ecg");
+        when(request.getParameter("from")).thenReturn("0");
+        when(request.getParameter("to")).thenReturn("3999");
+
+        servlet.doGet(request, response);
+
+        com.fasterxml.jackson.databind.JsonNode out = new com.fasterxml.jackson.databind.ObjectMapper().readTree(responseBody.toString());
+        assertEquals(1000, out.get("tsStart").asLong());
+        assertEquals("[0.1,0.2,0.3,0.4,null,null,0.5,0.6]", out.get("samples").toString());
+        assertEquals("[[0,1000],[2000,2500],[3000,4000]]", out.get("gaps").toString());
+
+        reset(response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("fs")).thenReturn("2");
+
+        servlet.doGet(request, response);
+
+        out = new com.fasterxml.jackson.databind.ObjectMapper().readTree(responseBody.toString());
+        assertEquals(2, out.get("fs").asInt());
+        assertEquals(4, out.get("samples").size());
+        // Each output sample averages the present input samples nearest to it
+        assertEquals(0.1, out.get("samples").get(0).asDouble(), 1e-9);
+        assertEquals(0.25, out.get("samples").get(1).asDouble(), 1e-9);
+        assertEquals(0.4, out.get("samples").get(2).asDouble(), 1e-9);
+    }
+
+    //Test that limit/after page through the all-beds read in bed order and since= cursors follow the page
+    @Test
+    void doGet_allBedsPaged_returnsOnePageAndNextAfter() throws Exception {
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-a\":{\"ts\":[1000],\"hr\":[60.0]},\"bed-b\":{\"ts\":[1000],\"hr\":[61.0]},\"bed-c\":{\"ts\":[1000],\"hr\":[62.0]}}}"));
+        servlet.doPost(request, response);
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        com.fasterxml.jackson.core.type.TypeReference<java.util.Map<String, PatientTelemetry>> type =
+                new com.fasterxml.jackson.core.type.TypeReference<>() {};
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("limit")).thenReturn("2");
+        servlet.doGet(request, response);
+        java.util.Map<String, PatientTelemetry> first = mapper.readValue(responseBody.toString(), type);
+        assertEquals(java.util.List.of("bed-a", "bed-b"), new java.util.ArrayList<>(first.keySet()));
+        verify(response).setHeader("X-Telemetry-Next-After", "bed-b");
+        org.mockito.ArgumentCaptor<String> cursor = org.mockito.ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("X-Telemetry-Cursor"), cursor.capture());
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("limit")).thenReturn("2");
+        when(request.getParameter("after")).thenReturn("bed-b");
+        servlet.doGet(request, response);
+        java.util.Map<String, PatientTelemetry> second = mapper.readValue(responseBody.toString(), type);
+        assertEquals(java.util.List.of("bed-c"), new java.util.ArrayList<>(second.keySet()));
+        verify(response, never()).setHeader(eq("X-Telemetry-Next-After"), anyString());
+
+        // The first page's cursor covers bed-a and bed-b only, so bed-c's history comes with the new row
+        when(request.getInputStream()).thenReturn(body("{\"patients\":{\"bed-a\":{\"ts\":[2000],\"hr\":[63.0]}}}"));
+        servlet.doPost(request, response);
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("since")).thenReturn(cursor.getValue());
+        servlet.doGet(request, response);
+        java.util.Map<String, PatientTelemetry> changed = mapper.readValue(responseBody.toString(), type);
+        assertEquals(java.util.List.of("bed-a", "bed-c"), new java.util.ArrayList<>(changed.keySet()));
+        assertEquals(java.util.List.of(63.0), changed.get("bed-a").getHr());
+        assertEquals(java.util.List.of(62.0), changed.get("bed-c").getHr());
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("limit")).thenReturn("0");
+        servlet.doGet(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    //Test that a bed read failing mid-page aborts the since= response instead of closing off a partial page
+    @Test
+    void doGet_allBedsSince_failedReadAbortsResponse() throws Exception {
+        Field storeField = TelemetryServlet.class.getDeclaredField("store");
+        storeField.setAccessible(true);
+        storeField.set(servlet, new ForwardingTelemetryStore(new InMemoryTelemetryStore()) {
+            @Override
+            public void getPageSince(java.util.SortedMap<String, Long> page, java.util.Map<String, Long> cursor,
+                                     PageSink sink) throws java.io.IOException {
+                // bed-a reaches the sink, then the read of bed-b fails
+                delegate.getPageSince(page.headMap("bed-b"), cursor, sink);
+                throw new java.io.IOException("read failed");
+            }
+        });
+        when(request.getInputStream()).thenReturn(body(
+                "{\"patients\":{\"bed-a\":{\"ts\":[1000],\"hr\":[60.0]},\"bed-b\":{\"ts\":[1000],\"hr\":[61.0]},\"bed-c\":{\"ts\":[1000],\"hr\":[62.0]}}}"));
+        servlet.doPost(request, response);
+
+        reset(request, response);
+        responseBody = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(request.getParameter("since")).thenReturn("e30");
+
+        assertThrows(java.io.IOException.class, () -> servlet.doGet(request, response));
+        // Whatever reached the writer is not a complete object a client could take for the whole page
+        assertThrows(java.io.IOException.class,
+                () -> new com.fasterxml.jackson.databind.ObjectMapper().readTree(responseBody.toString()));
+    }
 }
@@ -0,0 +1,50 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size and CPU of the JSON POST body against application/x-rpm-telemetry, on the
+ * same ward-sized payload as TelemetryPayloadBenchmark. Not a unit test; run main().
+ *
+ *   java -cp <test+main classpath> TelemetryWireBenchmark [beds] [iterations]
+ */
+public class TelemetryWireBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int beds = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        ObjectMapper mapper = new ObjectMapper();
+        TelemetryPayloadParser parser = new TelemetryPayloadParser(mapper.getFactory());
+        Map<String, PatientTelemetry> batch = parser.parse(new ByteArrayInputStream(
+                TelemetryPayloadBenchmark.payload(beds).getBytes(StandardCharsets.UTF_8)));
+        // Both encodings are timed on the same parsed batch, as a publisher would hold it
+        Map<String, Object> body = Map.of("patients", batch);
+        byte[] json = mapper.writeValueAsBytes(body);
+        byte[] binary = TelemetryWireEncoding.encode(batch);
+
+        System.out.printf("payload: %d beds%n", beds);
+        System.out.printf("  json   %8d bytes, %8d gzipped%n", json.length, gzip(json).length);
+        System.out.printf("  binary %8d bytes, %8d gzipped%n", binary.length, gzip(binary).length);
+
+        for (int round = 0; round < 2; round++) {
+            String label = round == 0 ? "warm-up" : "measured";
+            TelemetryPayloadBenchmark.run(label + " encode json  ", iterations, () -> mapper.writeValueAsBytes(body).length);
+            TelemetryPayloadBenchmark.run(label + " encode binary", iterations, () -> TelemetryWireEncoding.encode(batch).length);
+            TelemetryPayloadBenchmark.run(label + " decode json  ", iterations, () -> parser.parse(new ByteArrayInputStream(json)).size());
+            TelemetryPayloadBenchmark.run(label + " decode binary", iterations, () -> TelemetryWireFormat.decode(new ByteArrayInputStream(binary)).size());
+        }
+    }
+
+    private static byte[] gzip(byte[] raw) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes TelemetryWireFormat bodies from PatientTelemetry, for tests and benchmarks. The
+ * client's rpm.net.TelemetryWireEncoder is what sends them; both are held to the golden
+ * bytes in TelemetryWireFormatTest.
+ */
+final class TelemetryWireEncoding {
+    private TelemetryWireEncoding() {}
+
+    static byte[] encode(Map<String, PatientTelemetry> patients) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.writeBytes(new byte[] {'R', 'P', 'M', 'T', TelemetryWireFormat.VERSION});
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(1024);
+        for (Map.Entry<String, PatientTelemetry> e : patients.entrySet()) {
+            if (e.getValue() == null) continue;
+            frame.reset();
+            writeFrame(frame, e.getKey(), e.getValue());
+            writeVarlong(out, frame.size());
+            out.writeBytes(frame.toByteArray());
+        }
+        writeVarlong(out, 0);
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, String bedId, PatientTelemetry t) {
+        byte[] id = bedId.getBytes(StandardCharsets.UTF_8);
+        writeVarlong(out, id.length);
+        out.write(id, 0, id.length);
+
+        int rows = t.vitalsRows();
+        writeVarlong(out, rows);
+        long prevTs = 0;
+        long firstTs = 0;
+        boolean haveTs = false;
+        for (int i = 0; i < rows; i++) {
+            long v = t.getTs().getOr(i, LongColumn.MISSING);
+            if (v == LongColumn.MISSING) {
+                writeVarlong(out, 0);
+                continue;
+            }
+            writeVarlong(out, zigzag(v - prevTs) + 1);
+            prevTs = v;
+            if (!haveTs) {
+                firstTs = v;
+                haveTs = true;
+            }
+        }
+        writeValues(out, t.getHr(), rows, TelemetryWireFormat.VITALS_SCALE);
+        writeValues(out, t.getRr(), rows, TelemetryWireFormat.VITALS_SCALE);
+        writeValues(out, t.getSys(), rows, TelemetryWireFormat.VITALS_SCALE);
+        writeValues(out, t.getDia(), rows, TelemetryWireFormat.VITALS_SCALE);
+        writeValues(out, t.getTemp(), rows, TelemetryWireFormat.TEMP_SCALE);
+
+        // Flags: 1 = ecgTsStart, 2 = ecgFs
+        writeVarlong(out, (t.getEcgTsStart() != null ? 1 : 0) | (t.getEcgFs() != null ? 2 : 0));
+        if (t.getEcgTsStart() != null) writeVarlong(out, zigzag(t.getEcgTsStart() - firstTs));
+        if (t.getEcgFs() != null) writeVarlong(out, Math.max(0, t.getEcgFs()));
+        writeVarlong(out, t.getEcg().size());
+        writeValues(out, t.getEcg(), t.getEcg().size(), TelemetryWireFormat.ECG_SCALE);
+    }
+
+    private static void writeValues(ByteArrayOutputStream out, DoubleColumn c, int n, double scale) {
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            double v = c.getOrNaN(i);
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                writeVarlong(out, 0);
+                continue;
+            }
+            // Clamped to int range so the delta token cannot overflow
+            long q = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(v * scale)));
+            writeVarlong(out, zigzag(q - prev) + 1);
+            prev = q;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static void writeVarlong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
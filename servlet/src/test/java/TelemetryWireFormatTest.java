@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryWireFormatTest {
+
+    // Written by the client's rpm.net.TelemetryWireEncoder and pinned by its TelemetryWireEncoderTest; change both together
+    static final String GOLDEN = "52504d54012d054265642031038180e682b966d10f00a90b000ac3020200000000bd0c0702cf39"
+            + "070303cf0f7d03018108f40b05016200000000";
+
+    private static Map<String, PatientTelemetry> decode(byte[] bytes) throws Exception {
+        return TelemetryWireFormat.decode(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] unhex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return out;
+    }
+
+    // The client's bytes decode to what it sent, and the test encoder writes the same bytes
+    @Test
+    void decode_shouldReadClientGoldenBytes() throws Exception {
+        Map<String, PatientTelemetry> out = decode(unhex(GOLDEN));
+
+        assertEquals(Arrays.asList("Bed 1", "b"), Arrays.asList(out.keySet().toArray()));
+        PatientTelemetry pt = out.get("Bed 1");
+        assertEquals(Arrays.asList(1_760_000_000_000L, 1_760_000_001_000L, null), pt.getTs());
+        assertEquals(Arrays.asList(72.4, null, 71.9), pt.getHr());
+        assertEquals(Arrays.asList(16.1, 16.0, null), pt.getRr());
+        assertEquals(Arrays.asList(null, null, null), pt.getSys());
+        assertEquals(Arrays.asList(79.8, 80.1, 80.0), pt.getDia());
+        assertEquals(Arrays.asList(36.87, 36.9, 36.91), pt.getTemp());
+        assertEquals(1_759_999_999_000L, pt.getEcgTsStart());
+        assertEquals(125, pt.getEcgFs());
+        assertEquals(Arrays.asList(0.0, 0.512, -0.25), pt.getEcg());
+        assertEquals(0, out.get("b").vitalsRows());
+        assertNull(out.get("b").getEcgFs());
+
+        assertArrayEquals(unhex(GOLDEN), TelemetryWireEncoding.encode(out));
+    }
+
+    // Vitals, ECG and the ECG header should survive a round trip within their quantization steps
+    @Test
+    void encode_shouldRoundTripWithinQuantization() throws Exception {
+        PatientTelemetry pt = new PatientTelemetry();
+        pt.getTs().addAll(Arrays.asList(1_760_000_000_000L, 1_760_000_001_000L, 1_760_000_000_500L));
+        pt.getHr().addAll(Arrays.asList(72.4, 73.0, 71.9));
+        pt.getRr().addAll(Arrays.asList(16.1, 16.0, 15.8));
+        pt.getSys().addAll(Arrays.asList(121.3, 120.9, 122.0));
+        pt.getDia().addAll(Arrays.asList(79.8, 80.1, 80.0));
+        pt.getTemp().addAll(Arrays.asList(36.87, 36.9, 36.91));
+        for (int i = 0; i < 125; i++) pt.getEcg().addDouble(Math.sin(i / 7.0) * 0.8);
+        pt.setEcgTsStart(1_759_999_999_000L);
+        pt.setEcgFs(125);
+        Map<String, PatientTelemetry> in = new LinkedHashMap<>();
+        in.put("Bed 1", pt);
+
+        PatientTelemetry out = decode(TelemetryWireEncoding.encode(in)).get("Bed 1");
+
+        assertEquals(pt.getTs(), out.getTs());
+        assertEquals(pt.getHr(), out.getHr());
+        assertEquals(pt.getTemp(), out.getTemp());
+        assertEquals(1_759_999_999_000L, out.getEcgTsStart());
+        assertEquals(125, out.getEcgFs());
+        assertEquals(125, out.getEcg().size());
+        for (int i = 0; i < 125; i++) assertEquals(pt.getEcg().getDouble(i), out.getEcg().getDouble(i), 0.0005);
+    }
+
+    // Missing timestamps and NaN vitals come back missing, short columns are padded, beds keep their order
+    @Test
+    void encode_shouldKeepGapsAndBedOrder() throws Exception {
+        PatientTelemetry a = new PatientTelemetry();
+        a.getTs().addAll(Arrays.asList(1000L, LongColumn.MISSING));
+        a.getHr().addAll(Arrays.asList(Double.NaN, 60.0));
+        Map<String, PatientTelemetry> in = new LinkedHashMap<>();
+        in.put("b", a);
+        in.put("a", new PatientTelemetry());
+
+        Map<String, PatientTelemetry> out = decode(TelemetryWireEncoding.encode(in));
+
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(out.keySet().toArray()));
+        PatientTelemetry b = out.get("b");
+        assertEquals(LongColumn.MISSING, b.getTs().getLong(1));
+        assertTrue(Double.isNaN(b.getHr().getDouble(0)));
+        assertEquals(60.0, b.getHr().getDouble(1));
+        assertEquals(2, b.getRr().size());
+        assertTrue(Double.isNaN(b.getRr().getDouble(0)));
+        assertNull(b.getEcgTsStart());
+        assertTrue(out.get("a").getEcg().isEmpty());
+    }
+
+    // Bad magic, a truncated body or a count running past its frame are rejected as bad payloads
+    @Test
+    void decode_shouldRejectMalformedBodies() {
+        Map<String, PatientTelemetry> in = new LinkedHashMap<>();
+        PatientTelemetry pt = new PatientTelemetry();
+        pt.getHr().addDouble(70.0);
+        in.put("bed", pt);
+        byte[] good = TelemetryWireEncoding.encode(in);
+
+        assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> decode("{\"patients\":{}}".getBytes()));
+        assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> decode(Arrays.copyOf(good, good.length - 2)));
+
+        // Frame: length 5, bed id "b", then a row count of 100 that cannot fit
+        byte[] lying = {'R', 'P', 'M', 'T', 1, 5, 1, 'b', 100, 0, 0, 0};
+        assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> decode(lying));
+    }
+
+    // An ECG sample rate outside 1..MAX_ECG_FS is rejected rather than narrowed to int
+    @Test
+    void decode_shouldRejectOutOfRangeEcgFs() {
+        // bed "b", 0 rows, flags FLAG_ECG_FS, fs 0, 0 ECG samples
+        byte[] zero = {'R', 'P', 'M', 'T', 1, 6, 1, 'b', 0, 2, 0, 0};
+        // same frame with fs = 2^32 + 250, which an int cast would wrap to 250
+        byte[] wrapping = {'R', 'P', 'M', 'T', 1, 10, 1, 'b', 0, 2,
+                (byte) 0xFA, (byte) 0x81, (byte) 0x80, (byte) 0x80, 0x10, 0};
+
+        assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> decode(zero));
+        assertThrows(TelemetryPayloadParser.BadPayloadException.class, () -> decode(wrapping));
+    }
+
+    // Frame bytes after the fields a decoder knows are skipped, so frames can grow in later versions
+    @Test
+    void decode_shouldSkipUnknownTrailingFrameBytes() throws Exception {
+        // bed "b", 0 rows, flags 0, 0 ECG samples, then two unknown bytes
+        byte[] body = {'R', 'P', 'M', 'T', 1, 7, 1, 'b', 0, 0, 0, 9, 9, 0};
+
+        Map<String, PatientTelemetry> out = decode(body);
+
+        assertEquals(1, out.size());
+        assertEquals(0, out.get("b").vitalsRows());
+    }
+}
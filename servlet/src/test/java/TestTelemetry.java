@@ -0,0 +1,22 @@
+/** Payload fixtures shared by the store, queue and broadcaster tests. */
+final class TestTelemetry {
+
+    private TestTelemetry() {}
+
+    /** One vitals row: a timestamp and a heart rate. */
+    static PatientTelemetry row(long ts, double hr) {
+        PatientTelemetry t = new PatientTelemetry();
+        t.getTs().add(ts);
+        t.getHr().add(hr);
+        return t;
+    }
+
+    /** An ECG strip of n samples 0, 1, 2, ... at fs from start. */
+    static PatientTelemetry ecg(long start, int fs, int n) {
+        PatientTelemetry t = new PatientTelemetry();
+        t.setEcgTsStart(start);
+        t.setEcgFs(fs);
+        for (int i = 0; i < n; i++) t.getEcg().add((double) i);
+        return t;
+    }
+}